@@ -6,29 +6,48 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+import javax.servlet.DispatcherType;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 import io.dropwizard.Application;
 import io.dropwizard.assets.AssetsBundle;
+import io.dropwizard.client.JerseyClientBuilder;
 import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.jdbi.DBIFactory;
 import io.dropwizard.migrations.MigrationsBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
+import org.genomebridge.boss.http.db.AclCache;
 import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.db.CheckoutCountingDataSource;
+import org.genomebridge.boss.http.db.NameIndex;
+import org.genomebridge.boss.http.db.ObjectRowCache;
+import org.genomebridge.boss.http.db.SqlDialect;
+import org.genomebridge.boss.http.models.StoragePlatform;
+import org.genomebridge.boss.http.objectstore.CachingObjectStore;
+import org.genomebridge.boss.http.objectstore.FileObjectStore;
+import org.genomebridge.boss.http.objectstore.FileStoreServlet;
 import org.genomebridge.boss.http.objectstore.GCSObjectStore;
 import org.genomebridge.boss.http.objectstore.ObjectStore;
 import org.genomebridge.boss.http.objectstore.ObjectStoreConfiguration;
 import org.genomebridge.boss.http.objectstore.S3ObjectStore;
+import org.genomebridge.boss.http.objectstore.UrlCacheConfiguration;
 import org.genomebridge.boss.http.resources.AllObjectsResource;
-import org.genomebridge.boss.http.resources.ObjectResource;
 import org.genomebridge.boss.http.service.BossAPI;
+import org.genomebridge.boss.http.service.CopyJobRunner;
 import org.genomebridge.boss.http.service.DatabaseBossAPI;
+import org.genomebridge.boss.http.service.GroupCommitter;
+import org.genomebridge.boss.http.service.DeleteOutboxWorker;
+import org.genomebridge.boss.http.service.ResolveDateWriter;
+import org.genomebridge.boss.http.tasks.AclCacheStatsTask;
+import org.genomebridge.boss.http.tasks.ExportObjectsTask;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.tweak.Argument;
@@ -36,6 +55,7 @@ import org.skife.jdbi.v2.tweak.ArgumentFactory;
 import org.yaml.snakeyaml.Yaml;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.sun.jersey.api.client.Client;
 
 /**
  * Top-level entry point to the entire application.
@@ -58,18 +78,58 @@ public class BossApplication extends Application<BossConfiguration> {
     public void run(BossConfiguration config, Environment env) throws Exception {
 
         // Create an API object that the resources can use.
-        gDBI = new DBIFactory().build(env, config.getDataSourceFactory(), "db");
+        DataSourceFactory dsFactory = config.getDataSourceFactory();
+        CheckoutCountingDataSource dataSource =
+                new CheckoutCountingDataSource(dsFactory.build(env.metrics(), "db"), env.metrics());
+        gDBI = new DBIFactory().build(env, dsFactory, dataSource, "db");
         gDBI.registerArgumentFactory(new NullArgumentFactory());
         ObjectStoreConfiguration localConf = config.getLocalStoreConfiguration();
-        ObjectStore localStore = getObjectStore(localConf);
+        ObjectStore localStore = getObjectStore("localStore",localConf,config.getUrlCacheConfiguration(),env);
         ObjectStoreConfiguration cloudConf = config.getCloudStoreConfiguration();
-        ObjectStore cloudStore = getObjectStore(cloudConf);
-        gBossAPI = new DatabaseBossAPI(gDBI,localStore,cloudStore,getMessages());
+        ObjectStore cloudStore = getObjectStore("cloudStore",cloudConf,config.getUrlCacheConfiguration(),env);
+        ObjectStoreConfiguration fileConf = config.getFileStoreConfiguration();
+        ObjectStore fileStore = null;
+        if ( fileConf != null )
+            fileStore = getObjectStore("fileStore",fileConf,config.getUrlCacheConfiguration(),env);
+        gResolveDateWriter = new ResolveDateWriter(gDBI,config.getResolveDateConfiguration());
+        env.lifecycle().manage(gResolveDateWriter);
+        gAclCache = new AclCache(config.getAclCacheConfiguration());
+        gObjectCache = new ObjectRowCache(gDBI,config.getObjectCacheConfiguration());
+        env.lifecycle().manage(gObjectCache);
+        gNameIndex = new NameIndex(gDBI,config.getNameIndexConfiguration());
+        env.lifecycle().manage(gNameIndex);
+        int signingThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService signingExecutor = env.lifecycle().executorService("resolve-signer-%d")
+                .minThreads(signingThreads).maxThreads(signingThreads).build();
+        GroupCommitter groupCommitter = null;
+        if ( config.getGroupCommitConfiguration().maxDelayMillis > 0 ) {
+            groupCommitter = new GroupCommitter(gDBI,config.getGroupCommitConfiguration());
+            env.lifecycle().manage(groupCommitter);
+        }
+        Map<String,ObjectStore> stores = new HashMap<>();
+        stores.put(StoragePlatform.LOCALSTORE.getValue(),localStore);
+        stores.put(StoragePlatform.CLOUDSTORE.getValue(),cloudStore);
+        if ( fileStore != null )
+            stores.put(StoragePlatform.FILESTORE.getValue(),fileStore);
+        env.lifecycle().manage(new DeleteOutboxWorker(gDBI,stores,config.getDeleteOutboxConfiguration()));
+        CopyJobRunner copyJobRunner = new CopyJobRunner(gDBI,config.getCopyJobConfiguration());
+        env.lifecycle().manage(copyJobRunner);
+        gBossAPI = new DatabaseBossAPI(gDBI,localStore,cloudStore,fileStore,getMessages(),gResolveDateWriter,
+                                        gAclCache,gObjectCache,signingExecutor,signingThreads,groupCommitter,
+                                        SqlDialect.forDriverClass(dsFactory.getDriverClass()),gNameIndex,
+                                        copyJobRunner,env.getObjectMapper());
 
         // Set up the resources themselves.
-        env.jersey().register(new ObjectResource(gBossAPI));
+        // ObjectResource is reached through AllObjectsResource.
         env.jersey().register(new AllObjectsResource(gBossAPI));
 
+        // Track how many pooled connections each request takes.
+        env.servlets().addFilter("db-checkouts", dataSource.getRequestFilter())
+                .addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, "/*");
+
+        // Admin tasks.
+        env.admin().addTask(new AclCacheStatsTask(gAclCache));
+        env.admin().addTask(new ExportObjectsTask(gBossAPI));
 
     }
 
@@ -86,19 +146,56 @@ public class BossApplication extends Application<BossConfiguration> {
         bootstrap.addBundle(new AssetsBundle("/assets/", "/site"));
     }
 
-    // These next two little methods break encapsulation, and are just for unit testing.
+    // These next few little methods break encapsulation, and are just for unit testing.
+    public static DBI getDBI() {
+        return gDBI;
+    }
     public static BossDAO getDAO() {
         return gDBI.onDemand(BossDAO.class);
     }
     public static BossAPI getAPI() {
         return gBossAPI;
     }
+    public static ResolveDateWriter getResolveDateWriter() {
+        return gResolveDateWriter;
+    }
+    public static AclCache getAclCache() {
+        return gAclCache;
+    }
+    public static ObjectRowCache getObjectCache() {
+        return gObjectCache;
+    }
+    public static NameIndex getNameIndex() {
+        return gNameIndex;
+    }
+
+    private static ObjectStore getObjectStore( String name, ObjectStoreConfiguration config,
+                                               UrlCacheConfiguration urlCacheConfig, Environment env ) {
+        ObjectStore store = getObjectStore(name,config,env);
+        if ( urlCacheConfig.maxEntries > 0 )
+            store = new CachingObjectStore(store,urlCacheConfig);
+        return store;
+    }
 
-    private static ObjectStore getObjectStore( ObjectStoreConfiguration config ) throws Exception {
-        if ( "S3".equals(config.type) )
-            return new S3ObjectStore(config);
-        if ( "GCS".equals(config.type) )
-            return new GCSObjectStore(config);
+    private static ObjectStore getObjectStore( String name, ObjectStoreConfiguration config, Environment env ) {
+        if ( "S3".equals(config.type) ) {
+            S3ObjectStore store = new S3ObjectStore(config);
+            env.lifecycle().manage(store);
+            return store;
+        }
+        if ( "GCS".equals(config.type) ) {
+            Client client = new JerseyClientBuilder(env).using(config.httpClient).build(name);
+            GCSObjectStore store = new GCSObjectStore(config,client);
+            env.lifecycle().manage(store);
+            return store;
+        }
+        if ( "FILE".equals(config.type) ) {
+            // BOSS serves the files itself
+            String urlPath = "/files/"+name;
+            FileObjectStore store = new FileObjectStore(config,urlPath);
+            env.servlets().addServlet(name,new FileStoreServlet(store)).addMapping(urlPath+"/*");
+            return store;
+        }
         throw new IllegalStateException("ObjectStore configuration has unrecognized type: "+config.type);
     }
 
@@ -144,6 +241,10 @@ public class BossApplication extends Application<BossConfiguration> {
 
     private static DBI gDBI;
     private static BossAPI gBossAPI;
+    private static ResolveDateWriter gResolveDateWriter;
+    private static AclCache gAclCache;
+    private static ObjectRowCache gObjectCache;
+    private static NameIndex gNameIndex;
     private static Map<String,String> gMessages;
     private static final String MESSAGES_FILE = "messages.yml";
 }
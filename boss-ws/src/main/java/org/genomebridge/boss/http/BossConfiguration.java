@@ -8,7 +8,15 @@ import io.dropwizard.db.DataSourceFactory;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
+import org.genomebridge.boss.http.db.AclCacheConfiguration;
+import org.genomebridge.boss.http.db.NameIndexConfiguration;
+import org.genomebridge.boss.http.db.ObjectRowCacheConfiguration;
 import org.genomebridge.boss.http.objectstore.ObjectStoreConfiguration;
+import org.genomebridge.boss.http.objectstore.UrlCacheConfiguration;
+import org.genomebridge.boss.http.service.GroupCommitConfiguration;
+import org.genomebridge.boss.http.service.CopyJobConfiguration;
+import org.genomebridge.boss.http.service.DeleteOutboxConfiguration;
+import org.genomebridge.boss.http.service.ResolveDateConfiguration;
 
 public class BossConfiguration extends Configuration {
 
@@ -26,6 +34,43 @@ public class BossConfiguration extends Configuration {
         return cloudStore;
     }
 
+    // null unless the server keeps fileStore objects
+    public ObjectStoreConfiguration getFileStoreConfiguration() {
+        return fileStore;
+    }
+
+    public ResolveDateConfiguration getResolveDateConfiguration() {
+        return resolveDates;
+    }
+
+    public AclCacheConfiguration getAclCacheConfiguration() {
+        return aclCache;
+    }
+
+    public ObjectRowCacheConfiguration getObjectCacheConfiguration() {
+        return objectCache;
+    }
+
+    public UrlCacheConfiguration getUrlCacheConfiguration() {
+        return urlCache;
+    }
+
+    public GroupCommitConfiguration getGroupCommitConfiguration() {
+        return groupCommit;
+    }
+
+    public NameIndexConfiguration getNameIndexConfiguration() {
+        return nameIndex;
+    }
+
+    public DeleteOutboxConfiguration getDeleteOutboxConfiguration() {
+        return deleteOutbox;
+    }
+
+    public CopyJobConfiguration getCopyJobConfiguration() {
+        return copyJobs;
+    }
+
     @Valid
     @NotNull
     @JsonProperty
@@ -40,4 +85,48 @@ public class BossConfiguration extends Configuration {
     @NotNull
     @JsonProperty
     private ObjectStoreConfiguration cloudStore = new ObjectStoreConfiguration();
+
+    @Valid
+    @JsonProperty
+    private ObjectStoreConfiguration fileStore;
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ResolveDateConfiguration resolveDates = new ResolveDateConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private AclCacheConfiguration aclCache = new AclCacheConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ObjectRowCacheConfiguration objectCache = new ObjectRowCacheConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private UrlCacheConfiguration urlCache = new UrlCacheConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private GroupCommitConfiguration groupCommit = new GroupCommitConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private NameIndexConfiguration nameIndex = new NameIndexConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private DeleteOutboxConfiguration deleteOutbox = new DeleteOutboxConfiguration();
+
+    @Valid
+    @NotNull
+    @JsonProperty
+    private CopyJobConfiguration copyJobs = new CopyJobConfiguration();
 }
@@ -0,0 +1,125 @@
+package org.genomebridge.boss.http.db;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A bounded cache of each object's readers and writers, keyed by objectId, that answers
+ * permission checks without a trip to the database.
+ *
+ * A miss loads the ACLs with a single query.  Anything that changes an object's ACLs must
+ * call invalidate() once its transaction has committed.
+ *
+ * As with the ObjectRowCache, a caller that caches ACLs it has read takes a stamp() before reading
+ * them and passes it to put().  Each objectId hashes to one of a fixed set of stamps, which an
+ * invalidate() advances, and a put whose stamp has moved on is dropped.  That keeps a reader that
+ * started before an update committed from caching the ACLs the update just replaced.
+ */
+public class AclCache {
+
+    public AclCache( AclCacheConfiguration config ) {
+        mCache = CacheBuilder.newBuilder()
+                .maximumSize(config.maxEntries)
+                .expireAfterWrite(config.expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        for ( int idx = 0; idx < N_STRIPES; ++idx )
+            mLocks[idx] = new Object();
+    }
+
+    public boolean canRead( BossDAO dao, String objectId, String userName ) {
+        return getAcls(dao, objectId).readers.contains(userName);
+    }
+
+    public boolean canWrite( BossDAO dao, String objectId, String userName ) {
+        return getAcls(dao, objectId).writers.contains(userName);
+    }
+
+    /**
+     * To be taken before reading an object's ACLs, and passed to put() with them.
+     */
+    public long stamp( String objectId ) {
+        synchronized ( lockFor(objectId) ) {
+            return mStamps[stripeFor(objectId)];
+        }
+    }
+
+    /**
+     * Caches ACLs that a caller has just read from the database for some other reason, unless the
+     * object has been invalidated since the stamp was taken.
+     */
+    public void put( String objectId, Collection<String> readers, Collection<String> writers, long stamp ) {
+        put(objectId, new Acls(readers, writers), stamp);
+    }
+
+    public void invalidate( String objectId ) {
+        synchronized ( lockFor(objectId) ) {
+            mStamps[stripeFor(objectId)] += 1;
+            mCache.invalidate(objectId);
+        }
+    }
+
+    public void invalidateAll() {
+        for ( int idx = 0; idx < N_STRIPES; ++idx ) {
+            synchronized ( mLocks[idx] ) {
+                mStamps[idx] += 1;
+            }
+        }
+        mCache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return mCache.stats();
+    }
+
+    public long size() {
+        return mCache.size();
+    }
+
+    private Acls getAcls( BossDAO dao, String objectId ) {
+        Acls acls = mCache.getIfPresent(objectId);
+        if ( acls == null ) {
+            long stamp = stamp(objectId);
+            ObjectAclRow rec = ObjectAclRow.fold(dao.findObjectAndAclsById(objectId));
+            acls = rec == null ? NO_ACLS : new Acls(rec.readers, rec.writers);
+            put(objectId, acls, stamp);
+        }
+        return acls;
+    }
+
+    private void put( String objectId, Acls acls, long stamp ) {
+        synchronized ( lockFor(objectId) ) {
+            if ( stamp == mStamps[stripeFor(objectId)] )
+                mCache.put(objectId, acls);
+        }
+    }
+
+    private Object lockFor( String objectId ) {
+        return mLocks[stripeFor(objectId)];
+    }
+
+    private static int stripeFor( String objectId ) {
+        int hash = objectId.hashCode();
+        return (hash ^ (hash >>> 16)) & (N_STRIPES - 1);
+    }
+
+    private static class Acls {
+        Acls( Collection<String> readers, Collection<String> writers ) {
+            this.readers = ImmutableSet.copyOf(readers);
+            this.writers = ImmutableSet.copyOf(writers);
+        }
+        final ImmutableSet<String> readers;
+        final ImmutableSet<String> writers;
+    }
+
+    private Cache<String,Acls> mCache;
+    private final long[] mStamps = new long[N_STRIPES];
+    private final Object[] mLocks = new Object[N_STRIPES];
+    private static final int N_STRIPES = 64;
+    private static final Acls NO_ACLS = new Acls(ImmutableSet.<String>of(), ImmutableSet.<String>of());
+}
@@ -0,0 +1,19 @@
+package org.genomebridge.boss.http.db;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration for the cache of object ACLs.  This is configured using an aclCache clause
+ * in the YAML configuration file.
+ */
+public class AclCacheConfiguration {
+
+    // The most objects whose ACLs are held at once.  Zero turns the cache off.
+    @Min(0)
+    public long maxEntries = 100000L;
+
+    // Changes made through this server invalidate its cache right away, but changes made through
+    // another server sharing the database can go unnoticed for this long.
+    @Min(1)
+    public long expireAfterWriteSeconds = 60L;
+}
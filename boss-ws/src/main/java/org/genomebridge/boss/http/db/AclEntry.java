@@ -0,0 +1,9 @@
+package org.genomebridge.boss.http.db;
+
+/**
+ * One row of the readers or writers table.
+ */
+public class AclEntry {
+    public String objectId;
+    public String username;
+}
@@ -0,0 +1,18 @@
+package org.genomebridge.boss.http.db;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class AclEntryMapper implements ResultSetMapper<AclEntry> {
+    public AclEntry map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        AclEntry entry = new AclEntry();
+
+        entry.objectId = r.getString("objectId");
+        entry.username = r.getString("username");
+
+        return entry;
+    }
+}
@@ -0,0 +1,202 @@
+package org.genomebridge.boss.http.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.SQLStatement;
+import org.skife.jdbi.v2.Update;
+
+/**
+ * Set-based ACL changes.
+ *
+ * setReaders and setWriters set the ACL of one object with one delete of the rows not in the new
+ * list, and one insert of the users that don't already have a row.  grant and revoke add or remove
+ * users across a Selection of live objects with one statement each.  Either way the statement count
+ * doesn't depend on the number of users, objects selected by owner and name take one Selection, and
+ * objects selected by id take one for each BossDAO.MAX_IN_LIST of them.  Current ACLs are never read
+ * into the application.  The statements run on the caller's handle, inside its transaction.
+ */
+public class AclSync {
+
+    public AclSync( SqlDialect dialect ) {
+        mDialect = dialect;
+    }
+
+    public void setReaders( Handle handle, String objectId, Collection<String> readers ) {
+        setUsers(handle, "readers", objectId, readers);
+    }
+
+    public void setWriters( Handle handle, String objectId, Collection<String> writers ) {
+        setUsers(handle, "writers", objectId, writers);
+    }
+
+    /**
+     * Live objects chosen by id, or by owner and/or name.
+     */
+    public static class Selection {
+        private Selection( String where ) {
+            mWhere = where;
+        }
+
+        // a condition on the objects table, aliased as o
+        private final String mWhere;
+        private final Map<String,String> mBinds = new HashMap<>();
+    }
+
+    /**
+     * Selections that together cover the ids, each of at most BossDAO.MAX_IN_LIST of them.  A chunk
+     * is padded out to a power of two by repeating its last id, so that however many ids there are,
+     * the statements come in just a few shapes that the database can keep prepared.  The ids must
+     * not be null.
+     */
+    public List<Selection> selectByIds( Collection<String> objectIds ) {
+        List<String> idList = new ArrayList<>(new TreeSet<>(objectIds));
+        List<Selection> selections = new ArrayList<>();
+        for ( int start = 0; start < idList.size(); start += BossDAO.MAX_IN_LIST ) {
+            List<String> chunk = idList.subList(start, Math.min(start + BossDAO.MAX_IN_LIST, idList.size()));
+            int nParams = Math.min(Integer.highestOneBit(chunk.size() * 2 - 1), BossDAO.MAX_IN_LIST);
+            List<String> paramNames = paramNames("i", nParams);
+            Selection selection = new Selection("o.objectId in (select v.objectId from " +
+                    mDialect.valuesTable(paramNames, "v", "objectId") + ")");
+            for ( int idx = 0; idx < nParams; ++idx )
+                selection.mBinds.put(paramNames.get(idx), chunk.get(Math.min(idx, chunk.size() - 1)));
+            selections.add(selection);
+        }
+        return selections;
+    }
+
+    public Selection selectByOwnerAndName( String ownerId, String objectName ) {
+        StringBuilder where = new StringBuilder("1 = 1");
+        if ( ownerId != null )
+            where.append(" and o.ownerId = :ownerId");
+        if ( objectName != null )
+            where.append(" and o.objectName = :objectName");
+        Selection selection = new Selection(where.toString());
+        if ( ownerId != null )
+            selection.mBinds.put("ownerId", ownerId);
+        if ( objectName != null )
+            selection.mBinds.put("objectName", objectName);
+        return selection;
+    }
+
+    /**
+     * Returns the number of live objects selected, and how many of those the user can't write.
+     */
+    public int[] countSelected( Handle handle, Selection selection, String userName ) {
+        Query<Map<String,Object>> query = handle.createQuery(
+                "select count(*) as total, " +
+                "sum(case when w.objectId is null then 1 else 0 end) as unwritable from objects o " +
+                "left outer join writers w on w.objectId = o.objectId and w.username = :userName " +
+                "where o.active = 'Y' and " + selection.mWhere);
+        bind(query, selection).bind("userName", userName);
+        Map<String,Object> row = query.first();
+        Number total = (Number)findIgnoringCase(row, "total");
+        Number unwritable = (Number)findIgnoringCase(row, "unwritable");
+        return new int[] { total.intValue(), unwritable == null ? 0 : unwritable.intValue() };
+    }
+
+    public void grantReaders( Handle handle, Selection selection, Collection<String> readers ) {
+        grant(handle, "readers", selection, readers);
+    }
+
+    public void revokeReaders( Handle handle, Selection selection, Collection<String> readers ) {
+        revoke(handle, "readers", selection, readers);
+    }
+
+    public void grantWriters( Handle handle, Selection selection, Collection<String> writers ) {
+        grant(handle, "writers", selection, writers);
+    }
+
+    public void revokeWriters( Handle handle, Selection selection, Collection<String> writers ) {
+        revoke(handle, "writers", selection, writers);
+    }
+
+    private void grant( Handle handle, String table, Selection selection, Collection<String> users ) {
+        SortedSet<String> userSet = new TreeSet<>(users);
+        if ( userSet.isEmpty() )
+            return;
+        List<String> paramNames = paramNames("u", userSet.size());
+        Update insert = handle.createStatement(
+                "insert into " + table + " (objectId, username) " +
+                "select o.objectId, u.username " +
+                "from objects o, " + mDialect.valuesTable(paramNames, "u", "username") + " " +
+                "where o.active = 'Y' and " + selection.mWhere + " " +
+                "and not exists (select 1 from " + table + " t " +
+                                "where t.objectId = o.objectId and t.username = u.username)");
+        bindUsers(bind(insert, selection), paramNames, userSet).execute();
+    }
+
+    private void revoke( Handle handle, String table, Selection selection, Collection<String> users ) {
+        SortedSet<String> userSet = new TreeSet<>(users);
+        if ( userSet.isEmpty() )
+            return;
+        List<String> paramNames = paramNames("u", userSet.size());
+        Update delete = handle.createStatement(
+                "delete from " + table + " " +
+                "where username in (select u.username from " + mDialect.valuesTable(paramNames, "u", "username") + ") " +
+                "and objectId in (select o.objectId from objects o where o.active = 'Y' and " + selection.mWhere + ")");
+        bindUsers(bind(delete, selection), paramNames, userSet).execute();
+    }
+
+    private void setUsers( Handle handle, String table, String objectId, Collection<String> users ) {
+        SortedSet<String> userSet = new TreeSet<>(users);
+        if ( userSet.isEmpty() ) {
+            handle.createStatement("delete from " + table + " where objectId = :objectId")
+                    .bind("objectId", objectId)
+                    .execute();
+            return;
+        }
+
+        List<String> paramNames = paramNames("u", userSet.size());
+        String newUsers = mDialect.valuesTable(paramNames, "u", "username");
+
+        // a subquery rather than a list of expressions, so Oracle's limit on IN lists doesn't apply
+        Update delete = handle.createStatement(
+                "delete from " + table + " where objectId = :objectId " +
+                "and username not in (select u.username from " + newUsers + ")");
+        Update insert = handle.createStatement(
+                "insert into " + table + " (objectId, username) " +
+                "select " + mDialect.param("objectId") + ", u.username from " + newUsers + " " +
+                "where not exists (select 1 from " + table + " t " +
+                                  "where t.objectId = :objectId and t.username = u.username)");
+        bindUsers(delete.bind("objectId", objectId), paramNames, userSet).execute();
+        bindUsers(insert.bind("objectId", objectId), paramNames, userSet).execute();
+    }
+
+    private static List<String> paramNames( String prefix, int count ) {
+        List<String> paramNames = new ArrayList<>(count);
+        for ( int idx = 0; idx < count; ++idx )
+            paramNames.add(prefix + idx);
+        return paramNames;
+    }
+
+    private static Update bindUsers( Update update, List<String> paramNames, SortedSet<String> users ) {
+        int idx = 0;
+        for ( String user : users )
+            update.bind(paramNames.get(idx++), user);
+        return update;
+    }
+
+    private static <T extends SQLStatement<T>> T bind( T statement, Selection selection ) {
+        for ( Map.Entry<String,String> entry : selection.mBinds.entrySet() )
+            statement.bind(entry.getKey(), entry.getValue());
+        return statement;
+    }
+
+    // databases differ on the case of the column labels they report
+    private static Object findIgnoringCase( Map<String,Object> row, String column ) {
+        for ( Map.Entry<String,Object> entry : row.entrySet() )
+            if ( entry.getKey().equalsIgnoreCase(column) )
+                return entry.getValue();
+        return null;
+    }
+
+    private SqlDialect mDialect;
+}
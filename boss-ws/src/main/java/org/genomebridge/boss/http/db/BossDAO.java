@@ -4,15 +4,29 @@ import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
+import org.skife.jdbi.v2.sqlobject.customizers.MaxRows;
+import org.skife.jdbi.v2.sqlobject.customizers.OverrideStatementLocatorWith;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 
-@RegisterMapper({ ObjectRowMapper.class })
+/**
+ * Methods taking a @BindIn collection expand it into an IN list.  The collection must not be empty,
+ * and callers should keep it to MAX_IN_LIST elements or fewer.
+ */
+@RegisterMapper({ ObjectRowMapper.class, ObjectAclRowMapper.class, AclEntryMapper.class,
+                  DeleteOutboxRowMapper.class, CopyJobRowMapper.class })
+@OverrideStatementLocatorWith(DefinedAttributeStatementLocator.class)
 public interface BossDAO extends Transactional<BossDAO> {
 
+    // Oracle won't take more than 1000 expressions in an IN list.
+    public static final int MAX_IN_LIST = 1000;
+
     /*
     Object API
      */
@@ -20,10 +34,51 @@ public interface BossDAO extends Transactional<BossDAO> {
     @SqlQuery("select * from objects where objectId = :objectId")
     public ObjectRow findObjectById(@Bind("objectId") String objectId);
 
+    // One row per reader and per writer (or a single row if there are no readers).  Use ObjectAclRow.fold.
+    @SqlQuery("select o.*, 'R' as aclType, r.username from objects o " +
+              "left outer join readers r on r.objectId = o.objectId where o.objectId = :objectId " +
+              "union all " +
+              "select o.*, 'W' as aclType, w.username from objects o " +
+              "inner join writers w on w.objectId = o.objectId where o.objectId = :objectId")
+    public List<ObjectAclRow> findObjectAndAclsById(@Bind("objectId") String objectId);
+
     @SqlQuery("select o.* from objects o inner join readers r on o.objectId = r.objectId " +
               "where o.objectName = :objectName and o.active='Y' and r.username = :username")
     public List<ObjectRow> findObjectsByName(@Bind("username") String username, @Bind("objectName") String objectName);
 
+    // Keyset pages of the live objects a user can read, in objectId order, starting after afterId.
+    @SqlQuery("select o.* from readers r inner join objects o on o.objectId = r.objectId " +
+              "where r.username = :username and r.objectId > :afterId and o.active = 'Y' " +
+              "and o.createDate >= :createdAfter and o.createDate < :createdBefore " +
+              "order by r.objectId")
+    public List<ObjectRow> findReadableObjectsPage(@Bind("username") String username,
+                                                   @Bind("afterId") String afterId,
+                                                   @Bind("createdAfter") Timestamp createdAfter,
+                                                   @Bind("createdBefore") Timestamp createdBefore,
+                                                   @MaxRows(1) int maxRows);
+
+    // Keyset pages of an owner's live objects that a user can read, in (createDate, objectId) order,
+    // starting after (afterDate, afterId).
+    @SqlQuery("select o.* from objects o " +
+              "where o.ownerId = :ownerId and o.active = 'Y' " +
+              "and (o.createDate > :afterDate or (o.createDate = :afterDate and o.objectId > :afterId)) " +
+              "and o.createDate < :createdBefore " +
+              "and exists (select 1 from readers r where r.objectId = o.objectId and r.username = :username) " +
+              "order by o.createDate, o.objectId")
+    public List<ObjectRow> findOwnedObjectsPage(@Bind("username") String username,
+                                                @Bind("ownerId") String ownerId,
+                                                @Bind("afterDate") Timestamp afterDate,
+                                                @Bind("afterId") String afterId,
+                                                @Bind("createdBefore") Timestamp createdBefore,
+                                                @MaxRows(1) int maxRows);
+
+    @SqlQuery("select * from objects where objectId in (<objectIds>)")
+    public List<ObjectRow> findObjectsByIds(@BindIn("objectIds") Collection<String> objectIds);
+
+    // The annotation's value is ignored on a parameter; the argument sets the limit.
+    @SqlQuery("select * from objects where active = 'Y' and resolveDate is not null order by resolveDate desc")
+    public List<ObjectRow> findRecentlyResolved(@MaxRows(1) int maxRows);
+
     @SqlUpdate("insert into objects " +
             "(objectId, objectName, ownerId, sizeEstimateBytes, location, storagePlatform, createdBy, active, createDate ) values " +
             "(:objectId, :objectName, :ownerId, :sizeEstimate, :location, :storagePlatform, :createdBy, 'Y', :now)")
@@ -36,6 +91,20 @@ public interface BossDAO extends Transactional<BossDAO> {
                              @Bind("createdBy") String createdBy,
                              @Bind("now") Timestamp now);
 
+    // Parallel lists, one element per object; now is shared by the whole batch.
+    @SqlBatch("insert into objects " +
+            "(objectId, objectName, ownerId, sizeEstimateBytes, location, storagePlatform, createdBy, active, createDate ) values " +
+            "(:objectId, :objectName, :ownerId, :sizeEstimate, :location, :storagePlatform, :createdBy, 'Y', :now)")
+    @BatchChunkSize(MAX_IN_LIST)
+    public void insertObjects(@Bind("objectId") List<String> objectIds,
+                              @Bind("objectName") List<String> objectNames,
+                              @Bind("ownerId") List<String> ownerIds,
+                              @Bind("sizeEstimate") List<Long> sizeEstimates,
+                              @Bind("location") List<String> locations,
+                              @Bind("storagePlatform") List<String> storagePlatforms,
+                              @Bind("createdBy") List<String> createdBys,
+                              @Bind("now") Timestamp now);
+
     @SqlUpdate("update objects set ownerId = :ownerId, sizeEstimateBytes = :sizeEstimate, " +
             "objectName = :objectName, modifyDate = :now where objectId = :objectId and active='Y'")
     public void updateObject(@Bind("objectId") String objectId,
@@ -50,6 +119,11 @@ public interface BossDAO extends Transactional<BossDAO> {
     @SqlUpdate("update objects set resolveDate = :now where objectId = :objectId")
     public void updateResolveDate(@Bind("objectId") String objectId, @Bind("now") Timestamp now);
 
+    // Skips rows that already have a later resolveDate, which another server may have written.
+    @SqlBatch("update objects set resolveDate = :now where objectId = :objectId " +
+              "and (resolveDate is null or resolveDate < :now)")
+    public void updateResolveDates(@Bind("objectId") List<String> objectIds, @Bind("now") List<Timestamp> nows);
+
     /*
     Readers/Writers API
      */
@@ -60,23 +134,104 @@ public interface BossDAO extends Transactional<BossDAO> {
     @SqlQuery("select count(*) from writers where objectId = :objectId and username = :userName")
     public boolean canWrite(@Bind("objectId") String objectId, @Bind("userName") String userName);
 
+    @SqlQuery("select objectId from readers where username = :username and objectId in (<objectIds>)")
+    public List<String> findReadableIds(@Bind("username") String username,
+                                        @BindIn("objectIds") Collection<String> objectIds);
+
+    @SqlQuery("select objectId from writers where username = :username and objectId in (<objectIds>)")
+    public List<String> findWritableIds(@Bind("username") String username,
+                                        @BindIn("objectIds") Collection<String> objectIds);
+
     @SqlQuery("select distinct(username) from readers where objectId = :objectId")
     public List<String> findReadersById(@Bind("objectId") String objectId);
 
+    @SqlQuery("select objectId, username from readers where objectId in (<objectIds>)")
+    public List<AclEntry> findReadersByIds(@BindIn("objectIds") Collection<String> objectIds);
+
     @SqlBatch("insert into readers (objectId, username) values (:objectId, :username)")
     public void insertReaders( @Bind("objectId") String objectId, @Bind("username") List<String> readers );
 
+    // Parallel lists of (objectId, username) pairs spanning any number of objects.
+    @SqlBatch("insert into readers (objectId, username) values (:objectId, :username)")
+    @BatchChunkSize(MAX_IN_LIST)
+    public void insertReaderRows( @Bind("objectId") List<String> objectIds, @Bind("username") List<String> readers );
+
     @SqlBatch("delete from readers where objectId = :objectId and username = :username")
     public void deleteReaders( @Bind("objectId") String objectId, @Bind("username") List<String> readers );
 
     @SqlQuery("select distinct(username) from writers where objectId = :objectId")
     public List<String> findWritersById(@Bind("objectId") String objectId);
 
+    @SqlQuery("select objectId, username from writers where objectId in (<objectIds>)")
+    public List<AclEntry> findWritersByIds(@BindIn("objectIds") Collection<String> objectIds);
+
     @SqlBatch("insert into writers (objectId, username) values (:objectId, :username)")
     public void insertWriters( @Bind("objectId") String objectId, @Bind("username") List<String> readers );
 
+    @SqlBatch("insert into writers (objectId, username) values (:objectId, :username)")
+    @BatchChunkSize(MAX_IN_LIST)
+    public void insertWriterRows( @Bind("objectId") List<String> objectIds, @Bind("username") List<String> writers );
+
     @SqlBatch("delete from writers where objectId = :objectId and username = :username")
     public void deleteWriters( @Bind("objectId") String objectId, @Bind("username") List<String> readers );
 
+    /*
+    Delete outbox API
+     */
+
+    @SqlUpdate("insert into deleteOutbox (objectId, storagePlatform, location, attempts, nextAttemptDate) " +
+            "values (:objectId, :storagePlatform, :location, 0, :now)")
+    public void insertDeleteOutbox(@Bind("objectId") String objectId,
+                                   @Bind("storagePlatform") String storagePlatform,
+                                   @Bind("location") String location,
+                                   @Bind("now") Timestamp now);
+
+    @SqlQuery("select * from deleteOutbox where objectId = :objectId")
+    public DeleteOutboxRow findDeleteOutboxById(@Bind("objectId") String objectId);
+
+    // The annotation's value is ignored on a parameter; the argument sets the limit.
+    @SqlQuery("select * from deleteOutbox where nextAttemptDate <= :now order by nextAttemptDate")
+    public List<DeleteOutboxRow> findDueDeletes(@Bind("now") Timestamp now, @MaxRows(1) int maxRows);
+
+    // Pushes nextAttemptDate out to the lease, but only where it's still what the caller saw.
+    // A count of 1 means the caller has claimed that row; 0 means another server got there first.
+    @SqlBatch("update deleteOutbox set nextAttemptDate = :lease " +
+            "where objectId = :objectId and nextAttemptDate = :seen")
+    @BatchChunkSize(MAX_IN_LIST)
+    public int[] leaseDeletes(@Bind("objectId") List<String> objectIds,
+                              @Bind("seen") List<Timestamp> seenDates,
+                              @Bind("lease") Timestamp lease);
+
+    @SqlBatch("delete from deleteOutbox where objectId = :objectId")
+    @BatchChunkSize(MAX_IN_LIST)
+    public void removeDeletes(@Bind("objectId") List<String> objectIds);
+
+    // A null nextAttemptDate means there will be no further attempts.
+    @SqlBatch("update deleteOutbox set attempts = attempts + 1, nextAttemptDate = :next, lastError = :error " +
+            "where objectId = :objectId")
+    @BatchChunkSize(MAX_IN_LIST)
+    public void failDeletes(@Bind("objectId") List<String> objectIds,
+                            @Bind("next") List<Timestamp> nextAttemptDates,
+                            @Bind("error") List<String> errors);
+
+    /*
+    Copy job API
+     */
 
+    @SqlUpdate("insert into copyJobs (jobId, objectId, locationToCopy, status, startDate) " +
+            "values (:jobId, :objectId, :locationToCopy, :status, :now)")
+    public void insertCopyJob(@Bind("jobId") String jobId,
+                              @Bind("objectId") String objectId,
+                              @Bind("locationToCopy") String locationToCopy,
+                              @Bind("status") String status,
+                              @Bind("now") Timestamp now);
+
+    @SqlUpdate("update copyJobs set status = :status, message = :message, endDate = :now where jobId = :jobId")
+    public void finishCopyJob(@Bind("jobId") String jobId,
+                              @Bind("status") String status,
+                              @Bind("message") String message,
+                              @Bind("now") Timestamp now);
+
+    @SqlQuery("select * from copyJobs where jobId = :jobId")
+    public CopyJobRow findCopyJobById(@Bind("jobId") String jobId);
 }
@@ -0,0 +1,144 @@
+package org.genomebridge.boss.http.db;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import io.dropwizard.db.ManagedDataSource;
+
+/**
+ * Wraps the connection pool to count how often connections are checked out of it.
+ *
+ * Every checkout marks the "checkouts" meter.  Checkouts are also tallied per thread, so that
+ * the RequestFilter can record the number taken during each HTTP request in the
+ * "checkouts-per-request" histogram.
+ */
+public class CheckoutCountingDataSource implements ManagedDataSource {
+
+    public CheckoutCountingDataSource( ManagedDataSource dataSource, MetricRegistry metrics ) {
+        mDataSource = dataSource;
+        mCheckouts = metrics.meter(MetricRegistry.name(CheckoutCountingDataSource.class, "checkouts"));
+        mCheckoutsPerRequest = metrics.histogram(MetricRegistry.name(CheckoutCountingDataSource.class, "checkouts-per-request"));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        countCheckout();
+        return mDataSource.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        countCheckout();
+        return mDataSource.getConnection(username, password);
+    }
+
+    /**
+     * The number of connections the current thread has checked out since it started.
+     */
+    public long getThreadCheckouts() {
+        return gThreadCheckouts.get()[0];
+    }
+
+    public Filter getRequestFilter() {
+        return new RequestFilter();
+    }
+
+    @Override
+    public void start() throws Exception {
+        mDataSource.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        mDataSource.stop();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return mDataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        mDataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        mDataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return mDataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return mDataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if ( iface.isInstance(this) )
+            return iface.cast(this);
+        return mDataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || mDataSource.isWrapperFor(iface);
+    }
+
+    private void countCheckout() {
+        mCheckouts.mark();
+        gThreadCheckouts.get()[0] += 1;
+    }
+
+    private class RequestFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) {}
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            long before = getThreadCheckouts();
+            try {
+                chain.doFilter(request, response);
+            }
+            finally {
+                mCheckoutsPerRequest.update(getThreadCheckouts() - before);
+            }
+        }
+
+        @Override
+        public void destroy() {}
+    }
+
+    private ManagedDataSource mDataSource;
+    private Meter mCheckouts;
+    private Histogram mCheckoutsPerRequest;
+
+    private static final ThreadLocal<long[]> gThreadCheckouts = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+}
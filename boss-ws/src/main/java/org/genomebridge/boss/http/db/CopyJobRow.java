@@ -0,0 +1,16 @@
+package org.genomebridge.boss.http.db;
+
+import java.sql.Timestamp;
+
+/**
+ * One row of the copyJobs table:  a server-side copy of locationToCopy into an object.
+ */
+public class CopyJobRow {
+    public String jobId;
+    public String objectId;
+    public String locationToCopy;
+    public String status;
+    public String message;
+    public Timestamp startDate;
+    public Timestamp endDate;
+}
@@ -0,0 +1,23 @@
+package org.genomebridge.boss.http.db;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class CopyJobRowMapper implements ResultSetMapper<CopyJobRow> {
+    public CopyJobRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        CopyJobRow row = new CopyJobRow();
+
+        row.jobId = r.getString("jobId");
+        row.objectId = r.getString("objectId");
+        row.locationToCopy = r.getString("locationToCopy");
+        row.status = r.getString("status");
+        row.message = r.getString("message");
+        row.startDate = r.getTimestamp("startDate");
+        row.endDate = r.getTimestamp("endDate");
+
+        return row;
+    }
+}
@@ -0,0 +1,36 @@
+package org.genomebridge.boss.http.db;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+
+/**
+ * Replaces each &lt;name&gt; in a statement with the statement attribute of that name.
+ *
+ * JDBI's @BindIn defines an attribute holding the list of parameter names it binds for a
+ * collection, and expects the statement locator to splice that list into the SQL.  JDBI's own
+ * locator for that needs StringTemplate, which we'd rather not drag in for this one job.
+ * Tokens that don't name a defined attribute are left alone.
+ */
+public class DefinedAttributeStatementLocator implements StatementLocator {
+
+    @Override
+    public String locate(String sql, StatementContext ctx) {
+        Matcher matcher = ATTRIBUTE.matcher(sql);
+        if ( !matcher.find() )
+            return sql;
+
+        StringBuffer sb = new StringBuffer(sql.length()+64);
+        do {
+            Object value = ctx.getAttribute(matcher.group(1));
+            String replacement = value != null ? value.toString() : matcher.group();
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        } while ( matcher.find() );
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static final Pattern ATTRIBUTE = Pattern.compile("<(\\w+)>");
+}
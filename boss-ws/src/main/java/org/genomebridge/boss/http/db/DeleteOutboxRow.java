@@ -0,0 +1,16 @@
+package org.genomebridge.boss.http.db;
+
+import java.sql.Timestamp;
+
+/**
+ * One row of the deleteOutbox table:  the store key of a deleted object that hasn't yet been
+ * removed from its object store.  nextAttemptDate is null once DeleteOutboxWorker has given up.
+ */
+public class DeleteOutboxRow {
+    public String objectId;
+    public String storagePlatform;
+    public String location;
+    public int attempts;
+    public Timestamp nextAttemptDate;
+    public String lastError;
+}
@@ -0,0 +1,22 @@
+package org.genomebridge.boss.http.db;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class DeleteOutboxRowMapper implements ResultSetMapper<DeleteOutboxRow> {
+    public DeleteOutboxRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        DeleteOutboxRow row = new DeleteOutboxRow();
+
+        row.objectId = r.getString("objectId");
+        row.storagePlatform = r.getString("storagePlatform");
+        row.location = r.getString("location");
+        row.attempts = r.getInt("attempts");
+        row.nextAttemptDate = r.getTimestamp("nextAttemptDate");
+        row.lastError = r.getString("lastError");
+
+        return row;
+    }
+}
@@ -0,0 +1,248 @@
+package org.genomebridge.boss.http.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * An in-memory index from object names to the ids of the live objects having them, for searching
+ * by name prefix and, optionally, by substring.
+ *
+ * Names are kept in a sorted skip list, so the names with a given prefix are a contiguous run of
+ * it.  For substring search, each name is also filed under every trigram (three-character
+ * substring) it contains; a search looks through the names filed under the search string's rarest
+ * trigram.  Reads take no locks.  Writes are serialized, and replace a name's array of ids rather
+ * than changing it.
+ *
+ * The index is loaded from the database when the application starts, and then kept up to date by
+ * calls to add() and remove() as objects are created and deleted.  (Names can't be updated.)  It
+ * knows nothing of ACLs:  callers filter what it returns by what the user may read.  Changes made
+ * through another server sharing the database aren't seen until a restart.
+ */
+public class NameIndex implements Managed {
+
+    public NameIndex( DBI dbi, NameIndexConfiguration config ) {
+        mDBI = dbi;
+        mConfig = config;
+    }
+
+    public boolean isEnabled() {
+        return mConfig.enabled;
+    }
+
+    public boolean hasSubstrings() {
+        return mConfig.enabled && mConfig.substrings;
+    }
+
+    public synchronized void add( String objectId, String objectName ) {
+        if ( !isEnabled() || objectName == null )
+            return;
+        String[] ids = mByName.get(objectName);
+        if ( ids == null ) {
+            mByName.put(objectName, new String[] { objectId });
+            if ( hasSubstrings() )
+                for ( String trigram : trigrams(objectName) )
+                    namesWith(trigram).add(objectName);
+        }
+        else {
+            // a name's ids are kept sorted, so a search can pick up where it left off
+            int idx = Arrays.binarySearch(ids, objectId);
+            if ( idx < 0 )
+                mByName.put(objectName, (String[])ArrayUtils.add(ids, -idx-1, objectId));
+        }
+    }
+
+    public synchronized void remove( String objectId, String objectName ) {
+        if ( !isEnabled() || objectName == null )
+            return;
+        String[] ids = mByName.get(objectName);
+        if ( ids == null || !ArrayUtils.contains(ids, objectId) )
+            return;
+        if ( ids.length > 1 ) {
+            mByName.put(objectName, (String[])ArrayUtils.removeElement(ids, objectId));
+            return;
+        }
+        mByName.remove(objectName);
+        if ( hasSubstrings() ) {
+            for ( String trigram : trigrams(objectName) ) {
+                Set<String> names = mByTrigram.get(trigram);
+                if ( names != null )
+                    names.remove(objectName);
+            }
+        }
+    }
+
+    /**
+     * An object found by name.  Searches return them in name order, and in objectId order for a name.
+     */
+    public static class Match {
+        public Match( String name, String objectId ) {
+            this.name = name;
+            this.objectId = objectId;
+        }
+
+        public final String name;
+        public final String objectId;
+    }
+
+    /**
+     * The objects whose names start with the prefix, starting after the given match, or from the
+     * beginning if it's null.  The iterator is lazy, so stopping early costs nothing for the names
+     * not reached.
+     */
+    public Iterator<Match> matchesWithPrefix( final String prefix, final Match after ) {
+        String from = after != null && after.name.compareTo(prefix) > 0 ? after.name : prefix;
+        final Iterator<Map.Entry<String,String[]>> entries = mByName.tailMap(from, true).entrySet().iterator();
+        return Iterators.concat(new AbstractIterator<Iterator<Match>>() {
+            @Override
+            protected Iterator<Match> computeNext() {
+                if ( !entries.hasNext() )
+                    return endOfData();
+                Map.Entry<String,String[]> entry = entries.next();
+                if ( !entry.getKey().startsWith(prefix) )
+                    return endOfData();
+                return matches(entry.getKey(), entry.getValue(), after);
+            }
+        });
+    }
+
+    /**
+     * The objects whose names contain the string, starting after the given match, or from the
+     * beginning if it's null.  The string must be at least three characters long, and
+     * hasSubstrings() must be true.
+     */
+    public Iterator<Match> matchesContaining( String substring, final Match after ) {
+        if ( !hasSubstrings() || substring.length() < TRIGRAM )
+            throw new IllegalArgumentException("Substring search needs the substring index and " + TRIGRAM + " characters.");
+        Set<String> rarest = null;
+        for ( String trigram : trigrams(substring) ) {
+            Set<String> names = mByTrigram.get(trigram);
+            if ( names == null )
+                return Collections.emptyIterator();
+            if ( rarest == null || names.size() < rarest.size() )
+                rarest = names;
+        }
+        TreeSet<String> matches = new TreeSet<>();
+        for ( String name : rarest )
+            if ( name.contains(substring) )
+                matches.add(name);
+        final Iterator<String> names = (after == null ? matches : matches.tailSet(after.name, true)).iterator();
+        return Iterators.concat(new AbstractIterator<Iterator<Match>>() {
+            @Override
+            protected Iterator<Match> computeNext() {
+                while ( names.hasNext() ) {
+                    String name = names.next();
+                    String[] ids = mByName.get(name);
+                    if ( ids != null )
+                        return matches(name, ids, after);
+                }
+                return endOfData();
+            }
+        });
+    }
+
+    public int size() {
+        return mByName.size();
+    }
+
+    @Override
+    public void start() {
+        if ( !isEnabled() )
+            return;
+        int nObjects = 0;
+        Handle handle = mDBI.open();
+        try {
+            ResultIterator<String[]> rows = handle.createQuery(
+                    "select objectId, objectName from objects where active = 'Y'")
+                    .setFetchSize(FETCH_SIZE)
+                    .map(new ResultSetMapper<String[]>() {
+                        @Override
+                        public String[] map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+                            return new String[] { r.getString("objectId"), r.getString("objectName") };
+                        }
+                    })
+                    .iterator();
+            try {
+                while ( rows.hasNext() ) {
+                    String[] row = rows.next();
+                    add(row[0], row[1]);
+                    nObjects += 1;
+                }
+            }
+            finally {
+                rows.close();
+            }
+        }
+        finally {
+            handle.close();
+        }
+        gLogger.info("Indexed the names of {} objects.", nObjects);
+    }
+
+    @Override
+    public void stop() {}
+
+    // The name's ids that come after the given match.
+    private static Iterator<Match> matches( String name, String[] ids, Match after ) {
+        int first = 0;
+        if ( after != null && after.name.equals(name) ) {
+            int idx = Arrays.binarySearch(ids, after.objectId);
+            first = idx >= 0 ? idx + 1 : -idx-1;
+        }
+        List<Match> matches = new ArrayList<>(ids.length - first);
+        for ( int idx = first; idx < ids.length; ++idx )
+            matches.add(new Match(name, ids[idx]));
+        return matches.iterator();
+    }
+
+    private Set<String> namesWith( String trigram ) {
+        Set<String> names = mByTrigram.get(trigram);
+        if ( names == null ) {
+            names = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+            Set<String> oldNames = mByTrigram.putIfAbsent(trigram, names);
+            if ( oldNames != null )
+                names = oldNames;
+        }
+        return names;
+    }
+
+    private static Set<String> trigrams( String value ) {
+        Set<String> trigrams = new TreeSet<>();
+        for ( int idx = 0; idx + TRIGRAM <= value.length(); ++idx )
+            trigrams.add(value.substring(idx, idx + TRIGRAM));
+        return trigrams;
+    }
+
+    private DBI mDBI;
+    private NameIndexConfiguration mConfig;
+    private ConcurrentSkipListMap<String,String[]> mByName = new ConcurrentSkipListMap<>();
+    private ConcurrentMap<String,Set<String>> mByTrigram = new ConcurrentHashMap<>();
+
+    private static final int TRIGRAM = 3;
+    private static final int FETCH_SIZE = 1000;
+    private static final Logger gLogger = LoggerFactory.getLogger(NameIndex.class);
+}
@@ -0,0 +1,14 @@
+package org.genomebridge.boss.http.db;
+
+/**
+ * Configuration for the in-memory index of object names.  This is configured using a nameIndex
+ * clause in the YAML configuration file.  Name search is off unless the index is enabled.
+ */
+public class NameIndexConfiguration {
+
+    public boolean enabled = false;
+
+    // Also index every three-character substring of each name, which allows searching for names
+    // that contain a string.  This takes several times the memory of the prefix index alone.
+    public boolean substrings = false;
+}
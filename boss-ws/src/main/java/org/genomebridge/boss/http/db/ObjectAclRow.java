@@ -0,0 +1,35 @@
+package org.genomebridge.boss.http.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An object row together with its readers and writers.
+ *
+ * Queries that join objects to the ACL tables produce one of these per result row, each holding
+ * at most one reader or writer.  fold() merges the rows for a single object into one.
+ */
+public class ObjectAclRow extends ObjectRow {
+    public List<String> readers = new ArrayList<>();
+    public List<String> writers = new ArrayList<>();
+
+    public boolean canRead( String userName ) {
+        return readers.contains(userName);
+    }
+
+    public boolean canWrite( String userName ) {
+        return writers.contains(userName);
+    }
+
+    public static ObjectAclRow fold( List<ObjectAclRow> rows ) {
+        if ( rows == null || rows.isEmpty() )
+            return null;
+        ObjectAclRow result = rows.get(0);
+        for ( int idx = 1; idx < rows.size(); ++idx ) {
+            ObjectAclRow row = rows.get(idx);
+            result.readers.addAll(row.readers);
+            result.writers.addAll(row.writers);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,30 @@
+package org.genomebridge.boss.http.db;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps a row of objects joined to readers and writers.  The aclType column is 'R' or 'W',
+ * and username is null when an object has no entry in that ACL.
+ */
+public class ObjectAclRowMapper implements ResultSetMapper<ObjectAclRow> {
+    public ObjectAclRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        ObjectAclRow rec = new ObjectAclRow();
+        ObjectRowMapper.mapColumns(rec, r);
+
+        String username = r.getString("username");
+        if ( username != null ) {
+            if ( WRITER.equals(r.getString("aclType")) )
+                rec.writers.add(username);
+            else
+                rec.readers.add(username);
+        }
+
+        return rec;
+    }
+
+    private static final String WRITER = "W";
+}
@@ -0,0 +1,426 @@
+package org.genomebridge.boss.http.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * A size-bounded LRU cache of ObjectRows that keeps its entries off the Java heap.
+ *
+ * Each segment owns one direct buffer cut into fixed-size slots, and each cached row is packed
+ * into a slot along with its objectId.  The hash index and the LRU list are primitive int arrays,
+ * so the collector has nothing to trace no matter how many rows are cached.
+ *
+ * To fill the cache on a miss, take a stamp() before reading the row and pass it to put().  A put
+ * is dropped if the object has been invalidated since the stamp was taken, so a slow reader can't
+ * cache a row that an update has just made stale.  Update and delete must call invalidate() after
+ * they commit.  The cached resolveDate isn't kept current, because resolve dates are written behind.
+ */
+public class ObjectRowCache implements Managed {
+
+    public ObjectRowCache( DBI dbi, ObjectRowCacheConfiguration config ) {
+        mDBI = dbi;
+        mConfig = config;
+        int nSegments = config.maxEntries > 0 ? config.segments : 0;
+        mSegments = new Segment[nSegments];
+        if ( nSegments > 0 ) {
+            long perSegment = (config.maxEntries + nSegments - 1) / nSegments;
+            if ( perSegment * config.slotBytes > Integer.MAX_VALUE )
+                throw new IllegalArgumentException("objectCache segments must be under 2GB: add more segments.");
+            for ( int idx = 0; idx < nSegments; ++idx )
+                mSegments[idx] = new Segment((int)perSegment, config.slotBytes);
+        }
+        mExpiryMillis = 1000L*config.expireAfterWriteSeconds;
+    }
+
+    public boolean isEnabled() {
+        return mSegments.length > 0;
+    }
+
+    /**
+     * Returns a copy of the cached row, or null if it isn't cached.
+     */
+    public ObjectRow get( String objectId ) {
+        if ( !isEnabled() )
+            return null;
+        byte[] key = keyBytes(objectId);
+        int hash = objectId.hashCode();
+        byte[] bytes = segmentFor(hash).get(key, hash, System.currentTimeMillis() - mExpiryMillis);
+        if ( bytes == null ) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+        return decode(objectId, bytes);
+    }
+
+    public long stamp( String objectId ) {
+        return isEnabled() ? segmentFor(objectId.hashCode()).stamp() : 0L;
+    }
+
+    public void put( ObjectRow row, long stamp ) {
+        if ( !isEnabled() || row == null )
+            return;
+        int hash = row.objectId.hashCode();
+        segmentFor(hash).put(keyBytes(row.objectId), hash, encode(row), System.currentTimeMillis(), stamp);
+    }
+
+    public void invalidate( String objectId ) {
+        if ( !isEnabled() )
+            return;
+        int hash = objectId.hashCode();
+        segmentFor(hash).invalidate(keyBytes(objectId), hash);
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    public long size() {
+        long size = 0;
+        for ( Segment segment : mSegments )
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * Warms the cache with the most recently resolved objects.
+     */
+    @Override
+    public void start() {
+        int nRows = (int)Math.min(mConfig.warmUpEntries, mConfig.maxEntries);
+        if ( !isEnabled() || nRows == 0 )
+            return;
+        long[] stamps = new long[mSegments.length];
+        for ( int idx = 0; idx < stamps.length; ++idx )
+            stamps[idx] = mSegments[idx].stamp();
+        List<ObjectRow> rows;
+        Handle handle = mDBI.open();
+        try {
+            rows = handle.attach(BossDAO.class).findRecentlyResolved(nRows);
+        }
+        finally {
+            handle.close();
+        }
+        // oldest first, so that the most recently resolved end up least likely to be evicted
+        for ( int idx = rows.size() - 1; idx >= 0; --idx ) {
+            ObjectRow row = rows.get(idx);
+            put(row, stamps[segmentIndex(row.objectId.hashCode())]);
+        }
+        gLogger.info("Warmed the object cache with {} rows.", rows.size());
+    }
+
+    @Override
+    public void stop() {}
+
+    private Segment segmentFor( int hash ) {
+        return mSegments[segmentIndex(hash)];
+    }
+
+    private int segmentIndex( int hash ) {
+        return (hash & Integer.MAX_VALUE) % mSegments.length;
+    }
+
+    private static byte[] keyBytes( String objectId ) {
+        return objectId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Packs everything but the objectId, which is stored as the key.  Returns null if some string
+    // is too long to pack, in which case the row just doesn't get cached.
+    static byte[] encode( ObjectRow row ) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            Object[] fields = { row.objectName, row.storagePlatform, row.directoryPath, row.ownerId,
+                                row.active, row.createdBy, row.sizeEstimateBytes,
+                                row.createDate, row.modifyDate, row.resolveDate, row.deleteDate };
+            int nullFlags = 0;
+            for ( int idx = 0; idx < fields.length; ++idx )
+                if ( fields[idx] == null )
+                    nullFlags |= 1 << idx;
+            out.writeShort(nullFlags);
+            for ( Object field : fields ) {
+                if ( field instanceof String )
+                    out.writeUTF((String)field);
+                else if ( field instanceof Long )
+                    out.writeLong((Long)field);
+                else if ( field instanceof Timestamp ) {
+                    out.writeLong(((Timestamp)field).getTime());
+                    out.writeInt(((Timestamp)field).getNanos());
+                }
+            }
+            out.flush();
+        }
+        catch ( UTFDataFormatException e ) {
+            return null;
+        }
+        catch ( IOException e ) {
+            throw new IllegalStateException("Unable to encode object row "+row.objectId, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static ObjectRow decode( String objectId, byte[] bytes ) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        ObjectRow row = new ObjectRow();
+        row.objectId = objectId;
+        try {
+            int nullFlags = in.readUnsignedShort();
+            row.objectName = readString(in, nullFlags, 0);
+            row.storagePlatform = readString(in, nullFlags, 1);
+            row.directoryPath = readString(in, nullFlags, 2);
+            row.ownerId = readString(in, nullFlags, 3);
+            row.active = readString(in, nullFlags, 4);
+            row.createdBy = readString(in, nullFlags, 5);
+            row.sizeEstimateBytes = (nullFlags & (1 << 6)) != 0 ? null : in.readLong();
+            row.createDate = readTimestamp(in, nullFlags, 7);
+            row.modifyDate = readTimestamp(in, nullFlags, 8);
+            row.resolveDate = readTimestamp(in, nullFlags, 9);
+            row.deleteDate = readTimestamp(in, nullFlags, 10);
+        }
+        catch ( IOException e ) {
+            throw new IllegalStateException("Unable to decode object row "+objectId, e);
+        }
+        return row;
+    }
+
+    private static String readString( DataInputStream in, int nullFlags, int idx ) throws IOException {
+        return (nullFlags & (1 << idx)) != 0 ? null : in.readUTF();
+    }
+
+    private static Timestamp readTimestamp( DataInputStream in, int nullFlags, int idx ) throws IOException {
+        if ( (nullFlags & (1 << idx)) != 0 )
+            return null;
+        Timestamp timestamp = new Timestamp(in.readLong());
+        timestamp.setNanos(in.readInt());
+        return timestamp;
+    }
+
+    /**
+     * One independently locked piece of the cache.
+     *
+     * Slot layout: write time (long), key length (short), row length (int), key bytes, row bytes.
+     * mTable is an open-addressed hash table of slot numbers; mPrev and mNext thread the occupied
+     * slots into an LRU list with the most recently used at mHead.
+     */
+    private static final class Segment {
+
+        Segment( int capacity, int slotBytes ) {
+            mSlotBytes = slotBytes;
+            mSlab = ByteBuffer.allocateDirect(capacity*slotBytes);
+            mHashes = new int[capacity];
+            mPrev = new int[capacity];
+            mNext = new int[capacity];
+            mFree = new int[capacity];
+            for ( int idx = 0; idx < capacity; ++idx )
+                mFree[idx] = capacity - 1 - idx;
+            mFreeCount = capacity;
+            int tableSize = Integer.highestOneBit(Math.max(capacity, 1)) << 2;
+            mTable = new int[tableSize];
+            Arrays.fill(mTable, EMPTY);
+            mMask = tableSize - 1;
+        }
+
+        synchronized long stamp() {
+            return mStamp;
+        }
+
+        synchronized int size() {
+            return mFree.length - mFreeCount;
+        }
+
+        synchronized byte[] get( byte[] key, int hash, long oldestWrite ) {
+            int pos = find(key, hash);
+            if ( pos < 0 )
+                return null;
+            int slot = mTable[pos];
+            int offset = slot*mSlotBytes;
+            if ( mSlab.getLong(offset) < oldestWrite ) {
+                remove(pos);
+                return null;
+            }
+            unlink(slot);
+            linkAtHead(slot);
+            byte[] row = new byte[mSlab.getInt(offset + 10)];
+            ByteBuffer view = mSlab.duplicate();
+            view.position(offset + HEADER_BYTES + key.length);
+            view.get(row);
+            return row;
+        }
+
+        synchronized void put( byte[] key, int hash, byte[] row, long now, long stamp ) {
+            if ( stamp != mStamp )
+                return;
+            int pos = find(key, hash);
+            if ( row == null || HEADER_BYTES + key.length + row.length > mSlotBytes ) {
+                // too big to cache, and the entry it would replace is now out of date
+                if ( pos >= 0 )
+                    remove(pos);
+                return;
+            }
+            int slot;
+            if ( pos >= 0 ) {
+                slot = mTable[pos];
+                unlink(slot);
+                linkAtHead(slot);
+            }
+            else {
+                if ( mFreeCount == 0 )
+                    remove(positionOf(mTail));
+                slot = mFree[--mFreeCount];
+                mHashes[slot] = hash;
+                linkAtHead(slot);
+                insert(slot);
+            }
+            int offset = slot*mSlotBytes;
+            mSlab.putLong(offset, now);
+            mSlab.putShort(offset + 8, (short)key.length);
+            mSlab.putInt(offset + 10, row.length);
+            ByteBuffer view = mSlab.duplicate();
+            view.position(offset + HEADER_BYTES);
+            view.put(key);
+            view.put(row);
+        }
+
+        synchronized void invalidate( byte[] key, int hash ) {
+            mStamp += 1;
+            int pos = find(key, hash);
+            if ( pos >= 0 )
+                remove(pos);
+        }
+
+        private int find( byte[] key, int hash ) {
+            for ( int pos = probeStart(hash); ; pos = (pos + 1) & mMask ) {
+                int slot = mTable[pos];
+                if ( slot == EMPTY )
+                    return -1;
+                if ( slot >= 0 && mHashes[slot] == hash && keyEquals(slot, key) )
+                    return pos;
+            }
+        }
+
+        private int positionOf( int slot ) {
+            int pos = probeStart(mHashes[slot]);
+            while ( mTable[pos] != slot )
+                pos = (pos + 1) & mMask;
+            return pos;
+        }
+
+        private void insert( int slot ) {
+            int pos = probeStart(mHashes[slot]);
+            while ( mTable[pos] >= 0 )
+                pos = (pos + 1) & mMask;
+            if ( mTable[pos] == EMPTY )
+                mUsedPositions += 1;
+            mTable[pos] = slot;
+            // clear out the tombstones before probe sequences get long
+            if ( mUsedPositions > mTable.length/2 )
+                rehash();
+        }
+
+        private void remove( int pos ) {
+            int slot = mTable[pos];
+            mTable[pos] = TOMBSTONE;
+            unlink(slot);
+            mFree[mFreeCount++] = slot;
+        }
+
+        private void rehash() {
+            Arrays.fill(mTable, EMPTY);
+            mUsedPositions = 0;
+            for ( int slot = mHead; slot != NIL; slot = mNext[slot] ) {
+                int pos = probeStart(mHashes[slot]);
+                while ( mTable[pos] != EMPTY )
+                    pos = (pos + 1) & mMask;
+                mTable[pos] = slot;
+                mUsedPositions += 1;
+            }
+        }
+
+        private boolean keyEquals( int slot, byte[] key ) {
+            int offset = slot*mSlotBytes;
+            if ( mSlab.getShort(offset + 8) != key.length )
+                return false;
+            offset += HEADER_BYTES;
+            for ( int idx = 0; idx < key.length; ++idx )
+                if ( mSlab.get(offset + idx) != key[idx] )
+                    return false;
+            return true;
+        }
+
+        private int probeStart( int hash ) {
+            int mixed = hash * 0x9E3779B9;
+            return (mixed ^ (mixed >>> 16)) & mMask;
+        }
+
+        private void linkAtHead( int slot ) {
+            mPrev[slot] = NIL;
+            mNext[slot] = mHead;
+            if ( mHead != NIL )
+                mPrev[mHead] = slot;
+            mHead = slot;
+            if ( mTail == NIL )
+                mTail = slot;
+        }
+
+        private void unlink( int slot ) {
+            int prev = mPrev[slot];
+            int next = mNext[slot];
+            if ( prev != NIL )
+                mNext[prev] = next;
+            else
+                mHead = next;
+            if ( next != NIL )
+                mPrev[next] = prev;
+            else
+                mTail = prev;
+        }
+
+        private final int mSlotBytes;
+        private final ByteBuffer mSlab;
+        private final int[] mHashes;
+        private final int[] mPrev;
+        private final int[] mNext;
+        private final int[] mFree;
+        private int mFreeCount;
+        private final int[] mTable;
+        private final int mMask;
+        private int mUsedPositions;
+        private int mHead = NIL;
+        private int mTail = NIL;
+        private long mStamp;
+
+        private static final int HEADER_BYTES = 14;
+        private static final int NIL = -1;
+        private static final int EMPTY = -1;
+        private static final int TOMBSTONE = -2;
+    }
+
+    private DBI mDBI;
+    private ObjectRowCacheConfiguration mConfig;
+    private Segment[] mSegments;
+    private long mExpiryMillis;
+    private AtomicLong mHits = new AtomicLong();
+    private AtomicLong mMisses = new AtomicLong();
+    private static final Logger gLogger = LoggerFactory.getLogger(ObjectRowCache.class);
+}
@@ -0,0 +1,35 @@
+package org.genomebridge.boss.http.db;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration for the off-heap cache of object rows.  This is configured using an objectCache
+ * clause in the YAML configuration file.  The cache is off unless maxEntries is positive.
+ *
+ * The cache takes maxEntries*slotBytes of direct memory, so -XX:MaxDirectMemorySize may need
+ * raising to match.
+ */
+public class ObjectRowCacheConfiguration {
+
+    @Min(0)
+    public long maxEntries = 0L;
+
+    // Each entry takes one fixed-size slot.  Rows that won't fit in a slot aren't cached.
+    @Min(64)
+    @Max(32767)
+    public int slotBytes = 512;
+
+    // Entries are spread over this many independently locked segments.
+    @Min(1)
+    public int segments = 16;
+
+    // Changes made through this server invalidate its cache right away, but changes made through
+    // another server sharing the database can go unnoticed for this long.
+    @Min(1)
+    public long expireAfterWriteSeconds = 300L;
+
+    // How many of the most recently resolved objects to load when the application starts.
+    @Min(0)
+    public int warmUpEntries = 10000;
+}
@@ -9,7 +9,11 @@ import java.sql.SQLException;
 public class ObjectRowMapper implements ResultSetMapper<ObjectRow> {
     public ObjectRow map(int index, ResultSet r, StatementContext ctx) throws SQLException {
         ObjectRow rec = new ObjectRow();
+        mapColumns(rec, r);
+        return rec;
+    }
 
+    static void mapColumns( ObjectRow rec, ResultSet r ) throws SQLException {
         rec.objectId = r.getString("objectId");
         rec.objectName = r.getString("objectName");
         rec.ownerId = r.getString("ownerId");
@@ -22,7 +26,5 @@ public class ObjectRowMapper implements ResultSetMapper<ObjectRow> {
         rec.modifyDate = r.getTimestamp("modifyDate");
         rec.resolveDate = r.getTimestamp("resolveDate");
         rec.deleteDate = r.getTimestamp("deleteDate");
-
-        return rec;
     }
 }
@@ -0,0 +1,92 @@
+package org.genomebridge.boss.http.db;
+
+import java.util.List;
+
+/**
+ * The bits of SQL that have to be written differently for each database we run on.  The dialect
+ * is chosen from the JDBC driver class in the database configuration, and is ANSI for a driver
+ * that isn't recognized.
+ */
+public enum SqlDialect {
+
+    HSQLDB {
+        // HSQLDB can't work out the type of a parameter that isn't compared with a column.
+        @Override
+        public String param( String name ) {
+            return "cast(:" + name + " as varchar(255))";
+        }
+
+        @Override
+        public String valuesTable( List<String> paramNames, String alias, String column ) {
+            StringBuilder sb = new StringBuilder("(values ");
+            for ( int idx = 0; idx < paramNames.size(); ++idx ) {
+                if ( idx > 0 ) sb.append(", ");
+                sb.append('(').append(param(paramNames.get(idx))).append(')');
+            }
+            return sb.append(") as ").append(alias).append('(').append(column).append(')').toString();
+        }
+    },
+
+    MYSQL {
+        // Connector/J reads the whole result into memory unless asked for exactly this.
+        @Override
+        public int streamingFetchSize() {
+            return Integer.MIN_VALUE;
+        }
+    },
+
+    ORACLE {
+        // Oracle won't select without a from, and doesn't allow "as" before a table alias.
+        @Override
+        public String valuesTable( List<String> paramNames, String alias, String column ) {
+            return unionOfSelects(paramNames, column, " from dual") + ' ' + alias;
+        }
+    },
+
+    // Anything else, PostgreSQL for one, gets the plain SQL that the others are variations on.
+    ANSI;
+
+    /**
+     * The fetch size that makes the driver stream a large result rather than hold all of it.
+     */
+    public int streamingFetchSize() {
+        return 1000;
+    }
+
+    /**
+     * How to refer to a bound string parameter in a select list.
+     */
+    public String param( String name ) {
+        return ':' + name;
+    }
+
+    /**
+     * A derived table with a single string column, having one row per named parameter.  The list
+     * must not be empty.
+     */
+    public String valuesTable( List<String> paramNames, String alias, String column ) {
+        return unionOfSelects(paramNames, column, "") + " as " + alias;
+    }
+
+    public static SqlDialect forDriverClass( String driverClass ) {
+        String lower = driverClass == null ? "" : driverClass.toLowerCase();
+        if ( lower.contains("hsqldb") )
+            return HSQLDB;
+        if ( lower.contains("mysql") || lower.contains("mariadb") )
+            return MYSQL;
+        if ( lower.contains("oracle") )
+            return ORACLE;
+        return ANSI;
+    }
+
+    private static String unionOfSelects( List<String> paramNames, String column, String from ) {
+        StringBuilder sb = new StringBuilder("(");
+        for ( int idx = 0; idx < paramNames.size(); ++idx ) {
+            if ( idx > 0 ) sb.append(" union all ");
+            sb.append("select :").append(paramNames.get(idx));
+            if ( idx == 0 ) sb.append(" as ").append(column);
+            sb.append(from);
+        }
+        return sb.append(')').toString();
+    }
+}
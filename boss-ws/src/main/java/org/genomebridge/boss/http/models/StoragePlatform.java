@@ -6,6 +6,7 @@ package org.genomebridge.boss.http.models;
 public enum StoragePlatform {
     CLOUDSTORE ("cloudStore"),
     LOCALSTORE ("localStore"),
+    FILESTORE ("fileStore"),
     OPAQUEURI ("opaqueURI");
 
     private final String value;
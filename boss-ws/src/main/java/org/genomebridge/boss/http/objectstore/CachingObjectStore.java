@@ -0,0 +1,136 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches the resolve URLs another ObjectStore signs.
+ *
+ * Expirations are rounded up to the next multiple of bucketSeconds, so identical requests made
+ * within the same bucket ask for identical URLs, and all but the first are answered from the cache.
+ * Every URL handed out is still valid for at least as long as was asked for.  An entry is only
+ * useful for one bucket's worth of time, so that's how long it's kept.
+ */
+public class CachingObjectStore implements ObjectStore {
+
+    public CachingObjectStore( ObjectStore delegate, UrlCacheConfiguration config ) {
+        mDelegate = delegate;
+        mBucketMillis = 1000L*config.bucketSeconds;
+        mCache = CacheBuilder.newBuilder()
+                .maximumSize(config.maxEntries)
+                .expireAfterWrite(config.bucketSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public URI generateResolveURI( final String objKey, final String httpMethod, long timeoutInMillis,
+                                   final String contentType, final String contentMD5 ) {
+        final long expiry = (timeoutInMillis + mBucketMillis - 1)/mBucketMillis*mBucketMillis;
+        try {
+            return mCache.get(new Key(objKey, httpMethod, contentType, contentMD5, expiry), new Callable<URI>() {
+                @Override
+                public URI call() {
+                    return mDelegate.generateResolveURI(objKey, httpMethod, expiry, contentType, contentMD5);
+                }
+            });
+        }
+        catch ( ExecutionException | UncheckedExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            throw new ObjectStoreException(e.getCause());
+        }
+    }
+
+    @Override
+    public URI generateCopyURI( String objKey, String locationToCopy, long timeoutInMillis ) {
+        return mDelegate.generateCopyURI(objKey, locationToCopy, timeoutInMillis);
+    }
+
+    @Override
+    public void deleteObject( String objKey ) {
+        mDelegate.deleteObject(objKey);
+    }
+
+    @Override
+    public Map<String,String> deleteObjects( List<String> objKeys ) {
+        return mDelegate.deleteObjects(objKeys);
+    }
+
+    @Override
+    public boolean copiesServerSide() {
+        return mDelegate.copiesServerSide();
+    }
+
+    @Override
+    public void copyObject( String objKey, String locationToCopy ) {
+        mDelegate.copyObject(objKey, locationToCopy);
+    }
+
+    @Override
+    public String getCopySourceKey( String locationToCopy ) {
+        return mDelegate.getCopySourceKey(locationToCopy);
+    }
+
+    @Override
+    public boolean allowsCopyFrom( String locationToCopy ) {
+        return mDelegate.allowsCopyFrom(locationToCopy);
+    }
+
+    @Override
+    public String startMultipartUpload( String objKey, String contentType ) {
+        return mDelegate.startMultipartUpload(objKey, contentType);
+    }
+
+    // each part URL is asked for once, so there's no point caching them
+    @Override
+    public List<URI> generatePartURIs( String objKey, String uploadId, int partCount, long timeoutInMillis ) {
+        return mDelegate.generatePartURIs(objKey, uploadId, partCount, timeoutInMillis);
+    }
+
+    @Override
+    public void completeMultipartUpload( String objKey, String uploadId, List<String> etags ) {
+        mDelegate.completeMultipartUpload(objKey, uploadId, etags);
+    }
+
+    @Override
+    public void abortMultipartUpload( String objKey, String uploadId ) {
+        mDelegate.abortMultipartUpload(objKey, uploadId);
+    }
+
+    public long size() {
+        return mCache.size();
+    }
+
+    private static final class Key {
+        Key( String objKey, String httpMethod, String contentType, String contentMD5, long expiry ) {
+            mFields = new Object[] { objKey, httpMethod, contentType, contentMD5, expiry };
+            mHash = Arrays.hashCode(mFields);
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            return obj instanceof Key && Arrays.equals(mFields, ((Key)obj).mFields);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        private final Object[] mFields;
+        private final int mHash;
+    }
+
+    private ObjectStore mDelegate;
+    private long mBucketMillis;
+    private Cache<Key,URI> mCache;
+}
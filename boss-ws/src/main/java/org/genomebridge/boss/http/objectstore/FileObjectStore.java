@@ -0,0 +1,345 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.HttpMethod;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Keeps objects as files under a directory, and signs URLs that BOSS serves itself, with a
+ * FileStoreServlet.  The configuration's bucket is the directory, its endpoint is the URL clients reach
+ * this server at, and its password is the secret URLs are signed with (by HMAC-SHA256).
+ *
+ * Keys are paths relative to the directory, and may not lead out of it.  Multipart uploads keep their
+ * parts under the .uploads directory until they're completed.
+ */
+public class FileObjectStore implements ObjectStore {
+
+    public FileObjectStore( ObjectStoreConfiguration config, String urlPath ) {
+        mRoot = Paths.get(config.bucket).toAbsolutePath().normalize();
+        mUploads = mRoot.resolve(UPLOADS_DIR);
+        String endpoint = config.endpoint.endsWith("/") ?
+                config.endpoint.substring(0, config.endpoint.length() - 1) : config.endpoint;
+        mUrlPrefix = endpoint + urlPath + '/';
+        mMaxUploadBytes = config.maxUploadBytes;
+        final SecretKeySpec secretKey = new SecretKeySpec(config.password.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        mMacs = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac mac = Mac.getInstance("HmacSHA256");
+                    mac.init(secretKey);
+                    return mac;
+                }
+                catch ( GeneralSecurityException e ) {
+                    throw new ObjectStoreException("Can't initialize HmacSHA256.", e);
+                }
+            }
+        };
+        try {
+            Files.createDirectories(mUploads);
+        }
+        catch ( IOException e ) {
+            throw new ObjectStoreException("Can't create the file store directory "+mRoot, e);
+        }
+    }
+
+    @Override
+    public URI generateResolveURI( String objKey, String httpMethod, long timeoutInMillis,
+                                   String contentType, String contentMD5 ) {
+        return sign(objKey, httpMethod, timeoutInMillis, contentType, contentMD5, null, 0);
+    }
+
+    @Override
+    public URI generateCopyURI( String objKey, String locationToCopy, long timeoutInMillis ) {
+        throw new ObjectStoreException("File store copies are made by the server, with copyObject.");
+    }
+
+    @Override
+    public void deleteObject( String objKey ) {
+        try {
+            Files.deleteIfExists(getPath(objKey));
+        }
+        catch ( IOException e ) {
+            throw new ObjectStoreException(e);
+        }
+    }
+
+    @Override
+    public Map<String,String> deleteObjects( List<String> objKeys ) {
+        Map<String,String> errors = new HashMap<>();
+        for ( String objKey : objKeys ) {
+            try {
+                deleteObject(objKey);
+            }
+            catch ( ObjectStoreException e ) {
+                errors.put(objKey, String.valueOf(e.getMessage()));
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public boolean copiesServerSide() {
+        return true;
+    }
+
+    /**
+     * The locationToCopy is a slash and then the key of an object in this store.  The copy is made
+     * with transferTo, which leaves it to the kernel.
+     */
+    @Override
+    public void copyObject( String objKey, String locationToCopy ) {
+        Path source = getPath(locationToCopy.substring(1));
+        try ( FileChannel in = FileChannel.open(source, StandardOpenOption.READ) ) {
+            Path target = getPath(objKey);
+            Path temp = createTempFile(target);
+            try ( FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE) ) {
+                transfer(in, out);
+            }
+            moveIntoPlace(temp, target);
+        }
+        catch ( IOException e ) {
+            throw new ObjectStoreException("Can't copy "+locationToCopy+": "+e, e);
+        }
+    }
+
+    /**
+     * Every location is in this store:  a slash and then the key.
+     */
+    @Override
+    public String getCopySourceKey( String locationToCopy ) {
+        if ( !locationToCopy.startsWith("/") )
+            throw new ObjectStoreException("Can't copy "+locationToCopy+": expecting /key.");
+        String objKey = locationToCopy.substring(1);
+        getPath(objKey); // just to check it
+        return objKey;
+    }
+
+    @Override
+    public boolean allowsCopyFrom( String locationToCopy ) {
+        return false;
+    }
+
+    @Override
+    public String startMultipartUpload( String objKey, String contentType ) {
+        getPath(objKey); // just to check it
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectory(mUploads.resolve(uploadId));
+        }
+        catch ( IOException e ) {
+            throw new ObjectStoreException(e);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public List<URI> generatePartURIs( String objKey, String uploadId, int partCount, long timeoutInMillis ) {
+        List<URI> uris = new ArrayList<>(partCount);
+        for ( int partNumber = 1; partNumber <= partCount; ++partNumber )
+            uris.add(sign(objKey, HttpMethod.PUT, timeoutInMillis, null, null, uploadId, partNumber));
+        return uris;
+    }
+
+    /**
+     * The parts are concatenated with transferTo.  Each one's ETag has to match the MD5 of the file
+     * that's there.
+     */
+    @Override
+    public void completeMultipartUpload( String objKey, String uploadId, List<String> etags ) {
+        Path target = getPath(objKey);
+        Path uploadDir = getUploadDir(uploadId);
+        try {
+            Path temp = createTempFile(target);
+            try ( FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE) ) {
+                for ( int idx = 0; idx < etags.size(); ++idx ) {
+                    Path part = uploadDir.resolve(Integer.toString(idx+1));
+                    if ( !Files.exists(part) || !getETag(part).equals(etags.get(idx)) )
+                        throw new ObjectStoreException("InvalidPart: part "+(idx+1)+" is missing, or has another ETag.");
+                    try ( FileChannel in = FileChannel.open(part, StandardOpenOption.READ) ) {
+                        transfer(in, out);
+                    }
+                }
+            }
+            catch ( IOException | RuntimeException e ) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            moveIntoPlace(temp, target);
+        }
+        catch ( IOException e ) {
+            throw new ObjectStoreException(e);
+        }
+        abortMultipartUpload(objKey, uploadId);
+    }
+
+    @Override
+    public void abortMultipartUpload( String objKey, String uploadId ) {
+        Path uploadDir = getUploadDir(uploadId);
+        try {
+            try ( DirectoryStream<Path> parts = Files.newDirectoryStream(uploadDir) ) {
+                for ( Path part : parts )
+                    Files.deleteIfExists(part);
+            }
+            Files.delete(uploadDir);
+        }
+        catch ( IOException e ) {
+            throw new ObjectStoreException(e);
+        }
+    }
+
+    /**
+     * True if the signature is good for the request, and hasn't expired.
+     */
+    boolean checkSignature( String objKey, String httpMethod, long expires, String contentType, String contentMD5,
+                            String uploadId, int partNumber, String signature ) {
+        if ( signature == null || expires*1000L < System.currentTimeMillis() )
+            return false;
+        String expected = computeSignature(objKey, httpMethod, expires, contentType, contentMD5, uploadId, partNumber);
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                                     signature.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The file for a key.  Throws an ObjectStoreException if the key leads out of the store.
+     */
+    Path getPath( String objKey ) {
+        Path path = mRoot.resolve(objKey).normalize();
+        if ( !path.startsWith(mRoot) || path.equals(mRoot) || path.startsWith(mUploads) )
+            throw new ObjectStoreException("Not a key in this store: "+objKey);
+        return path;
+    }
+
+    /**
+     * The most a PUT may write.
+     */
+    long getMaxUploadBytes() {
+        return mMaxUploadBytes;
+    }
+
+    /**
+     * The file for a part of a multipart upload, or null if there's no such upload.
+     */
+    Path getPartPath( String uploadId, int partNumber ) {
+        Path uploadDir = getUploadDir(uploadId);
+        return Files.isDirectory(uploadDir) ? uploadDir.resolve(Integer.toString(partNumber)) : null;
+    }
+
+    /**
+     * A new, empty file next to the target, which moveIntoPlace will put in its place.
+     */
+    Path createTempFile( Path target ) throws IOException {
+        Files.createDirectories(target.getParent());
+        return Files.createTempFile(target.getParent(), ".boss", ".tmp");
+    }
+
+    // Readers see the old file or the new one, never a partly-written one.
+    static void moveIntoPlace( Path temp, Path target ) throws IOException {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // A file's ETag is the MD5 of its content, in hex and in quotes, as S3 has it.
+    static String getETag( Path path ) throws IOException {
+        MessageDigest md5 = newMD5();
+        ByteBuffer buffer = ByteBuffer.allocate(64*1024);
+        try ( FileChannel in = FileChannel.open(path, StandardOpenOption.READ) ) {
+            while ( in.read(buffer) != -1 ) {
+                buffer.flip();
+                md5.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toETag(md5.digest());
+    }
+
+    static String toETag( byte[] md5 ) {
+        return "\"" + DatatypeConverter.printHexBinary(md5).toLowerCase(Locale.ROOT) + "\"";
+    }
+
+    static MessageDigest newMD5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException("No MD5 digest.", e);
+        }
+    }
+
+    private static void transfer( FileChannel in, FileChannel out ) throws IOException {
+        long size = in.size();
+        long position = 0;
+        while ( position < size )
+            position += in.transferTo(position, size - position, out);
+    }
+
+    private Path getUploadDir( String uploadId ) {
+        Path uploadDir = mUploads.resolve(uploadId).normalize();
+        if ( !uploadDir.getParent().equals(mUploads) )
+            throw new ObjectStoreException("NoSuchUpload: "+uploadId);
+        return uploadDir;
+    }
+
+    private URI sign( String objKey, String httpMethod, long timeoutInMillis, String contentType, String contentMD5,
+                      String uploadId, int partNumber ) {
+        getPath(objKey); // just to check it
+        // only a PUT has a body for these to describe, and FileStoreServlet checks them only for a PUT
+        if ( !HttpMethod.PUT.equals(httpMethod) ) {
+            contentType = null;
+            contentMD5 = null;
+        }
+        long expires = (timeoutInMillis + 999L)/1000L;
+        String signature = computeSignature(objKey, httpMethod, expires, contentType, contentMD5, uploadId, partNumber);
+        StringBuilder sb = new StringBuilder(mUrlPrefix.length() + objKey.length() + 128);
+        sb.append(mUrlPrefix).append(GCSV4Signer.uriEncode(objKey, false)).append('?');
+        if ( uploadId != null )
+            sb.append("uploadId=").append(GCSV4Signer.uriEncode(uploadId, true))
+                .append("&partNumber=").append(partNumber).append('&');
+        sb.append("Expires=").append(expires).append("&Signature=").append(signature);
+        return URI.create(sb.toString());
+    }
+
+    private String computeSignature( String objKey, String httpMethod, long expires, String contentType,
+                                     String contentMD5, String uploadId, int partNumber ) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(httpMethod).append('\n');
+        if ( contentMD5 != null ) sb.append(contentMD5);
+        sb.append('\n');
+        if ( contentType != null ) sb.append(contentType);
+        sb.append('\n');
+        sb.append(expires).append('\n');
+        if ( uploadId != null ) sb.append(uploadId).append('\n').append(partNumber);
+        sb.append('\n');
+        sb.append(objKey);
+        byte[] sig = mMacs.get().doFinal(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return DatatypeConverter.printHexBinary(sig).toLowerCase(Locale.ROOT);
+    }
+
+    private final Path mRoot;
+    private final Path mUploads;
+    private final String mUrlPrefix;
+    private final long mMaxUploadBytes;
+    private final ThreadLocal<Mac> mMacs;
+    private static final String UPLOADS_DIR = ".uploads";
+}
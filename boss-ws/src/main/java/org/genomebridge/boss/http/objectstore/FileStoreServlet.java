@@ -0,0 +1,268 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.HttpMethod;
+import javax.xml.bind.DatatypeConverter;
+
+import org.eclipse.jetty.server.Response;
+
+/**
+ * Serves the URLs a FileObjectStore signs.
+ *
+ * A GET hands Jetty a channel over the file, which Jetty reads a buffer at a time into its pooled direct
+ * buffers and writes to the socket, so the data isn't copied into the Java heap and nothing is mapped.
+ * Single byte ranges are honored; requests for several get the whole file.  A PUT is written to a temporary file that replaces the object's file once it's complete, and
+ * is refused if it's longer than the store's maxUploadBytes.  Its ETag is the MD5 of its content, as
+ * with S3.
+ */
+public class FileStoreServlet extends HttpServlet {
+
+    public FileStoreServlet( FileObjectStore store ) {
+        mStore = store;
+    }
+
+    @Override
+    protected void doGet( HttpServletRequest req, HttpServletResponse resp ) throws IOException {
+        Path path = checkRequest(req, resp, null, 0);
+        if ( path == null )
+            return;
+        try ( FileChannel channel = FileChannel.open(path, StandardOpenOption.READ) ) {
+            long size = channel.size();
+            long[] range = parseRange(req.getHeader("Range"), size);
+            long first = 0;
+            long count = size;
+            if ( range != null ) {
+                if ( range.length == 0 ) {
+                    resp.setHeader("Content-Range", "bytes */" + size);
+                    resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                first = range[0];
+                count = range[1] - range[0] + 1;
+                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                resp.setHeader("Content-Range", "bytes " + range[0] + '-' + range[1] + '/' + size);
+            }
+            resp.setHeader("Accept-Ranges", "bytes");
+            resp.setContentType("application/octet-stream");
+            resp.setHeader("Content-Length", Long.toString(count));
+            if ( req.getMethod().equals(HttpMethod.HEAD) || count == 0 )
+                return;
+
+            // Jetty reads the range into its pooled direct buffers and writes them to the socket.  That
+            // goes around any filter's wrapper, which is fine for these bytes:  there's no point in gzipping them.
+            Response.getResponse(resp).getHttpOutput().sendContent(new RangeChannel(channel, first, first + count));
+        }
+        catch ( NoSuchFileException e ) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "NoSuchKey");
+        }
+    }
+
+    @Override
+    protected void doHead( HttpServletRequest req, HttpServletResponse resp ) throws IOException {
+        doGet(req, resp);
+    }
+
+    @Override
+    protected void doPut( HttpServletRequest req, HttpServletResponse resp ) throws IOException {
+        int partNumber = 0;
+        String uploadId = req.getParameter("uploadId");
+        if ( uploadId != null ) {
+            try {
+                partNumber = Integer.parseInt(req.getParameter("partNumber"));
+            }
+            catch ( NumberFormatException e ) {
+                resp.sendError(HttpServletResponse.SC_FORBIDDEN, "AccessDenied");
+                return;
+            }
+        }
+        Path path = checkRequest(req, resp, uploadId, partNumber);
+        if ( path == null )
+            return;
+        if ( uploadId != null ) {
+            path = mStore.getPartPath(uploadId, partNumber);
+            if ( path == null ) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND, "NoSuchUpload");
+                return;
+            }
+        }
+
+        long maxBytes = mStore.getMaxUploadBytes();
+        if ( tooLong(req.getHeader("Content-Length"), maxBytes) ) {
+            resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "EntityTooLarge");
+            return;
+        }
+
+        MessageDigest md5 = FileObjectStore.newMD5();
+        byte[] digest;
+        Path temp = mStore.createTempFile(path);
+        try {
+            try ( FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE) ) {
+                byte[] bytes = new byte[BUFFER_SIZE];
+                InputStream in = req.getInputStream();
+                long total = 0;
+                int nRead;
+                while ( (nRead = in.read(bytes)) != -1 ) {
+                    total += nRead;
+                    if ( total > maxBytes ) {
+                        resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "EntityTooLarge");
+                        return;
+                    }
+                    md5.update(bytes, 0, nRead);
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, nRead);
+                    while ( buffer.hasRemaining() )
+                        channel.write(buffer);
+                }
+            }
+            digest = md5.digest();
+            String contentMD5 = req.getHeader("Content-MD5");
+            if ( contentMD5 != null && !DatatypeConverter.printBase64Binary(digest).equals(contentMD5) ) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "BadDigest");
+                return;
+            }
+            FileObjectStore.moveIntoPlace(temp, path);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        resp.setHeader("ETag", FileObjectStore.toETag(digest));
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    // Returns the file the request is for, or null if it has already been answered with an error.
+    private Path checkRequest( HttpServletRequest req, HttpServletResponse resp, String uploadId, int partNumber )
+            throws IOException {
+        String objKey = req.getPathInfo();
+        if ( objKey == null || objKey.length() < 2 ) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "NoSuchKey");
+            return null;
+        }
+        objKey = objKey.substring(1);
+        long expires;
+        try {
+            expires = Long.parseLong(req.getParameter("Expires"));
+        }
+        catch ( NumberFormatException e ) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "AccessDenied");
+            return null;
+        }
+        String method = req.getMethod();
+        boolean isPut = method.equals(HttpMethod.PUT);
+        if ( !mStore.checkSignature(objKey, method, expires, isPut ? req.getContentType() : null,
+                                    isPut ? req.getHeader("Content-MD5") : null, uploadId, partNumber,
+                                    req.getParameter("Signature")) ) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "SignatureDoesNotMatch");
+            return null;
+        }
+        try {
+            return mStore.getPath(objKey);
+        }
+        catch ( ObjectStoreException e ) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "AccessDenied");
+            return null;
+        }
+    }
+
+    // Content-Length can be more than getContentLength can return.
+    private static boolean tooLong( String contentLength, long maxBytes ) {
+        try {
+            return contentLength != null && Long.parseLong(contentLength.trim()) > maxBytes;
+        }
+        catch ( NumberFormatException e ) {
+            return false;
+        }
+    }
+
+    // Reads the bytes of a file from first up to end.  Closing it leaves the file open.
+    private static class RangeChannel implements ReadableByteChannel {
+        RangeChannel( FileChannel file, long first, long end ) {
+            mFile = file;
+            mPosition = first;
+            mEnd = end;
+        }
+
+        @Override
+        public int read( ByteBuffer dst ) throws IOException {
+            if ( mPosition >= mEnd )
+                return -1;
+            ByteBuffer window = dst;
+            if ( dst.remaining() > mEnd - mPosition ) {
+                window = dst.duplicate();
+                window.limit(window.position() + (int)(mEnd - mPosition));
+            }
+            int nRead = mFile.read(window, mPosition);
+            if ( nRead < 0 )
+                throw new IOException("File shrank while it was being sent.");
+            if ( window != dst )
+                dst.position(window.position());
+            mPosition += nRead;
+            return nRead;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return mFile.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private final FileChannel mFile;
+        private long mPosition;
+        private final long mEnd;
+    }
+
+    /**
+     * Parses a Range header of a single byte range.  Returns the first and last bytes, an empty array
+     * if the range can't be satisfied, or null if the whole file should be sent.
+     */
+    static long[] parseRange( String header, long size ) {
+        if ( header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0 )
+            return null;
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if ( dash < 0 )
+            return null;
+        try {
+            long first;
+            long last;
+            if ( dash == 0 ) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if ( suffix == 0 || size == 0 )
+                    return new long[0];
+                first = Math.max(0, size - suffix);
+                last = size - 1;
+            }
+            else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                if ( last < first )
+                    return null;
+                if ( first >= size )
+                    return new long[0];
+                last = Math.min(last, size - 1);
+            }
+            return new long[] { first, last };
+        }
+        catch ( NumberFormatException e ) {
+            return null;
+        }
+    }
+
+    private FileObjectStore mStore;
+
+    private static final int BUFFER_SIZE = 64*1024;
+}
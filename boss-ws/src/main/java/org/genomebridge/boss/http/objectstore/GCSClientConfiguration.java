@@ -0,0 +1,29 @@
+package org.genomebridge.boss.http.objectstore;
+
+import io.dropwizard.client.JerseyClientConfiguration;
+import io.dropwizard.util.Duration;
+
+/**
+ * Configuration for the pooled HTTP client a GCSObjectStore sends its own requests to GCS with.
+ * This is configured using an httpClient clause in the store's section of the YAML configuration
+ * file, which takes all the settings of a Dropwizard Jersey client (maxConnections, timeout,
+ * connectionTimeout, keepAlive, minThreads, maxThreads, and so on).
+ *
+ * The defaults differ from Dropwizard's:  connections are kept alive, so that a stream of requests
+ * doesn't pay for a TLS handshake every time, and the timeouts allow for GCS's latency.
+ */
+public class GCSClientConfiguration extends JerseyClientConfiguration {
+
+    public GCSClientConfiguration() {
+        setMaxConnections(64);
+        setMaxConnectionsPerRoute(64);
+        setTimeout(Duration.seconds(30));
+        setConnectionTimeout(Duration.seconds(5));
+        setKeepAlive(Duration.seconds(60));
+        // The async pool only grows past minThreads when its (unbounded) queue is full,
+        // which is never, so give it all its threads up front.
+        setMinThreads(16);
+        setMaxThreads(16);
+        setGzipEnabledForRequests(false);
+    }
+}
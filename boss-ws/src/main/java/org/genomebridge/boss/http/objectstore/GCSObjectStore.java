@@ -7,18 +7,57 @@ import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Response;
 import javax.xml.bind.DatatypeConverter;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.async.TypeListener;
 
-public class GCSObjectStore implements ObjectStore {
+import io.dropwizard.lifecycle.Managed;
 
-    public GCSObjectStore( ObjectStoreConfiguration config ) throws Exception {
+/**
+ * Signs URLs for GCS.  Requests that BOSS makes to GCS itself all go through one client, which
+ * keeps a pool of connections alive (see GCSClientConfiguration); anything else that talks to GCS
+ * should use it, too.  Stopping the store shuts the pool down.
+ */
+public class GCSObjectStore implements ObjectStore, Managed {
+
+    public GCSObjectStore( ObjectStoreConfiguration config, Client client ) {
         mConfig = config;
+        mClient = client;
+        mV4Signer = getV4Signer(config);
+        mDeleteSlots = new Semaphore(config.httpClient.getMaxThreads());
+    }
+
+    // for benchmarks that have no need of a connection pool
+    GCSObjectStore( ObjectStoreConfiguration config ) {
+        this(config, Client.create());
+    }
+
+    // for tests and benchmarks that have a key, but no keystore file
+    GCSObjectStore( ObjectStoreConfiguration config, PrivateKey key ) {
+        this(config);
+        mKey = key;
     }
 
     @Override
@@ -32,26 +71,163 @@ public class GCSObjectStore implements ObjectStore {
     public URI generateCopyURI( String objKey, String locationToCopy, long timeoutInMillis ) {
 
         String location = getLocation(objKey);
-        String xHeaders = "x-goog-copy-source:" + locationToCopy + '\n';
+        SortedMap<String,String> xHeaders = new TreeMap<>();
+        xHeaders.put("x-goog-copy-source", locationToCopy);
         return getSignedURI(location,HttpMethod.PUT,timeoutInMillis,null,null,xHeaders);
     }
 
     @Override
     public void deleteObject( String objKey ) {
-        String location = getLocation(objKey);
-        long timeoutInMillis = System.currentTimeMillis() + A_FEW_SECONDS;
-        URI uri = getSignedURI(location,HttpMethod.DELETE,timeoutInMillis,null,null,null);
-        ClientResponse response = new Client().resource(uri.toString()).delete(ClientResponse.class);
-        int status = response.getStatus();
-        if ( status == Response.Status.OK.getStatusCode() ||
-                status == Response.Status.NO_CONTENT.getStatusCode() ||
-                // this is a little iffy, but the client may never have done a PUT
-                status == Response.Status.NOT_FOUND.getStatusCode() )
-            return;
-        throw new ObjectStoreException(response.getEntity(String.class));
+        checkDeleted(mClient.resource(getDeleteURI(objKey)).delete(ClientResponse.class));
+    }
+
+    /**
+     * Sends the delete from the client's thread pool.  The future fails with an ObjectStoreException
+     * if GCS won't delete the object.
+     *
+     * The delete's URL is only good for a few seconds, so it mustn't wait in the pool's queue:  no
+     * more deletes are sent at once than the pool has threads, and this blocks until one of them is
+     * free before signing the URL.
+     */
+    public ListenableFuture<Void> deleteObjectAsync( String objKey ) {
+        final SettableFuture<Void> result = SettableFuture.create();
+        mDeleteSlots.acquireUninterruptibly();
+        try {
+            mClient.asyncResource(getDeleteURI(objKey)).delete(new TypeListener<ClientResponse>(ClientResponse.class) {
+                @Override
+                public void onComplete( Future<ClientResponse> response ) {
+                    mDeleteSlots.release();
+                    try {
+                        checkDeleted(Uninterruptibles.getUninterruptibly(response));
+                        result.set(null);
+                    }
+                    catch ( ExecutionException e ) {
+                        result.setException(e.getCause());
+                    }
+                    catch ( RuntimeException e ) {
+                        result.setException(e);
+                    }
+                }
+            });
+        }
+        catch ( RuntimeException e ) {
+            mDeleteSlots.release();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * GCS's batch endpoint needs an OAuth token, and all we have are signed URLs, so these are
+     * individual deletes, sent as fast as the pooled client's threads can take them.
+     */
+    @Override
+    public Map<String,String> deleteObjects( List<String> objKeys ) {
+        Map<String,ListenableFuture<Void>> deletes = new LinkedHashMap<>();
+        for ( String objKey : objKeys )
+            deletes.put(objKey, deleteObjectAsync(objKey));
+        Map<String,String> errors = new HashMap<>();
+        for ( Map.Entry<String,ListenableFuture<Void>> entry : deletes.entrySet() ) {
+            try {
+                Uninterruptibles.getUninterruptibly(entry.getValue());
+            }
+            catch ( ExecutionException e ) {
+                errors.put(entry.getKey(), String.valueOf(e.getCause().getMessage()));
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public boolean copiesServerSide() {
+        return false;
+    }
+
+    @Override
+    public void copyObject( String objKey, String locationToCopy ) {
+        throw new ObjectStoreException("GCS copies are made by the client, with the URL from generateCopyURI.");
+    }
+
+    @Override
+    public String getCopySourceKey( String locationToCopy ) {
+        throw new ObjectStoreException("GCS copies are made by the client, with the URL from generateCopyURI.");
+    }
+
+    @Override
+    public boolean allowsCopyFrom( String locationToCopy ) {
+        return false;
+    }
+
+    /**
+     * Uploads use GCS's XML multipart API.  The part URLs need query parameters signed into them, which
+     * only the V4 signer does, so this needs signingMode HMAC.
+     */
+    @Override
+    public String startMultipartUpload( String objKey, String contentType ) {
+        SortedMap<String,String> headers = new TreeMap<>();
+        if ( contentType != null ) headers.put("content-type", contentType);
+        URI uri = getMultipartURI(objKey, HttpMethod.POST, System.currentTimeMillis() + A_FEW_SECONDS,
+                                    headers, Collections.singletonMap("uploads", ""));
+        WebResource.Builder request = mClient.resource(uri).getRequestBuilder();
+        if ( contentType != null ) request = request.type(contentType);
+        String body = readResponse(request.post(ClientResponse.class), Response.Status.OK);
+        Matcher matcher = UPLOAD_ID.matcher(body);
+        if ( !matcher.find() )
+            throw new ObjectStoreException("GCS didn't return an upload id: " + body);
+        return matcher.group(1);
+    }
+
+    @Override
+    public List<URI> generatePartURIs( String objKey, String uploadId, int partCount, long timeoutInMillis ) {
+        List<URI> uris = new ArrayList<>(partCount);
+        Map<String,String> queryParams = new HashMap<>();
+        queryParams.put("uploadId", uploadId);
+        for ( int partNumber = 1; partNumber <= partCount; ++partNumber ) {
+            queryParams.put("partNumber", Integer.toString(partNumber));
+            uris.add(getMultipartURI(objKey, HttpMethod.PUT, timeoutInMillis, null, queryParams));
+        }
+        return uris;
+    }
+
+    @Override
+    public void completeMultipartUpload( String objKey, String uploadId, List<String> etags ) {
+        StringBuilder sb = new StringBuilder(64*etags.size() + 64);
+        sb.append("<CompleteMultipartUpload>");
+        for ( int idx = 0; idx < etags.size(); ++idx )
+            sb.append("<Part><PartNumber>").append(idx+1).append("</PartNumber><ETag>")
+                .append(escapeXml(etags.get(idx))).append("</ETag></Part>");
+        sb.append("</CompleteMultipartUpload>");
+        URI uri = getMultipartURI(objKey, HttpMethod.POST, System.currentTimeMillis() + A_FEW_SECONDS,
+                                    null, Collections.singletonMap("uploadId", uploadId));
+        readResponse(mClient.resource(uri).type("application/xml").post(ClientResponse.class, sb.toString()),
+                        Response.Status.OK);
+    }
+
+    @Override
+    public void abortMultipartUpload( String objKey, String uploadId ) {
+        URI uri = getMultipartURI(objKey, HttpMethod.DELETE, System.currentTimeMillis() + A_FEW_SECONDS,
+                                    null, Collections.singletonMap("uploadId", uploadId));
+        readResponse(mClient.resource(uri).delete(ClientResponse.class), Response.Status.NO_CONTENT);
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void stop() {
+        mClient.destroy();
     }
 
-    public URI getSignedURI( String location, String method, long timeoutInMillis, String contentType, String contentMD5, String xHeaders ) {
+    public URI getSignedURI( String location, String method, long timeoutInMillis, String contentType, String contentMD5,
+                             SortedMap<String,String> xHeaders ) {
+
+        if ( mV4Signer != null ) {
+            SortedMap<String,String> headers = new TreeMap<>();
+            if ( xHeaders != null ) headers.putAll(xHeaders);
+            if ( contentMD5 != null ) headers.put("content-md5", contentMD5);
+            if ( contentType != null ) headers.put("content-type", contentType);
+            return mV4Signer.sign(method,location,System.currentTimeMillis(),timeoutInMillis,headers,null);
+        }
 
         long timeout = (timeoutInMillis+999L)/1000L;
 
@@ -62,15 +238,23 @@ public class GCSObjectStore implements ObjectStore {
         if ( contentType != null ) sb.append(contentType);
         sb.append('\n');
         sb.append(timeout).append('\n');
-        if ( xHeaders != null ) sb.append(xHeaders);
+        if ( xHeaders != null )
+            for ( Map.Entry<String,String> entry : xHeaders.entrySet() )
+                sb.append(entry.getKey()).append(':').append(entry.getValue()).append('\n');
         sb.append(location);
 
         String sig;
         try {
-            Signature signer = Signature.getInstance("SHA256withRSA");
-            signer.initSign(getKey());
-            signer.update(sb.toString().getBytes(StandardCharsets.UTF_8));
-            sig = URLEncoder.encode(DatatypeConverter.printBase64Binary(signer.sign()),StandardCharsets.UTF_8.name());
+            Signature signer = getSigner();
+            try {
+                signer.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+                sig = URLEncoder.encode(DatatypeConverter.printBase64Binary(signer.sign()),StandardCharsets.UTF_8.name());
+            }
+            catch ( Exception e ) {
+                // don't reuse a signer that may have been left half-way through a signature
+                mSigners.remove();
+                throw e;
+            }
         }
         catch ( Exception e ) {
             throw new ObjectStoreException("Can't encrypt signature.",e);
@@ -84,6 +268,54 @@ public class GCSObjectStore implements ObjectStore {
         return URI.create(sb.toString());
     }
 
+    private URI getDeleteURI( String objKey ) {
+        long timeoutInMillis = System.currentTimeMillis() + A_FEW_SECONDS;
+        return getSignedURI(getLocation(objKey),HttpMethod.DELETE,timeoutInMillis,null,null,null);
+    }
+
+    private URI getMultipartURI( String objKey, String method, long timeoutInMillis,
+                                 Map<String,String> headers, Map<String,String> queryParams ) {
+        if ( mV4Signer == null )
+            throw new ObjectStoreException("Multipart uploads to GCS need signingMode HMAC.");
+        return mV4Signer.sign(method,getLocation(objKey),System.currentTimeMillis(),timeoutInMillis,headers,queryParams);
+    }
+
+    // Returns the body of a response with the expected status.  The response is always closed.
+    private static String readResponse( ClientResponse response, Response.Status expected ) {
+        try {
+            // Jersey won't read an entity from a 204
+            String body = "";
+            if ( response.getStatus() != Response.Status.NO_CONTENT.getStatusCode() && response.hasEntity() )
+                body = response.getEntity(String.class);
+            if ( response.getStatus() != expected.getStatusCode() )
+                throw new ObjectStoreException("GCS returned " + response.getStatus() + ": " + body);
+            return body;
+        }
+        finally {
+            response.close();
+        }
+    }
+
+    private static String escapeXml( String value ) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // The response is always closed, so that its connection goes back to the pool.
+    private static void checkDeleted( ClientResponse response ) {
+        try {
+            int status = response.getStatus();
+            if ( status == Response.Status.OK.getStatusCode() ||
+                    status == Response.Status.NO_CONTENT.getStatusCode() ||
+                    // this is a little iffy, but the client may never have done a PUT
+                    status == Response.Status.NOT_FOUND.getStatusCode() )
+                return;
+            throw new ObjectStoreException(response.getEntity(String.class));
+        }
+        finally {
+            response.close();
+        }
+    }
+
     private String getLocation( String objKey ) {
 
         StringBuilder sb = new StringBuilder(mConfig.bucket.length()+objKey.length()+2);
@@ -91,19 +323,53 @@ public class GCSObjectStore implements ObjectStore {
         return sb.toString();
     }
 
+    private static GCSV4Signer getV4Signer( ObjectStoreConfiguration config ) {
+        if ( config.signingMode == null || "RSA".equals(config.signingMode) )
+            return null;
+        if ( "HMAC".equals(config.signingMode) )
+            return new GCSV4Signer(config.username,config.password,config.endpoint);
+        throw new IllegalStateException("ObjectStore configuration has unrecognized signingMode: "+config.signingMode);
+    }
+
+    /**
+     * Signing is the expensive part of a resolve, so each thread keeps a Signature that has already
+     * been initialized with the key.  sign() leaves it ready to sign again.
+     */
+    private Signature getSigner() throws Exception {
+        Signature signer = mSigners.get();
+        if ( signer == null ) {
+            signer = Signature.getInstance("SHA256withRSA");
+            signer.initSign(getKey());
+            mSigners.set(signer);
+        }
+        return signer;
+    }
+
     private PrivateKey getKey() throws Exception {
-        if ( mKey == null ) {
-            final char[] password = "notasecret".toCharArray();
-            FileInputStream fis = new FileInputStream(mConfig.password);
-            KeyStore ks = KeyStore.getInstance("PKCS12");
-            ks.load(fis, password);
-            fis.close();
-            mKey = (PrivateKey)ks.getKey("privatekey", password);
+        PrivateKey key = mKey;
+        if ( key == null ) {
+            synchronized ( this ) {
+                key = mKey;
+                if ( key == null ) {
+                    final char[] password = "notasecret".toCharArray();
+                    try ( FileInputStream fis = new FileInputStream(mConfig.password) ) {
+                        KeyStore ks = KeyStore.getInstance("PKCS12");
+                        ks.load(fis, password);
+                        key = (PrivateKey)ks.getKey("privatekey", password);
+                    }
+                    mKey = key;
+                }
+            }
         }
-        return mKey;
+        return key;
     }
 
     private ObjectStoreConfiguration mConfig;
-    private PrivateKey mKey;
+    private Client mClient;
+    private volatile PrivateKey mKey;
+    private GCSV4Signer mV4Signer;
+    private Semaphore mDeleteSlots;
+    private final ThreadLocal<Signature> mSigners = new ThreadLocal<>();
     private static final long A_FEW_SECONDS = 5000L;
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>([^<]+)</UploadId>");
 }
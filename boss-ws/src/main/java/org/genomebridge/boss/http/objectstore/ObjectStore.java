@@ -1,6 +1,8 @@
 package org.genomebridge.boss.http.objectstore;
 
 import java.net.URI;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A wrapper around different object store interfaces (the two of which we deal with, now, are S3-compliant,
@@ -14,4 +16,56 @@ public interface ObjectStore {
     public URI generateCopyURI(String objKey, String locationToCopy, long timeoutInMillis);
 
     public void deleteObject(String objKey);
+
+    /**
+     * Deletes many objects, in as few requests as the store allows.  Keys that don't exist count as deleted.
+     * Returns an error message for each key that couldn't be deleted; the rest were.
+     */
+    public Map<String,String> deleteObjects(List<String> objKeys);
+
+    /**
+     * True if copies into this store are made by copyObject, without the data leaving the store.
+     * Otherwise clients make them, with a URL from generateCopyURI.
+     */
+    public boolean copiesServerSide();
+
+    /**
+     * Copies locationToCopy (of the form "/bucket/key") to objKey.  This can take a long time.
+     */
+    public void copyObject(String objKey, String locationToCopy);
+
+    /**
+     * For stores that copy server-side.  Returns the key of locationToCopy, if it's in this store, so
+     * that the caller can check that the object there may be read; or null if it's somewhere else.
+     * Throws an ObjectStoreException if locationToCopy isn't something the store can copy from.
+     */
+    public String getCopySourceKey(String locationToCopy);
+
+    /**
+     * For stores that copy server-side.  True if anyone may copy from locationToCopy, which is not in
+     * this store.
+     */
+    public boolean allowsCopyFrom(String locationToCopy);
+
+    /**
+     * Starts a multipart upload to objKey, and returns its upload id.  The parts are PUT by the client,
+     * with URLs from generatePartURIs, and may be sent in parallel and in any order.
+     */
+    public String startMultipartUpload(String objKey, String contentType);
+
+    /**
+     * Signs PUT URLs for parts 1 through partCount of an upload.  Each is good for retrying its part
+     * until it expires.
+     */
+    public List<URI> generatePartURIs(String objKey, String uploadId, int partCount, long timeoutInMillis);
+
+    /**
+     * Assembles the object from its parts.  The etags are the ETag headers of the part PUTs, in part order.
+     */
+    public void completeMultipartUpload(String objKey, String uploadId, List<String> etags);
+
+    /**
+     * Throws away an upload and whatever parts of it were sent.
+     */
+    public void abortMultipartUpload(String objKey, String uploadId);
 }
@@ -1,5 +1,6 @@
 package org.genomebridge.boss.http.objectstore;
 
+import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
 /**
@@ -21,5 +22,24 @@ public class ObjectStoreConfiguration {
     public String bucket;
 
     @NotNull
-    public String type; // currently either S3 or GCS
+    public String type; // currently S3, GCS, or FILE
+
+    // FILE only: bucket is the directory the files are kept in, endpoint is the URL clients reach BOSS
+    // at, and password is the secret that URLs are signed with.  maxUploadBytes caps the size of a PUT.
+    public long maxUploadBytes = 5L*1024*1024*1024;
+
+    // GCS only: RSA (the default) signs V2 URLs with the service account key in the PKCS12 file named
+    // by password.  HMAC signs V4 URLs with interoperability credentials: username is the access ID,
+    // and password is the secret.
+    public String signingMode;
+
+    // GCS only: the pooled client for the requests BOSS makes to GCS itself, like deletes.
+    @Valid
+    @NotNull
+    public GCSClientConfiguration httpClient = new GCSClientConfiguration();
+
+    // S3 only: how objects are copied within the store.
+    @Valid
+    @NotNull
+    public S3CopyConfiguration copy = new S3CopyConfiguration();
 }
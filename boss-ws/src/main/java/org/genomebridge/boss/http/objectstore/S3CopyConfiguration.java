@@ -0,0 +1,39 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configuration for server-side copies into an S3 store.  This is configured using a copy clause
+ * in the store's section of the YAML configuration file.
+ */
+public class S3CopyConfiguration {
+
+    // Sources bigger than this are copied in parts, in parallel.  S3 won't copy more than 5 GiB at once.
+    @Min(1)
+    @Max(5L*GIB)
+    public long multipartThresholdBytes = 512L*MIB;
+
+    // S3 needs parts of at least 5 MiB, and allows no more than 10000 of them, so very big sources
+    // get bigger parts than this.
+    @Min(5L*MIB)
+    @Max(5L*GIB)
+    public long partSizeBytes = 128L*MIB;
+
+    // The most parts being copied at once, across all copies into the store.
+    @Min(1)
+    public int threads = 16;
+
+    // Buckets besides the store's own that objects may be copied from.  Copies are made with the
+    // store's credentials, so anyone may copy from these; copies from the store's own bucket need
+    // read permission on the BOSS object there.
+    @NotNull
+    public List<String> sourceBuckets = new ArrayList<>();
+
+    private static final long MIB = 1024L*1024L;
+    private static final long GIB = 1024L*MIB;
+}
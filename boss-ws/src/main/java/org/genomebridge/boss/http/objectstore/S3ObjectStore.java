@@ -7,34 +7,89 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.dropwizard.lifecycle.Managed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-public class S3ObjectStore implements ObjectStore {
+/**
+ * Signs URLs for S3, including the part URLs of multipart uploads, and copies objects within it.  Big copies are made in parts, in parallel, on a
+ * pool of copy.threads threads that stopping the store shuts down.
+ */
+public class S3ObjectStore implements ObjectStore, Managed {
 
     public S3ObjectStore( ObjectStoreConfiguration config ) {
+        this(config, newClient(config));
+    }
+
+    // for tests that bring their own client
+    S3ObjectStore( ObjectStoreConfiguration config, AmazonS3 client ) {
         bucket = config.bucket;
+        copyConfig = config.copy;
+        this.client = client;
+        partCopier = Executors.newFixedThreadPool(copyConfig.threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "s3-part-copier");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
-        if ( config.username != null && config.password != null ) {
-            AWSCredentials creds = new BasicAWSCredentials(config.username, config.password);
-            client = new AmazonS3Client(creds);
-        } else {
-            client = new AmazonS3Client();
-        }
         if ( config.endpoint != null ) {
             client.setEndpoint(config.endpoint);
         }
         if ( config.pathStyleAccess != null && config.pathStyleAccess ) {
             client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
         }
+
+        // Presign without the SDK when we can.  Credentials from the default provider chain may be
+        // session credentials, which need a token the presigner doesn't handle.
+        if ( config.username != null && config.password != null ) {
+            presigner = new S3Presigner(config);
+            if ( !presignerAgreesWithSDK() ) {
+                gLogger.warn("S3 presigner disagrees with the AWS SDK for endpoint {}: using the SDK.", config.endpoint);
+                presigner = null;
+            }
+        }
     }
 
     @Override
     public URI generateResolveURI(String key, String httpMethod, long timeoutInMillis,
                                     String contentType, String contentMD5) {
+        if ( presigner != null )
+            return presigner.presign(key, httpMethod, timeoutInMillis, contentType, contentMD5);
+        return generateResolveURIWithSDK(key, httpMethod, timeoutInMillis, contentType, contentMD5);
+    }
+
+    URI generateResolveURIWithSDK(String key, String httpMethod, long timeoutInMillis,
+                                    String contentType, String contentMD5) {
         GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucket, key, HttpMethod.valueOf(httpMethod));
         request.setExpiration(new Date(timeoutInMillis));
         if (contentType != null) {
@@ -49,7 +104,161 @@ public class S3ObjectStore implements ObjectStore {
 
     @Override
     public URI generateCopyURI(String key, String locationToCopy, long timeoutInMillis) {
-        throw new ObjectStoreException("Copying objects is not currently supported on S3 storage.");
+        throw new ObjectStoreException("S3 copies are made by the server, with copyObject.");
+    }
+
+    @Override
+    public boolean copiesServerSide() {
+        return true;
+    }
+
+    /**
+     * A single CopyObject for small sources.  Bigger ones become a multipart upload, with the parts
+     * copied in parallel by UploadPartCopy.  If any part fails, the upload is aborted.
+     */
+    @Override
+    public void copyObject(String key, String locationToCopy) {
+        String[] source = splitLocation(locationToCopy);
+        String srcBucket = source[0];
+        String srcKey = source[1];
+        try {
+            ObjectMetadata srcMetadata = client.getObjectMetadata(srcBucket, srcKey);
+            if ( srcMetadata.getContentLength() <= copyConfig.multipartThresholdBytes )
+                client.copyObject(new CopyObjectRequest(srcBucket, srcKey, bucket, key));
+            else
+                copyInParts(srcBucket, srcKey, srcMetadata, key);
+        } catch (AmazonClientException ace) {
+            throw new ObjectStoreException(ace);
+        }
+    }
+
+    @Override
+    public String getCopySourceKey(String locationToCopy) {
+        String[] source = splitLocation(locationToCopy);
+        return source[0].equals(bucket) ? source[1] : null;
+    }
+
+    /**
+     * Copies are made with this store's credentials, so only the buckets listed in the copy
+     * configuration's sourceBuckets are open to everyone.
+     */
+    @Override
+    public boolean allowsCopyFrom(String locationToCopy) {
+        return copyConfig.sourceBuckets.contains(splitLocation(locationToCopy)[0]);
+    }
+
+    @Override
+    public String startMultipartUpload(String key, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        if ( contentType != null )
+            metadata.setContentType(contentType);
+        try {
+            return client.initiateMultipartUpload(
+                    new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+        } catch (AmazonClientException ace) {
+            throw new ObjectStoreException(ace);
+        }
+    }
+
+    @Override
+    public List<URI> generatePartURIs(String key, String uploadId, int partCount, long timeoutInMillis) {
+        List<URI> uris = new ArrayList<>(partCount);
+        for ( int partNumber = 1; partNumber <= partCount; ++partNumber ) {
+            if ( presigner != null ) {
+                uris.add(presigner.presignPart(key, uploadId, partNumber, timeoutInMillis));
+                continue;
+            }
+            GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucket, key, HttpMethod.PUT);
+            request.setExpiration(new Date(timeoutInMillis));
+            request.addRequestParameter("partNumber", Integer.toString(partNumber));
+            request.addRequestParameter("uploadId", uploadId);
+            uris.add(URI.create(client.generatePresignedUrl(request).toString()));
+        }
+        return uris;
+    }
+
+    @Override
+    public void completeMultipartUpload(String key, String uploadId, List<String> etags) {
+        List<PartETag> partETags = new ArrayList<>(etags.size());
+        for ( int idx = 0; idx < etags.size(); ++idx )
+            partETags.add(new PartETag(idx+1, etags.get(idx)));
+        try {
+            client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+        } catch (AmazonClientException ace) {
+            throw new ObjectStoreException(ace);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        try {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (AmazonClientException ace) {
+            throw new ObjectStoreException(ace);
+        }
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void stop() {
+        partCopier.shutdownNow();
+    }
+
+    private void copyInParts(String srcBucket, String srcKey, ObjectMetadata srcMetadata, String key) {
+        long size = srcMetadata.getContentLength();
+        long partSize = Math.max(copyConfig.partSizeBytes, (size+MAX_PARTS-1)/MAX_PARTS);
+
+        // a multipart upload doesn't pick up the source's metadata, as a CopyObject does
+        ObjectMetadata metadata = new ObjectMetadata();
+        if ( srcMetadata.getContentType() != null )
+            metadata.setContentType(srcMetadata.getContentType());
+        metadata.setUserMetadata(srcMetadata.getUserMetadata());
+        String uploadId = client.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+
+        List<Future<PartETag>> parts = new ArrayList<>();
+        try {
+            int partNumber = 0;
+            for ( long firstByte = 0; firstByte < size; firstByte += partSize ) {
+                final CopyPartRequest request = new CopyPartRequest()
+                        .withSourceBucketName(srcBucket).withSourceKey(srcKey)
+                        .withDestinationBucketName(bucket).withDestinationKey(key)
+                        .withUploadId(uploadId).withPartNumber(++partNumber)
+                        .withFirstByte(firstByte).withLastByte(Math.min(firstByte+partSize, size)-1);
+                parts.add(partCopier.submit(new Callable<PartETag>() {
+                    @Override
+                    public PartETag call() {
+                        return client.copyPart(request).getPartETag();
+                    }
+                }));
+            }
+            List<PartETag> etags = new ArrayList<>(parts.size());
+            for ( Future<PartETag> part : parts )
+                etags.add(Uninterruptibles.getUninterruptibly(part));
+            client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+        } catch (ExecutionException | RuntimeException e) {
+            for ( Future<PartETag> part : parts )
+                part.cancel(true);
+            try {
+                client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+            } catch (AmazonClientException ace) {
+                gLogger.warn("Unable to abort the multipart copy to "+key+".", ace);
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if ( cause instanceof ObjectStoreException )
+                throw (ObjectStoreException)cause;
+            throw new ObjectStoreException(cause);
+        }
+    }
+
+    private static AmazonS3 newClient( ObjectStoreConfiguration config ) {
+        if ( config.username != null && config.password != null ) {
+            AWSCredentials creds = new BasicAWSCredentials(config.username, config.password);
+            return new AmazonS3Client(creds);
+        }
+        return new AmazonS3Client();
     }
 
     @Override
@@ -61,6 +270,53 @@ public class S3ObjectStore implements ObjectStore {
         }
     }
 
+    /**
+     * Uses the multi-object DeleteObjects call, which takes up to 1000 keys at a time.  In quiet mode
+     * the response lists only the keys that failed.
+     */
+    @Override
+    public Map<String,String> deleteObjects(List<String> keys) {
+        Map<String,String> errors = new HashMap<>();
+        for ( int start = 0; start < keys.size(); start += MAX_KEYS_PER_DELETE ) {
+            List<String> chunk = keys.subList(start, Math.min(keys.size(), start+MAX_KEYS_PER_DELETE));
+            DeleteObjectsRequest request = new DeleteObjectsRequest(bucket)
+                    .withKeys(chunk.toArray(new String[chunk.size()]))
+                    .withQuiet(true);
+            try {
+                client.deleteObjects(request);
+            } catch (MultiObjectDeleteException mode) {
+                for ( MultiObjectDeleteException.DeleteError error : mode.getErrors() )
+                    errors.put(error.getKey(), error.getCode()+": "+error.getMessage());
+            } catch (AmazonClientException ace) {
+                for ( String key : chunk )
+                    errors.put(key, ace.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    // The bucket and key of a location of the form /bucket/key.
+    private static String[] splitLocation(String locationToCopy) {
+        int slash = locationToCopy.indexOf('/', 1);
+        if ( !locationToCopy.startsWith("/") || slash < 2 || slash == locationToCopy.length()-1 )
+            throw new ObjectStoreException("Can't copy "+locationToCopy+": expecting /bucket/key.");
+        return new String[] { locationToCopy.substring(1, slash), locationToCopy.substring(slash+1) };
+    }
+
+    // A quick check, made once, that this endpoint and bucket don't trip up the presigner.
+    private boolean presignerAgreesWithSDK() {
+        long timeout = 1400000000000L;
+        String key = "probe key/+~*";
+        return presigner.presign(key, "PUT", timeout, "text/plain", "MD5==").equals(
+                generateResolveURIWithSDK(key, "PUT", timeout, "text/plain", "MD5=="));
+    }
+
     private AmazonS3 client;
     private String bucket;
+    private S3Presigner presigner;
+    private S3CopyConfiguration copyConfig;
+    private ExecutorService partCopier;
+    private static final int MAX_PARTS = 10000;
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+    private static final Logger gLogger = LoggerFactory.getLogger(S3ObjectStore.class);
 }
@@ -0,0 +1,141 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.regex.Pattern;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Presigns S3 URLs without going through AmazonS3Client's request pipeline.
+ *
+ * The AWS SDK we use presigns with query-string signature version 2 (HMAC-SHA1), so this does too,
+ * and its URLs are byte-for-byte the ones AmazonS3Client.generatePresignedUrl would produce.  The
+ * scheme, host, bucket part of the path, and the access key parameter are all worked out once, and
+ * each thread keeps a Mac already initialized with the secret key.
+ */
+class S3Presigner {
+
+    S3Presigner( ObjectStoreConfiguration config ) {
+        final SecretKeySpec secretKey =
+                new SecretKeySpec(config.password.trim().getBytes(StandardCharsets.UTF_8), "HmacSHA1");
+        mMacs = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac mac = Mac.getInstance("HmacSHA1");
+                    mac.init(secretKey);
+                    return mac;
+                }
+                catch ( GeneralSecurityException e ) {
+                    throw new ObjectStoreException("Can't initialize HmacSHA1.", e);
+                }
+            }
+        };
+
+        String endpoint = config.endpoint != null ? config.endpoint : DEFAULT_ENDPOINT;
+        if ( !endpoint.contains("://") )
+            endpoint = "https://" + endpoint;
+        URI uri = URI.create(endpoint);
+        mResourcePrefix = "/" + config.bucket + "/";
+        if ( Boolean.TRUE.equals(config.pathStyleAccess) || !isDNSBucketName(config.bucket) )
+            mUrlPrefix = uri.getScheme() + "://" + uri.getAuthority() + mResourcePrefix;
+        else
+            mUrlPrefix = uri.getScheme() + "://" + config.bucket + '.' + uri.getAuthority() + '/';
+        mQueryPrefix = "AWSAccessKeyId=" + urlEncode(config.username.trim(), false) + "&Expires=";
+    }
+
+    URI presign( String key, String httpMethod, long timeoutInMillis, String contentType, String contentMD5 ) {
+        return presign(key, httpMethod, timeoutInMillis, contentType, contentMD5, null, null);
+    }
+
+    /**
+     * A PUT of one part of a multipart upload.  The part number and upload id are sub-resources, so
+     * they're signed along with the path (unencoded, as they are in a string to sign).
+     */
+    URI presignPart( String key, String uploadId, int partNumber, long timeoutInMillis ) {
+        String partNumberParam = "partNumber=" + partNumber + "&uploadId=";
+        return presign(key, "PUT", timeoutInMillis, null, null,
+                        partNumberParam + uploadId, partNumberParam + urlEncode(uploadId, false));
+    }
+
+    private URI presign( String key, String httpMethod, long timeoutInMillis, String contentType, String contentMD5,
+                         String signedSubresources, String subresourceQuery ) {
+        String path = encodeKey(key);
+        String expires = Long.toString(timeoutInMillis/1000L);
+
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(httpMethod).append('\n');
+        if ( contentMD5 != null ) sb.append(contentMD5);
+        sb.append('\n');
+        if ( contentType != null ) sb.append(contentType);
+        sb.append('\n');
+        sb.append(expires).append('\n');
+        sb.append(mResourcePrefix).append(path);
+        if ( signedSubresources != null )
+            sb.append('?').append(signedSubresources);
+        byte[] sig = mMacs.get().doFinal(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        sb.setLength(0);
+        sb.append(mUrlPrefix).append(path).append('?');
+        if ( subresourceQuery != null )
+            sb.append(subresourceQuery).append('&');
+        sb.append(mQueryPrefix).append(expires)
+            .append("&Signature=").append(urlEncode(DatatypeConverter.printBase64Binary(sig), false));
+        return URI.create(sb.toString());
+    }
+
+    // The SDK's path encoding, plus its rule that a slash right after another slash is escaped.
+    private static String encodeKey( String key ) {
+        String encoded = urlEncode(key, true);
+        if ( encoded.indexOf('/') < 0 )
+            return encoded;
+        StringBuilder sb = new StringBuilder(encoded.length() + 8);
+        char prev = '/'; // the resource path has a slash ahead of the key
+        for ( int idx = 0; idx < encoded.length(); ++idx ) {
+            char c = encoded.charAt(idx);
+            if ( c == '/' && prev == '/' )
+                sb.append("%2F");
+            else
+                sb.append(c);
+            prev = c;
+        }
+        return sb.toString();
+    }
+
+    // Matches com.amazonaws.util.HttpUtils.urlEncode.
+    private static String urlEncode( String value, boolean path ) {
+        String encoded;
+        try {
+            encoded = URLEncoder.encode(value, "UTF-8");
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new IllegalStateException(e);
+        }
+        if ( encoded.indexOf('+') >= 0 ) encoded = encoded.replace("+", "%20");
+        if ( encoded.indexOf('*') >= 0 ) encoded = encoded.replace("*", "%2A");
+        if ( encoded.contains("%7E") ) encoded = encoded.replace("%7E", "~");
+        if ( path && encoded.contains("%2F") ) encoded = encoded.replace("%2F", "/");
+        return encoded;
+    }
+
+    // Matches com.amazonaws.services.s3.internal.BucketNameUtils.isDNSBucketName.
+    private static boolean isDNSBucketName( String bucket ) {
+        return bucket.length() >= 3 && bucket.length() <= 63 && !IP_ADDRESS.matcher(bucket).matches() &&
+                DNS_LABELS.matcher(bucket).matches();
+    }
+
+    private final ThreadLocal<Mac> mMacs;
+    private final String mResourcePrefix;
+    private final String mUrlPrefix;
+    private final String mQueryPrefix;
+
+    private static final String DEFAULT_ENDPOINT = "https://s3.amazonaws.com";
+    private static final Pattern IP_ADDRESS = Pattern.compile("\\d+\\.\\d+\\.\\d+\\.\\d+");
+    private static final Pattern DNS_LABELS = Pattern.compile("[a-z0-9]([a-z0-9-]*[a-z0-9])?(\\.[a-z0-9]([a-z0-9-]*[a-z0-9])?)*");
+}
@@ -0,0 +1,18 @@
+package org.genomebridge.boss.http.objectstore;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration for the cache of signed resolve URLs.  This is configured using a urlCache clause
+ * in the YAML configuration file.  The cache is off unless maxEntries is positive.
+ */
+public class UrlCacheConfiguration {
+
+    @Min(0)
+    public long maxEntries = 0L;
+
+    // Expirations are rounded up to a multiple of this, so a URL can outlive the validity period
+    // that was asked for by up to this long.
+    @Min(1)
+    public long bucketSeconds = 60L;
+}
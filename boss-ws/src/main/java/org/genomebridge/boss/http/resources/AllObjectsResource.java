@@ -1,7 +1,16 @@
 package org.genomebridge.boss.http.resources;
 
 import org.genomebridge.boss.http.service.BossAPI;
+import org.genomebridge.boss.http.service.BossAPI.AclChangeRequest;
+import org.genomebridge.boss.http.service.BossAPI.AclChangeResponse;
+import org.genomebridge.boss.http.service.BossAPI.BatchDescribeResponse;
+import org.genomebridge.boss.http.service.BossAPI.BatchResolveRequest;
+import org.genomebridge.boss.http.service.BossAPI.BatchResolveResponse;
 import org.genomebridge.boss.http.service.BossAPI.ErrorDesc;
+import org.genomebridge.boss.http.service.BossAPI.ListRequest;
+import org.genomebridge.boss.http.service.BossAPI.ListResponse;
+import org.genomebridge.boss.http.service.BossAPI.NdjsonBody;
+import org.genomebridge.boss.http.service.BossAPI.NdjsonResponse;
 import org.genomebridge.boss.http.service.BossAPI.ObjectDesc;
 
 import javax.ws.rs.Consumes;
@@ -13,9 +22,19 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,6 +43,12 @@ public class AllObjectsResource extends AbstractResource {
 
     public AllObjectsResource( BossAPI api ) {
         this.api = api;
+        this.objectResource = new ObjectResource(api);
+    }
+
+    @Path("{objectId}")
+    public ObjectResource object() {
+        return objectResource;
     }
 
     @GET
@@ -50,5 +75,131 @@ public class AllObjectsResource extends AbstractResource {
         return Response.created(uri).entity(req).build();
     }
 
+    @Path("batch")
+    @POST
+    @Consumes("application/json")
+    @Produces("application/json")
+    public Response createObjects( @HeaderParam(REMOTE_USER_HEADER) String userName,
+                                   List<ObjectDesc> reqs ) {
+        ErrorDesc err = api.insertObjects(reqs,userName);
+        if ( err != null )
+            throwWAE(err);
+        return Response.status(Response.Status.CREATED).entity(reqs).build();
+    }
+
+    @Path("list")
+    @GET
+    @Produces("application/json")
+    public ListResponse listObjects( @QueryParam("ownerId") String ownerId,
+                                     @QueryParam("createdAfter") Long createdAfter,
+                                     @QueryParam("createdBefore") Long createdBefore,
+                                     @QueryParam("cursor") String cursor,
+                                     @QueryParam("limit") Integer limit,
+                                     @HeaderParam(REMOTE_USER_HEADER) String userName ) {
+        ListRequest req = new ListRequest();
+        req.ownerId = ownerId;
+        req.createdAfter = createdAfter;
+        req.createdBefore = createdBefore;
+        req.cursor = cursor;
+        req.limit = limit;
+        ListResponse resp = new ListResponse();
+        ErrorDesc err = api.listObjects(req, userName, resp);
+        if ( err != null )
+            throwWAE(err);
+        return resp;
+    }
+
+    @Path("search")
+    @GET
+    @Produces("application/json")
+    public ListResponse searchObjects( @QueryParam("prefix") String prefix,
+                                       @QueryParam("contains") String contains,
+                                       @QueryParam("cursor") String cursor,
+                                       @QueryParam("limit") Integer limit,
+                                       @HeaderParam(REMOTE_USER_HEADER) String userName ) {
+        ListResponse resp = new ListResponse();
+        ErrorDesc err = api.searchObjects(prefix, contains, cursor, limit, userName, resp);
+        if ( err != null )
+            throwWAE(err);
+        return resp;
+    }
+
+    @Path("import")
+    @POST
+    @Consumes("application/x-ndjson")
+    @Produces("application/x-ndjson")
+    public Response importObjects( @HeaderParam(REMOTE_USER_HEADER) String userName,
+                                   InputStream body ) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        NdjsonResponse resp = new NdjsonResponse();
+        ErrorDesc err = api.importObjects(userName, reader, resp);
+        if ( err != null )
+            throwWAE(err);
+        return Response.ok(streamingOutput(resp.body)).build();
+    }
+
+    @Path("export")
+    @GET
+    @Produces("application/x-ndjson")
+    public Response exportObjects( @HeaderParam(REMOTE_USER_HEADER) String userName ) {
+        // errors have to be found before the response starts, or they can't reach the client
+        NdjsonResponse resp = new NdjsonResponse();
+        ErrorDesc err = api.exportObjects(userName, resp);
+        if ( err != null )
+            throwWAE(err);
+        return Response.ok(streamingOutput(resp.body)).build();
+    }
+
+    @Path("acl")
+    @POST
+    @Consumes("application/json")
+    @Produces("application/json")
+    public AclChangeResponse changeAcls( @HeaderParam(REMOTE_USER_HEADER) String userName,
+                                         AclChangeRequest req ) {
+        AclChangeResponse resp = new AclChangeResponse();
+        ErrorDesc err = api.changeAcls(req, userName, resp);
+        if ( err != null )
+            throwWAE(err);
+        return resp;
+    }
+
+    @Path("describe")
+    @POST
+    @Consumes("application/json")
+    @Produces("application/json")
+    public List<BatchDescribeResponse> describeObjects( @HeaderParam(REMOTE_USER_HEADER) String userName,
+                                                        List<String> objectIds ) {
+        List<BatchDescribeResponse> descs = new ArrayList<>();
+        ErrorDesc err = api.describeObjects(objectIds, userName, descs);
+        if ( err != null )
+            throwWAE(err);
+        return descs;
+    }
+
+    @Path("resolve")
+    @POST
+    @Consumes("application/json")
+    @Produces("application/json")
+    public List<BatchResolveResponse> resolveObjects( @HeaderParam(REMOTE_USER_HEADER) String userName,
+                                                      List<BatchResolveRequest> reqs ) {
+        List<BatchResolveResponse> resps = new ArrayList<>();
+        ErrorDesc err = api.resolveObjects(reqs, userName, resps);
+        if ( err != null )
+            throwWAE(err);
+        return resps;
+    }
+
+    private static StreamingOutput streamingOutput( final NdjsonBody body ) {
+        return new StreamingOutput() {
+            @Override
+            public void write( OutputStream out ) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                body.writeTo(writer);
+                writer.flush();
+            }
+        };
+    }
+
     private BossAPI api;
+    private ObjectResource objectResource;
 }
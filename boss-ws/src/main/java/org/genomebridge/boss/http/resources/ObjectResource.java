@@ -6,7 +6,11 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import org.genomebridge.boss.http.service.BossAPI;
 import org.genomebridge.boss.http.service.BossAPI.CopyRequest;
 import org.genomebridge.boss.http.service.BossAPI.CopyResponse;
+import org.genomebridge.boss.http.service.BossAPI.DeletionStatus;
 import org.genomebridge.boss.http.service.BossAPI.ErrorDesc;
+import org.genomebridge.boss.http.service.BossAPI.MultipartCompleteRequest;
+import org.genomebridge.boss.http.service.BossAPI.MultipartRequest;
+import org.genomebridge.boss.http.service.BossAPI.MultipartResponse;
 import org.genomebridge.boss.http.service.BossAPI.ObjectDesc;
 import org.genomebridge.boss.http.service.BossAPI.ResolveRequest;
 import org.genomebridge.boss.http.service.BossAPI.ResolveResponse;
@@ -15,7 +19,10 @@ import javax.ws.rs.*;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include;
 
-@Path("objects/{objectId}")
+/**
+ * A single object, at objects/{objectId}.  This is a sub-resource of AllObjectsResource, so that
+ * literal paths under objects (like objects/resolve) take precedence over object IDs.
+ */
 @JsonInclude(Include.NON_NULL)
 public class ObjectResource extends AbstractResource {
 
@@ -73,6 +80,55 @@ public class ObjectResource extends AbstractResource {
         return resp;
     }
 
+    @Path("copy/{jobId}")
+    @Produces("application/json")
+    @GET
+    public CopyResponse copyJob(@PathParam("objectId") String objectId,
+                                @PathParam("jobId") String jobId,
+                                @HeaderParam(REMOTE_USER_HEADER) String userName) {
+        CopyResponse resp = new CopyResponse();
+        ErrorDesc err = api.getCopyJob(objectId, jobId, userName, resp);
+        if ( err != null )
+            throwWAE(err);
+        return resp;
+    }
+
+    @Path("multipart")
+    @Consumes("application/json")
+    @Produces("application/json")
+    @POST
+    public MultipartResponse resolveForMultipartUpload(@PathParam("objectId") String objectId,
+                                                       @HeaderParam(REMOTE_USER_HEADER) String userName,
+                                                       MultipartRequest req) {
+        MultipartResponse resp = new MultipartResponse();
+        ErrorDesc err = api.resolveObjectForMultipartUpload(objectId, userName, req, resp);
+        if ( err != null )
+            throwWAE(err);
+        return resp;
+    }
+
+    @Path("multipart/{uploadId}/complete")
+    @Consumes("application/json")
+    @POST
+    public void completeMultipartUpload(@PathParam("objectId") String objectId,
+                                        @PathParam("uploadId") String uploadId,
+                                        @HeaderParam(REMOTE_USER_HEADER) String userName,
+                                        MultipartCompleteRequest req) {
+        ErrorDesc err = api.completeMultipartUpload(objectId, uploadId, userName, req);
+        if ( err != null )
+            throwWAE(err);
+    }
+
+    @Path("multipart/{uploadId}")
+    @DELETE
+    public void abortMultipartUpload(@PathParam("objectId") String objectId,
+                                     @PathParam("uploadId") String uploadId,
+                                     @HeaderParam(REMOTE_USER_HEADER) String userName) {
+        ErrorDesc err = api.abortMultipartUpload(objectId, uploadId, userName);
+        if ( err != null )
+            throwWAE(err);
+    }
+
     @DELETE
     public String delete(@PathParam("objectId") String objectId,
                          @HeaderParam(REMOTE_USER_HEADER) String userName) {
@@ -82,5 +138,17 @@ public class ObjectResource extends AbstractResource {
         return objectId;
     }
 
+    @Path("deletion")
+    @GET
+    @Produces("application/json")
+    public DeletionStatus deletionStatus(@PathParam("objectId") String objectId,
+                                         @HeaderParam(REMOTE_USER_HEADER) String userName) {
+        DeletionStatus status = new DeletionStatus();
+        ErrorDesc err = api.getDeletionStatus(objectId, userName, status);
+        if ( err != null )
+            throwWAE(err);
+        return status;
+    }
+
     private BossAPI api;
 }
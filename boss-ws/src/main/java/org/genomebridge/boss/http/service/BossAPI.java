@@ -5,6 +5,9 @@ import org.genomebridge.boss.http.models.ObjectCore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URI;
 import java.util.List;
 
@@ -29,10 +32,86 @@ public interface BossAPI {
 
     public ErrorDesc getObject(String objectId, String userName, ObjectDesc desc);
     public ErrorDesc findObjectsByName(String objectName, String userName, List<ObjectDesc> descs);
+    // Lists objects the caller can read.  Dates are milliseconds since the epoch; createdBefore is exclusive.
+    public static class ListRequest {
+        public String ownerId;
+        public Long createdAfter;
+        public Long createdBefore;
+        public String cursor;
+        public Integer limit;
+    }
+
+    // nextCursor is null on the last page.
+    @JsonInclude(Include.NON_NULL)
+    public static class ListResponse {
+        public List<ObjectDesc> objects;
+        public String nextCursor;
+    }
+
+    public ErrorDesc listObjects(ListRequest req, String userName, ListResponse resp);
+    // Give either a name prefix, or a string the names contain.  A page may come up short of the limit,
+    // or even empty, and still have a nextCursor.
+    public ErrorDesc searchObjects(String prefix, String contains, String cursor, Integer limit, String userName,
+                                   ListResponse resp);
+    // The body of a newline-delimited JSON response, which is written once the request has been checked.
+    public interface NdjsonBody {
+        public void writeTo(Writer out) throws IOException;
+    }
+
+    public static class NdjsonResponse {
+        public NdjsonBody body;
+    }
+
+    // Checks an export of the live objects userName can read, and sets the body that writes them.
+    public ErrorDesc exportObjects(String userName, NdjsonResponse resp);
+
+    // Writes every object, deleted ones included, as newline-delimited JSON.  Returns the number written.
+    public long exportAllObjects(Writer out) throws IOException;
+    // One per line of an import, in line order.  status is 201 when the object was created.
+    @JsonInclude(Include.NON_NULL)
+    public static class ImportResult {
+        public Integer line;
+        public String objectId;
+        public Integer status;
+        public String message;
+    }
+
+    // Checks an import, and sets the body that creates an object for each line of newline-delimited JSON
+    // descriptors, writing an ImportResult line for each.
+    public ErrorDesc importObjects(String userName, BufferedReader in, NdjsonResponse resp);
+
     public ErrorDesc insertObject(ObjectDesc desc, String userName);
+    public ErrorDesc insertObjects(List<ObjectDesc> descs, String userName);
     public ErrorDesc updateObject(ObjectDesc desc, String objectId, String userName);
     public ErrorDesc deleteObject(String objectId, String userName);
 
+    // How far along removing a deleted object from its object store has got.  nextAttempt is in
+    // milliseconds since the epoch.  An object that was never in a store is done as soon as it's deleted.
+    @JsonInclude(Include.NON_NULL)
+    public static class DeletionStatus {
+        public static final String PENDING = "pending";
+        public static final String RETRYING = "retrying";
+        public static final String FAILED = "failed";
+        public static final String DONE = "done";
+
+        public String objectId;
+        public String state;
+        public Integer attempts;
+        public Long nextAttempt;
+        public String lastError;
+    }
+
+    public ErrorDesc getDeletionStatus(String objectId, String userName, DeletionStatus status);
+
+    // status is the HTTP status a single GET would have returned; the description is only filled in if it's 200.
+    @JsonInclude(Include.NON_NULL)
+    public static class BatchDescribeResponse extends ObjectDesc {
+        public Integer status;
+        public String message;
+    }
+
+    public ErrorDesc describeObjects(List<String> objectIds, String userName, List<BatchDescribeResponse> descs);
+
     public static class ResolveRequest {
         public Integer validityPeriodSeconds;
         public String httpMethod;
@@ -50,14 +129,84 @@ public interface BossAPI {
 
     public ErrorDesc resolveObject(String objectId, String userName, ResolveRequest req, ResolveResponse resp);
 
+    public static class BatchResolveRequest extends ResolveRequest {
+        public String objectId;
+    }
+
+    // status is the HTTP status a single resolve would have returned; message is set when it isn't 200.
+    @JsonInclude(Include.NON_NULL)
+    public static class BatchResolveResponse extends ResolveResponse {
+        public String objectId;
+        public Integer status;
+        public String message;
+    }
+
+    public ErrorDesc resolveObjects(List<BatchResolveRequest> reqs, String userName, List<BatchResolveResponse> resps);
+
+    // Choose objects either by objectIds, or by ownerId and/or objectName.  Revokes are applied before grants.
+    public static class AclChangeRequest {
+        public String[] objectIds;
+        public String ownerId;
+        public String objectName;
+        public String[] grantReaders, revokeReaders;
+        public String[] grantWriters, revokeWriters;
+    }
+
+    public static class AclChangeResponse {
+        public Integer objectCount;
+    }
+
+    public ErrorDesc changeAcls(AclChangeRequest req, String userName, AclChangeResponse resp);
+
     public static class CopyRequest {
         public Integer validityPeriodSeconds;
         public String locationToCopy; // expecting something of the form "/bucket/key"
     }
 
+    // Stores that sign URLs for copying return the uri.  Stores that copy server-side return the
+    // copyJobId, its status, and a message if it failed.
+    @JsonInclude(Include.NON_NULL)
     public static class CopyResponse {
+        public static final String RUNNING = "running";
+        public static final String DONE = "done";
+        public static final String FAILED = "failed";
+
         public URI uri;
+        public String copyJobId;
+        public String status;
+        public String message;
     }
 
     public ErrorDesc resolveObjectForCopying(String objectId, String userName, CopyRequest req, CopyResponse resp);
+    public ErrorDesc getCopyJob(String objectId, String jobId, String userName, CopyResponse resp);
+
+    // Starts a multipart upload, or signs the part URLs of one that was started before, if uploadId is given.
+    // sizeBytes defaults to the object's size estimate.
+    public static class MultipartRequest {
+        public Integer validityPeriodSeconds;
+        public String contentType;
+        public Long sizeBytes;
+        public Long partSizeBytes;
+        public String uploadId;
+    }
+
+    // PUT part n (of partSizeBytes, except maybe the last) to partUrls[n-1], then complete the upload.
+    @JsonInclude(Include.NON_NULL)
+    public static class MultipartResponse {
+        public String uploadId;
+        public Long partSizeBytes;
+        public List<URI> partUrls;
+        public Integer validityPeriodSeconds;
+    }
+
+    // The ETag headers the part PUTs returned, in part order.
+    public static class MultipartCompleteRequest {
+        public List<String> etags;
+    }
+
+    public ErrorDesc resolveObjectForMultipartUpload(String objectId, String userName, MultipartRequest req,
+                                                     MultipartResponse resp);
+    public ErrorDesc completeMultipartUpload(String objectId, String uploadId, String userName,
+                                             MultipartCompleteRequest req);
+    public ErrorDesc abortMultipartUpload(String objectId, String uploadId, String userName);
 }
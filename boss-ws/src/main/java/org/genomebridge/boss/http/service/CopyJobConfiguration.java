@@ -0,0 +1,19 @@
+package org.genomebridge.boss.http.service;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration for server-side copies.  This is configured using a copyJobs clause in the YAML
+ * configuration file.
+ */
+public class CopyJobConfiguration {
+
+    // The most copies this server runs at once.  Others wait their turn.
+    @Min(1)
+    public int maxConcurrentCopies = 4;
+
+    // How long a copy request waits for its copy to finish.  Copies that take longer are left to run,
+    // and the client polls for their status.
+    @Min(0)
+    public long waitMillis = 2000L;
+}
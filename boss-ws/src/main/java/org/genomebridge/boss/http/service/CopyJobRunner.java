@@ -0,0 +1,127 @@
+package org.genomebridge.boss.http.service;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.db.CopyJobRow;
+import org.genomebridge.boss.http.objectstore.ObjectStore;
+import org.genomebridge.boss.http.service.BossAPI.CopyResponse;
+import org.skife.jdbi.v2.DBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Runs server-side copies into object stores, maxConcurrentCopies at a time.
+ *
+ * Each copy is a row in the copyJobs table, so that any server can report on it.  A copy request
+ * waits up to waitMillis for its copy; if it isn't done by then, the client gets the jobId and polls.
+ * Copies still running when the application stops are recorded as failed.
+ */
+public class CopyJobRunner implements Managed {
+
+    public CopyJobRunner( DBI dbi, CopyJobConfiguration config ) {
+        mDAO = dbi.onDemand(BossDAO.class);
+        mConfig = config;
+    }
+
+    /**
+     * Starts copying locationToCopy to objKey in the store, and fills in the job's status.
+     */
+    public void start( final ObjectStore store, String objectId, final String objKey, final String locationToCopy,
+                       CopyResponse resp ) {
+        final String jobId = UUID.randomUUID().toString();
+        mDAO.insertCopyJob(jobId, objectId, locationToCopy, CopyResponse.RUNNING, new Timestamp(System.currentTimeMillis()));
+        mRunning.add(jobId);
+        Future<CopyJobRow> job = mExecutor.submit(new Callable<CopyJobRow>() {
+            @Override
+            public CopyJobRow call() {
+                CopyJobRow row = new CopyJobRow();
+                row.jobId = jobId;
+                row.status = CopyResponse.DONE;
+                try {
+                    store.copyObject(objKey, locationToCopy);
+                }
+                catch ( RuntimeException e ) {
+                    gLogger.warn("Unable to copy "+locationToCopy+" to "+objKey+".", e);
+                    row.status = CopyResponse.FAILED;
+                    row.message = String.valueOf(e.getMessage());
+                    if ( row.message.length() > MAX_MESSAGE_LENGTH )
+                        row.message = row.message.substring(0, MAX_MESSAGE_LENGTH);
+                }
+                finish(row);
+                return row;
+            }
+        });
+
+        resp.copyJobId = jobId;
+        resp.status = CopyResponse.RUNNING;
+        try {
+            CopyJobRow row = Uninterruptibles.getUninterruptibly(job, mConfig.waitMillis, TimeUnit.MILLISECONDS);
+            resp.status = row.status;
+            resp.message = row.message;
+        }
+        catch ( TimeoutException e ) {
+            // still running:  the client will have to poll
+        }
+        catch ( ExecutionException e ) {
+            gLogger.warn("Copy job "+jobId+" failed.", e.getCause());
+        }
+    }
+
+    @Override
+    public void start() {
+        mExecutor = Executors.newFixedThreadPool(mConfig.maxConcurrentCopies, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "copy-job-runner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        mExecutor.shutdownNow();
+        for ( String jobId : mRunning ) {
+            CopyJobRow row = new CopyJobRow();
+            row.jobId = jobId;
+            row.status = CopyResponse.FAILED;
+            row.message = "The server stopped before the copy finished.";
+            finish(row);
+        }
+    }
+
+    private void finish( CopyJobRow row ) {
+        try {
+            mDAO.finishCopyJob(row.jobId, row.status, row.message, new Timestamp(System.currentTimeMillis()));
+            mRunning.remove(row.jobId);
+        }
+        catch ( RuntimeException e ) {
+            gLogger.warn("Unable to record the end of copy job "+row.jobId+".", e);
+        }
+    }
+
+    private BossDAO mDAO;
+    private CopyJobConfiguration mConfig;
+    private ExecutorService mExecutor;
+    private Set<String> mRunning = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+    private static final int MAX_MESSAGE_LENGTH = 1024;
+    private static final Logger gLogger = LoggerFactory.getLogger(CopyJobRunner.class);
+}
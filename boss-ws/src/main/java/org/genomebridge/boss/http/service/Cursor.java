@@ -0,0 +1,48 @@
+package org.genomebridge.boss.http.service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The position of the last object on a page of a listing, which is where the next page starts.
+ *
+ * It travels to the client as an opaque, URL-safe token.  The createDate keeps its full
+ * (sub-millisecond) precision, since it's compared for equality when seeking.
+ */
+class Cursor {
+
+    Cursor( Timestamp createDate, String objectId ) {
+        mCreateDate = createDate;
+        mObjectId = objectId;
+    }
+
+    String encode() {
+        String value = mCreateDate.getTime() + SEPARATOR + mCreateDate.getNanos() + SEPARATOR + mObjectId;
+        return BaseEncoding.base64Url().omitPadding().encode(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns null if the token isn't one that encode produced.
+     */
+    static Cursor decode( String token ) {
+        try {
+            String value = new String(BaseEncoding.base64Url().omitPadding().decode(token), StandardCharsets.UTF_8);
+            String[] parts = value.split(SEPARATOR, 3);
+            if ( parts.length != 3 || parts[2].isEmpty() )
+                return null;
+            Timestamp createDate = new Timestamp(Long.parseLong(parts[0]));
+            createDate.setNanos(Integer.parseInt(parts[1]));
+            return new Cursor(createDate, parts[2]);
+        }
+        catch ( IllegalArgumentException e ) { // also catches NumberFormatException
+            return null;
+        }
+    }
+
+    final Timestamp mCreateDate;
+    final String mObjectId;
+
+    private static final String SEPARATOR = ":";
+}
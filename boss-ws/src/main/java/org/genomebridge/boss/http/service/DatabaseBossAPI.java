@@ -1,16 +1,41 @@
 package org.genomebridge.boss.http.service;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.genomebridge.boss.http.db.AclCache;
+import org.genomebridge.boss.http.db.AclEntry;
+import org.genomebridge.boss.http.db.AclSync;
+import org.genomebridge.boss.http.db.NameIndex;
 import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.db.CopyJobRow;
+import org.genomebridge.boss.http.db.DeleteOutboxRow;
+import org.genomebridge.boss.http.db.ObjectAclRow;
 import org.genomebridge.boss.http.db.ObjectRow;
+import org.genomebridge.boss.http.db.ObjectRowCache;
+import org.genomebridge.boss.http.db.SqlDialect;
 import org.genomebridge.boss.http.models.ObjectCore;
 import org.genomebridge.boss.http.models.StoragePlatform;
 import org.genomebridge.boss.http.objectstore.ObjectStore;
+import org.genomebridge.boss.http.objectstore.ObjectStoreException;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
 import java.net.URI;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Response;
@@ -21,27 +46,55 @@ import javax.xml.bind.DatatypeConverter;
  */
 public class DatabaseBossAPI implements BossAPI {
 
-    public DatabaseBossAPI( DBI dbi, ObjectStore localStore, ObjectStore cloudStore,  Map<String,String> messages) {
+    public DatabaseBossAPI( DBI dbi, ObjectStore localStore, ObjectStore cloudStore, ObjectStore fileStore,
+                            Map<String,String> messages,
+                            ResolveDateWriter resolveDateWriter, AclCache aclCache,
+                            ObjectRowCache objectCache, ExecutorService signingExecutor, int signingThreads,
+                            GroupCommitter groupCommitter, SqlDialect dialect, NameIndex nameIndex,
+                            CopyJobRunner copyJobRunner, ObjectMapper objectMapper ) {
         mDBI = dbi;
         mLocalStore = localStore;
         mCloudStore = cloudStore;
+        mFileStore = fileStore;
         mMessages = messages;
+        mResolveDateWriter = resolveDateWriter;
+        mAclCache = aclCache;
+        mObjectCache = objectCache;
+        mSigningExecutor = signingExecutor;
+        mSigningThreads = signingThreads;
+        mGroupCommitter = groupCommitter;
+        mAclSync = new AclSync(dialect);
+        mNameIndex = nameIndex;
+        mCopyJobRunner = copyJobRunner;
+        mExporter = new ObjectExporter(dbi, dialect);
+        mJsonReader = objectMapper.reader(ObjectDesc.class);
+        mJsonWriter = objectMapper.writer();
     }
 
     @Override
     public ErrorDesc getObject(String objectId, String userName, ObjectDesc desc) {
-        BossDAO dao = getDao();
         if ( userName == null )
             return badReqErr(getMessage("remoteUser"));
-        ObjectRow rec = dao.findObjectById(objectId);
-        if ( rec == null )
-            return notFoundErr(objectId);
-        if ( !"Y".equals(rec.active) )
-            return goneErr(objectId);
-        if ( !dao.canRead(objectId,userName) )
-            return readPermsErr(objectId,userName);
-        rowToDesc(rec,desc,dao);
-        return null;
+        Handle handle = openHandle();
+        try {
+            // the row and both ACLs come back from a single query
+            long stamp = mObjectCache.stamp(objectId);
+            long aclStamp = mAclCache.stamp(objectId);
+            ObjectAclRow rec = ObjectAclRow.fold(handle.attach(BossDAO.class).findObjectAndAclsById(objectId));
+            if ( rec == null )
+                return notFoundErr(objectId);
+            mObjectCache.put(rec,stamp);
+            mAclCache.put(objectId,rec.readers,rec.writers,aclStamp);
+            if ( !"Y".equals(rec.active) )
+                return goneErr(objectId);
+            if ( !rec.canRead(userName) )
+                return readPermsErr(objectId,userName);
+            rowToDesc(rec,rec.readers,rec.writers,desc);
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
     }
 
     @Override
@@ -50,15 +103,227 @@ public class DatabaseBossAPI implements BossAPI {
         if ( userName == null )
             return badReqErr(getMessage("remoteUser"));
 
-        BossDAO dao = getDao();
-        List<ObjectRow> recs = dao.findObjectsByName(userName, objectName);
-        if ( recs == null || recs.size() == 0 )
-            return new ErrorDesc(Response.Status.NOT_FOUND,String.format(getMessage("noReadable"),objectName));
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            List<ObjectRow> recs = dao.findObjectsByName(userName, objectName);
+            if ( recs == null || recs.size() == 0 )
+                return new ErrorDesc(Response.Status.NOT_FOUND,String.format(getMessage("noReadable"),objectName));
+
+            rowsToDescs(dao,recs,descs);
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public ErrorDesc listObjects(ListRequest req, String userName, ListResponse resp) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        int limit = req.limit != null ? req.limit : DEFAULT_LIST_LIMIT;
+        if ( limit < 1 || limit > MAX_BATCH_SIZE )
+            return badReqErr(String.format(getMessage("listLimit"),MAX_BATCH_SIZE));
+
+        Cursor cursor = null;
+        if ( req.cursor != null && (cursor = Cursor.decode(req.cursor)) == null )
+            return badReqErr(getMessage("badCursor"));
+        Timestamp createdAfter = new Timestamp(req.createdAfter != null ? req.createdAfter : 0L);
+        Timestamp createdBefore = new Timestamp(req.createdBefore != null ? req.createdBefore : gEndOfTime);
 
-        for ( ObjectRow rec : recs ) {
-            ObjectDesc desc = new ObjectDesc();
-            rowToDesc(rec,desc,dao);
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            // one extra row tells us whether there's another page
+            List<ObjectRow> recs;
+            // start just after the cursor, or at the beginning
+            String afterId = cursor != null ? cursor.mObjectId : "";
+            if ( req.ownerId != null ) {
+                Timestamp afterDate = cursor != null ? cursor.mCreateDate : createdAfter;
+                recs = dao.findOwnedObjectsPage(userName, req.ownerId, afterDate, afterId, createdBefore, limit+1);
+            }
+            else {
+                recs = dao.findReadableObjectsPage(userName, afterId, createdAfter, createdBefore, limit+1);
+            }
+
+            resp.nextCursor = null;
+            if ( recs.size() > limit ) {
+                recs = recs.subList(0, limit);
+                ObjectRow last = recs.get(limit-1);
+                resp.nextCursor = new Cursor(last.createDate, last.objectId).encode();
+            }
+            resp.objects = new ArrayList<>(recs.size());
+            if ( !recs.isEmpty() )
+                rowsToDescs(dao,recs,resp.objects);
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public ErrorDesc searchObjects(String prefix, String contains, String cursor, Integer limit, String userName,
+                                   ListResponse resp) {
+        resp.objects = new ArrayList<>();
+        resp.nextCursor = null;
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        // a short prefix would walk most of the index
+        String search = prefix != null ? prefix : contains;
+        if ( (prefix == null) == (contains == null) || search.length() < MIN_SEARCH_LENGTH )
+            return badReqErr(String.format(getMessage("nameSearch"),MIN_SEARCH_LENGTH));
+        if ( prefix != null ? !mNameIndex.isEnabled() : !mNameIndex.hasSubstrings() )
+            return new ErrorDesc(Response.Status.SERVICE_UNAVAILABLE,
+                    String.format(getMessage("nameSearchOff"),prefix != null ? "prefix" : "substring"));
+        int maxResults = limit != null ? limit : DEFAULT_LIST_LIMIT;
+        if ( maxResults < 1 || maxResults > MAX_BATCH_SIZE )
+            return badReqErr(String.format(getMessage("listLimit"),MAX_BATCH_SIZE));
+        NameIndex.Match after = null;
+        if ( cursor != null && (after = SearchCursor.decode(cursor)) == null )
+            return badReqErr(getMessage("badCursor"));
+
+        Iterator<NameIndex.Match> candidates = prefix != null ?
+                mNameIndex.matchesWithPrefix(prefix,after) : mNameIndex.matchesContaining(contains,after);
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            // filter the index's matches a chunk at a time, until we have enough.  A user who can read
+            // few of them mustn't be able to make one request walk them all, so no more than
+            // MAX_SEARCH_CANDIDATES are looked at, and the cursor says where to pick up.
+            List<ObjectRow> recs = new ArrayList<>();
+            NameIndex.Match last = null;
+            boolean more = false;
+            int nExamined = 0;
+            while ( candidates.hasNext() && recs.size() < maxResults && nExamined < MAX_SEARCH_CANDIDATES ) {
+                List<NameIndex.Match> chunk = new ArrayList<>();
+                while ( candidates.hasNext() && chunk.size() < BossDAO.MAX_IN_LIST && nExamined < MAX_SEARCH_CANDIDATES ) {
+                    chunk.add(candidates.next());
+                    nExamined += 1;
+                }
+                List<String> chunkIds = new ArrayList<>(chunk.size());
+                for ( NameIndex.Match match : chunk )
+                    chunkIds.add(match.objectId);
+                Set<String> readable = new HashSet<>(dao.findReadableIds(userName,chunkIds));
+                Map<String,ObjectRow> rows = readable.isEmpty() ?
+                        Collections.<String,ObjectRow>emptyMap() : findObjectsByIds(dao,readable);
+                for ( NameIndex.Match match : chunk ) {
+                    if ( recs.size() == maxResults ) {
+                        more = true;
+                        break;
+                    }
+                    last = match;
+                    ObjectRow rec = rows.get(match.objectId);
+                    if ( rec != null && "Y".equals(rec.active) && readable.contains(match.objectId) )
+                        recs.add(rec);
+                }
+            }
+            if ( more || candidates.hasNext() )
+                resp.nextCursor = SearchCursor.encode(last);
+            if ( !recs.isEmpty() )
+                rowsToDescs(dao,recs,resp.objects);
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public ErrorDesc exportObjects(final String userName, NdjsonResponse resp) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        // each export holds two pooled connections for as long as it runs.  The slot is taken by the body,
+        // so a response that's never written (a HEAD, or a request that fails first) never holds one.
+        if ( mExportSlots.availablePermits() == 0 )
+            return new ErrorDesc(Response.Status.SERVICE_UNAVAILABLE,
+                    String.format(getMessage("exportsBusy"),MAX_CONCURRENT_EXPORTS));
+        resp.body = new NdjsonBody() {
+            @Override
+            public void writeTo(Writer out) throws IOException {
+                try {
+                    mExportSlots.acquire();
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for an export slot.");
+                }
+                try {
+                    mExporter.export(userName, out);
+                }
+                finally {
+                    mExportSlots.release();
+                }
+            }
+        };
+        return null;
+    }
+
+    @Override
+    public long exportAllObjects(Writer out) throws IOException {
+        return mExporter.export(null, out);
+    }
+
+    @Override
+    public ErrorDesc describeObjects(List<String> objectIds, String userName, List<BatchDescribeResponse> descs) {
+        descs.clear();
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        if ( objectIds == null || objectIds.isEmpty() || objectIds.size() > MAX_BATCH_SIZE )
+            return badReqErr(String.format(getMessage("batchSize"),MAX_BATCH_SIZE));
+
+        // one query for the rows, and one each for the readers and writers of the live ones
+        Map<String,ObjectRow> recs;
+        Map<String,List<String>> readers;
+        Map<String,List<String>> writers;
+        Map<String,Long> aclStamps = new HashMap<>();
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            Set<String> uniqueIds = new LinkedHashSet<>();
+            for ( String objectId : objectIds )
+                if ( objectId != null )
+                    uniqueIds.add(objectId);
+            recs = findObjectsByIds(dao,uniqueIds);
+            List<String> activeIds = new ArrayList<>(recs.size());
+            for ( ObjectRow rec : recs.values() )
+                if ( "Y".equals(rec.active) ) {
+                    activeIds.add(rec.objectId);
+                    aclStamps.put(rec.objectId,mAclCache.stamp(rec.objectId));
+                }
+            readers = findReadersByIds(dao,activeIds);
+            writers = findWritersByIds(dao,activeIds);
+        }
+        finally {
+            closeHandle(handle);
+        }
+
+        for ( String objectId : objectIds ) {
+            BatchDescribeResponse desc = new BatchDescribeResponse();
             descs.add(desc);
+            ObjectRow rec = objectId == null ? null : recs.get(objectId);
+            ErrorDesc err = null;
+            if ( rec == null )
+                err = notFoundErr(objectId);
+            else if ( !"Y".equals(rec.active) )
+                err = goneErr(objectId);
+            else {
+                List<String> recReaders = usersFor(readers,objectId);
+                List<String> recWriters = usersFor(writers,objectId);
+                mAclCache.put(objectId,recReaders,recWriters,aclStamps.get(objectId));
+                if ( !recReaders.contains(userName) )
+                    err = readPermsErr(objectId,userName);
+                else
+                    rowToDesc(rec,recReaders,recWriters,desc);
+            }
+            desc.objectId = objectId;
+            if ( err != null ) {
+                desc.status = err.mStatus.getStatusCode();
+                desc.message = err.mMessage;
+            }
+            else
+                desc.status = Response.Status.OK.getStatusCode();
         }
         return null;
     }
@@ -71,213 +336,846 @@ public class DatabaseBossAPI implements BossAPI {
         if ( errMsg != null )
             return badReqErr(errMsg);
 
-        rec.objectId = UUID.randomUUID().toString();
-
-        // Use the location passed in by the user if the Object is an opaqueURI object,
-        // otherwise generate a new (fresh) location.
-        String loc = rec.directoryPath;
-        if ( !rec.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) &&
-                !Boolean.TRUE.equals(rec.forceLocation) )
-            loc = createLocation(rec);
-
-        if ( rec.sizeEstimateBytes == null )
-            rec.sizeEstimateBytes = gDefaultEstSize;
+        String loc = prepareForInsert(rec);
+        if ( mGroupCommitter != null ) {
+            mGroupCommitter.insert(rec, loc, userName);
+            mAclCache.invalidate(rec.objectId);
+            mNameIndex.add(rec.objectId, rec.objectName);
+            return null;
+        }
 
         List<String> readers = uniqueUsers(rec.readers);
         List<String> writers = uniqueUsers(rec.writers);
 
         Timestamp now = new Timestamp(System.currentTimeMillis());
-        BossDAO dao = getDao();
-        dao.begin();
-        dao.insertObject(rec.objectId, rec.objectName, rec.ownerId, rec.sizeEstimateBytes,
-                loc, rec.storagePlatform, userName, now);
-        dao.insertReaders(rec.objectId, readers);
-        dao.insertWriters(rec.objectId, writers);
-        dao.commit();
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            dao.begin();
+            dao.insertObject(rec.objectId, rec.objectName, rec.ownerId, rec.sizeEstimateBytes,
+                    loc, rec.storagePlatform, userName, now);
+            dao.insertReaders(rec.objectId, readers);
+            dao.insertWriters(rec.objectId, writers);
+            dao.commit();
+            mAclCache.invalidate(rec.objectId);
+            mNameIndex.add(rec.objectId, rec.objectName);
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public ErrorDesc insertObjects(List<ObjectDesc> recs, String userName) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        if ( recs == null || recs.isEmpty() || recs.size() > MAX_BATCH_SIZE )
+            return badReqErr(String.format(getMessage("batchSize"),MAX_BATCH_SIZE));
+
+        // all or nothing:  report every bad descriptor before writing any of them
+        StringBuilder sb = new StringBuilder();
+        for ( int idx = 0; idx < recs.size(); ++idx ) {
+            ObjectDesc rec = recs.get(idx);
+            String errMsg = rec == null ? getMessage("noObject") : testCreationValidity(rec);
+            if ( errMsg != null )
+                add(sb,String.format(getMessage("batchItem"),idx,errMsg));
+        }
+        if ( sb.length() > 0 )
+            return badReqErr(sb.toString());
+
+        List<String> locations = new ArrayList<>(recs.size());
+        for ( ObjectDesc rec : recs )
+            locations.add(prepareForInsert(rec));
+        List<String> createdBys = Collections.nCopies(recs.size(),userName);
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            dao.begin();
+            insertRows(dao, recs, locations, createdBys, now);
+            dao.commit();
+            for ( ObjectDesc rec : recs )
+                mNameIndex.add(rec.objectId, rec.objectName);
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public ErrorDesc importObjects(final String userName, final BufferedReader in, NdjsonResponse resp) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        resp.body = new NdjsonBody() {
+            @Override
+            public void writeTo(Writer out) throws IOException {
+                importLines(userName, in, out);
+            }
+        };
         return null;
     }
 
+    private void importLines( String userName, BufferedReader in, Writer out ) throws IOException {
+        // results are written in line order as each batch commits
+        List<ImportResult> results = new ArrayList<>();
+        List<ObjectDesc> recs = new ArrayList<>();
+        List<ImportResult> recResults = new ArrayList<>();
+        int lineNo = 0;
+        String line;
+        while ( (line = in.readLine()) != null ) {
+            lineNo += 1;
+            if ( line.trim().isEmpty() )
+                continue;
+            ImportResult result = new ImportResult();
+            result.line = lineNo;
+            results.add(result);
+            ObjectDesc rec = null;
+            String errMsg;
+            try {
+                rec = mJsonReader.readValue(line);
+                errMsg = rec == null ? getMessage("noObject") : testCreationValidity(rec);
+            }
+            catch ( JsonProcessingException e ) {
+                errMsg = String.format(getMessage("importParse"),e.getOriginalMessage());
+            }
+            if ( errMsg != null ) {
+                result.status = Response.Status.BAD_REQUEST.getStatusCode();
+                result.message = errMsg;
+            }
+            else {
+                recs.add(rec);
+                recResults.add(result);
+            }
+            if ( results.size() == IMPORT_BATCH_SIZE ) {
+                importBatch(recs, recResults, userName);
+                writeResults(results, out);
+            }
+        }
+        importBatch(recs, recResults, userName);
+        writeResults(results, out);
+    }
+
+    /**
+     * Writes a batch of imports in one transaction.  If that fails, each is retried in a transaction
+     * of its own, so that only the bad ones fail.
+     */
+    private void importBatch( List<ObjectDesc> recs, List<ImportResult> results, String userName ) {
+        if ( recs.isEmpty() )
+            return;
+        List<String> locations = new ArrayList<>(recs.size());
+        for ( ObjectDesc rec : recs )
+            locations.add(prepareForInsert(rec));
+        try {
+            commitImports(recs, locations, userName);
+        }
+        catch ( RuntimeException e ) {
+            for ( int idx = 0; idx < recs.size(); ++idx ) {
+                ImportResult result = results.get(idx);
+                try {
+                    commitImports(recs.subList(idx, idx+1), locations.subList(idx, idx+1), userName);
+                }
+                catch ( RuntimeException e1 ) {
+                    result.status = Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+                    result.message = getMessage("unableImport")+e1.getMessage();
+                    recs.set(idx, null);
+                }
+            }
+        }
+        for ( int idx = 0; idx < recs.size(); ++idx ) {
+            ObjectDesc rec = recs.get(idx);
+            if ( rec == null )
+                continue;
+            ImportResult result = results.get(idx);
+            result.objectId = rec.objectId;
+            result.status = Response.Status.CREATED.getStatusCode();
+            mNameIndex.add(rec.objectId, rec.objectName);
+        }
+        recs.clear();
+        results.clear();
+    }
+
+    private void commitImports( List<ObjectDesc> recs, List<String> locations, String userName ) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            dao.begin();
+            insertRows(dao, recs, locations, Collections.nCopies(recs.size(),userName), now);
+            dao.commit();
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    private void writeResults( List<ImportResult> results, Writer out ) throws IOException {
+        for ( ImportResult result : results ) {
+            out.write(mJsonWriter.writeValueAsString(result));
+            out.write('\n');
+        }
+        out.flush();
+        results.clear();
+    }
+
     @Override
     public ErrorDesc updateObject(ObjectDesc desc, String objectId, String userName) {
         if ( userName == null )
             return badReqErr(getMessage("remoteUser"));
-        BossDAO dao = getDao();
-        ObjectRow rec = dao.findObjectById(objectId);
-        if ( rec == null )
-            return notFoundErr(objectId);
-        if ( !"Y".equals(rec.active) )
-            return goneErr(objectId);
-        if ( !dao.canWrite(objectId,userName) )
-            return writePermsErr(objectId,userName);
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            ObjectRow rec = findObjectById(dao,objectId);
+            if ( rec == null )
+                return notFoundErr(objectId);
+            if ( !"Y".equals(rec.active) )
+                return goneErr(objectId);
+            if ( !mAclCache.canWrite(dao,objectId,userName) )
+                return writePermsErr(objectId,userName);
 
-        String errMsg = testUpdateValidity(rec,desc);
-        if ( errMsg != null )
-            return badReqErr(errMsg);
+            String errMsg = testUpdateValidity(rec,desc);
+            if ( errMsg != null )
+                return badReqErr(errMsg);
+
+            if ( desc.ownerId != null )
+                rec.ownerId = desc.ownerId;
+
+            Timestamp now = new Timestamp(System.currentTimeMillis());
 
-        if ( desc.ownerId != null )
-            rec.ownerId = desc.ownerId;
+            dao.begin();
+            dao.updateObject(rec.objectId, rec.objectName, rec.ownerId, rec.sizeEstimateBytes, now);
+            if ( desc.readers != null )
+                mAclSync.setReaders(handle, rec.objectId, Arrays.asList(desc.readers));
+            if ( desc.writers != null )
+                mAclSync.setWriters(handle, rec.objectId, Arrays.asList(desc.writers));
+            dao.commit();
+            mObjectCache.invalidate(rec.objectId);
+            mAclCache.invalidate(rec.objectId);
 
-        List<String> readersToInsert = null;
-        List<String> readersToDelete = null;
-        if ( desc.readers != null ) {
-            List<String> newUsers = Arrays.asList(desc.readers);
-            List<String> curUsers = dao.findReadersById(desc.objectId);
-            readersToInsert = diff(newUsers,curUsers);
-            readersToDelete = diff(curUsers,newUsers);
+            return null;
         }
-        List<String> writersToInsert = null;
-        List<String> writersToDelete = null;
-        if ( desc.writers != null ) {
-            List<String> newUsers = Arrays.asList(desc.writers);
-            List<String> curUsers = dao.findWritersById(desc.objectId);
-            writersToInsert = diff(newUsers,curUsers);
-            writersToDelete = diff(curUsers,newUsers);
+        finally {
+            closeHandle(handle);
         }
+    }
 
-        Timestamp now = new Timestamp(System.currentTimeMillis());
+    @Override
+    public ErrorDesc changeAcls(AclChangeRequest req, String userName, AclChangeResponse resp) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        if ( req == null )
+            return badReqErr(getMessage("aclSelection"));
+        boolean byIds = req.objectIds != null;
+        if ( byIds == (req.ownerId != null || req.objectName != null) )
+            return badReqErr(getMessage("aclSelection"));
+        if ( byIds && (req.objectIds.length == 0 || req.objectIds.length > MAX_ACL_CHANGE_IDS) )
+            return badReqErr(String.format(getMessage("batchSize"),MAX_ACL_CHANGE_IDS));
+        if ( byIds && Arrays.asList(req.objectIds).contains(null) )
+            return badReqErr(getMessage("aclNullId"));
+        List<String> grantReaders = usersOrEmpty(req.grantReaders);
+        List<String> revokeReaders = usersOrEmpty(req.revokeReaders);
+        List<String> grantWriters = usersOrEmpty(req.grantWriters);
+        List<String> revokeWriters = usersOrEmpty(req.revokeWriters);
+        if ( grantReaders.isEmpty() && revokeReaders.isEmpty() && grantWriters.isEmpty() && revokeWriters.isEmpty() )
+            return badReqErr(getMessage("aclUsers"));
+
+        List<AclSync.Selection> selections = byIds ?
+                mAclSync.selectByIds(Arrays.asList(req.objectIds)) :
+                Collections.singletonList(mAclSync.selectByOwnerAndName(req.ownerId, req.objectName));
+        Handle handle = openHandle();
+        try {
+            handle.begin();
+            // one query per selection to check them all
+            int nSelected = 0;
+            int nUnwritable = 0;
+            for ( AclSync.Selection selection : selections ) {
+                int[] counts = mAclSync.countSelected(handle, selection, userName);
+                nSelected += counts[0];
+                nUnwritable += counts[1];
+            }
+            int nMissing = byIds ? new HashSet<>(Arrays.asList(req.objectIds)).size() - nSelected : 0;
+            if ( nMissing > 0 )
+                return new ErrorDesc(Response.Status.NOT_FOUND,
+                        String.format(getMessage("aclObjectsNotFound"),nMissing));
+            if ( nUnwritable > 0 )
+                return new ErrorDesc(Response.Status.FORBIDDEN,
+                        String.format(getMessage("aclNoWritePermission"),nUnwritable,userName));
 
-        dao.begin();
-        dao.updateObject(rec.objectId, rec.objectName, rec.ownerId, rec.sizeEstimateBytes, now);
-        if ( readersToInsert != null )
-            dao.insertReaders(rec.objectId, readersToInsert);
-        if ( readersToDelete != null )
-            dao.deleteReaders(rec.objectId, readersToDelete);
-        if ( writersToInsert != null )
-            dao.insertWriters(rec.objectId, writersToInsert);
-        if ( writersToDelete != null )
-            dao.deleteWriters(rec.objectId, writersToDelete);
-        dao.commit();
+            for ( AclSync.Selection selection : selections ) {
+                mAclSync.revokeReaders(handle, selection, revokeReaders);
+                mAclSync.grantReaders(handle, selection, grantReaders);
+                mAclSync.revokeWriters(handle, selection, revokeWriters);
+                mAclSync.grantWriters(handle, selection, grantWriters);
+            }
+            handle.commit();
 
-        return null;
+            if ( byIds ) {
+                for ( String objectId : req.objectIds )
+                    mAclCache.invalidate(objectId);
+            }
+            else {
+                mAclCache.invalidateAll();
+            }
+            resp.objectCount = nSelected;
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
     }
 
     /*
-        if this object resides in the object store, also delete from the object store.
-
-        BOSS rev3 spec says: If BOSS is unable to delete the underlying object from the object storage
-        (e.g. non-transient network failure, or other error from object store server), it will return an
-        appropriate 50x error, and the entry for this object will not be deleted from BOSS.
+        if this object resides in the object store, it also has to be deleted from the object store.
 
-        So, we delete from the db first, then the object store. If object store deletion fails,
-        we rollback the db deletion.
+        That's done asynchronously:  in one transaction we mark the row inactive and put the object's
+        store key into the deleteOutbox table, and DeleteOutboxWorker deletes it from the store later.
+        So a failure in the object store doesn't reach the caller.  The worker retries it with a backoff,
+        and getDeletionStatus reports how it's going.  Only a database failure returns a 50x, and then the
+        object isn't deleted at all.
     */
     @Override
     public ErrorDesc deleteObject(String objectId, String userName) {
         if ( userName == null )
             return badReqErr(getMessage("remoteUser"));
-        BossDAO dao = getDao();
-        ObjectRow rec = dao.findObjectById(objectId);
-        if ( rec == null || !"Y".equals(rec.active) )
-            return notFoundErr(objectId);
-        if ( !dao.canWrite(objectId,userName) )
-            return writePermsErr(objectId,userName);
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            ObjectRow rec = findObjectById(dao,objectId);
+            if ( rec == null || !"Y".equals(rec.active) )
+                return notFoundErr(objectId);
+            if ( !mAclCache.canWrite(dao,objectId,userName) )
+                return writePermsErr(objectId,userName);
 
-        ObjectStore store = getObjectStore(rec.storagePlatform);
-        Timestamp now = new Timestamp(System.currentTimeMillis());
-        dao.begin();
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            dao.begin();
+            try {
+                dao.deleteObject(rec.objectId, now);
+                // DeleteOutboxWorker removes it from the object store once we've committed
+                if ( getObjectStore(rec.storagePlatform) != null && rec.directoryPath != null )
+                    dao.insertDeleteOutbox(rec.objectId, rec.storagePlatform, rec.directoryPath, now);
+                dao.commit();
+            } catch (Exception e) {
+                dao.rollback();
+                return new ErrorDesc(Response.Status.INTERNAL_SERVER_ERROR,
+                        getMessage("unableDelete")+e.getMessage());
+            }
+            mObjectCache.invalidate(rec.objectId);
+            mAclCache.invalidate(rec.objectId);
+            mNameIndex.remove(rec.objectId, rec.objectName);
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public ErrorDesc getDeletionStatus(String objectId, String userName, DeletionStatus status) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            ObjectRow rec = findObjectById(dao,objectId);
+            if ( rec == null )
+                return notFoundErr(objectId);
+            if ( "Y".equals(rec.active) )
+                return new ErrorDesc(Response.Status.NOT_FOUND,String.format(getMessage("notDeleted"),objectId));
+            if ( !mAclCache.canRead(dao,objectId,userName) )
+                return readPermsErr(objectId,userName);
+
+            status.objectId = objectId;
+            DeleteOutboxRow row = dao.findDeleteOutboxById(objectId);
+            if ( row == null ) {
+                status.state = DeletionStatus.DONE;
+                return null;
+            }
+            status.attempts = row.attempts;
+            status.lastError = row.lastError;
+            if ( row.nextAttemptDate == null )
+                status.state = DeletionStatus.FAILED;
+            else {
+                status.state = row.attempts == 0 ? DeletionStatus.PENDING : DeletionStatus.RETRYING;
+                status.nextAttempt = row.nextAttemptDate.getTime();
+            }
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
 
-        // Try to remove object resource first so we don't end up with orphaned records.
+    @Override
+    public ErrorDesc resolveObject(String objectId, String userName, ResolveRequest req, ResolveResponse resp) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        Handle handle = openHandle();
         try {
-            dao.deleteObject(rec.objectId, now);
-        } catch (Exception e) {
-            dao.rollback();
-            return new ErrorDesc(Response.Status.INTERNAL_SERVER_ERROR,
-                    getMessage("unableDelete")+e.getMessage());
+            BossDAO dao = handle.attach(BossDAO.class);
+            ObjectRow rec = findObjectById(dao,objectId);
+            if ( rec == null )
+                return notFoundErr(objectId);
+            if ( !"Y".equals(rec.active) )
+                return goneErr(objectId);
+
+            if ( req.httpMethod.equals(HttpMethod.PUT) ) {
+                if ( !mAclCache.canWrite(dao,objectId,userName) )
+                    return writePermsErr(objectId,userName);
+            }
+            else if ( req.httpMethod.equals(HttpMethod.GET) ||
+                    req.httpMethod.equals(HttpMethod.HEAD) ) {
+                if ( !mAclCache.canRead(dao,objectId,userName) )
+                    return readPermsErr(objectId,userName);
+            }
+            else
+                return badReqErr(getMessage("httpMethod"));
+
+            ErrorDesc err = checkResolveRequest(rec,req);
+            if ( err != null )
+                return err;
+
+            long now = System.currentTimeMillis();
+            mResolveDateWriter.record(objectId, now);
+            fillResolveResponse(rec,req,now,resp);
+            return null;
         }
+        finally {
+            closeHandle(handle);
+        }
+    }
 
-        // Only commit the ObjectResource delete after checking for ObjectStore deletion.
+    @Override
+    public ErrorDesc resolveObjects(List<BatchResolveRequest> reqs, String userName, List<BatchResolveResponse> resps) {
+        resps.clear();
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        if ( reqs == null || reqs.isEmpty() || reqs.size() > MAX_BATCH_SIZE )
+            return badReqErr(String.format(getMessage("batchSize"),MAX_BATCH_SIZE));
+
+        Set<String> objectIds = new LinkedHashSet<>();
+        for ( BatchResolveRequest req : reqs )
+            if ( req.objectId != null )
+                objectIds.add(req.objectId);
+
+        // Rows and permissions for the whole batch come from a few set-based queries, and the
+        // connection goes back to the pool before any signing starts.
+        Map<String,ObjectRow> recs;
+        Set<String> readable = new HashSet<>();
+        Set<String> writable = new HashSet<>();
+        Handle handle = openHandle();
         try {
-            if ( store != null && rec.directoryPath != null )
-                store.deleteObject(rec.directoryPath);
-            dao.commit();
-        } catch (Exception e) {
-            dao.rollback();
-            return new ErrorDesc(Response.Status.INTERNAL_SERVER_ERROR,
-                   getMessage("unableDeleteFromObjectStore")+e.getMessage());
+            BossDAO dao = handle.attach(BossDAO.class);
+            recs = findObjectsByIds(dao,objectIds);
+            for ( List<String> chunk : Lists.partition(new ArrayList<>(recs.keySet()),BossDAO.MAX_IN_LIST) ) {
+                readable.addAll(dao.findReadableIds(userName,chunk));
+                writable.addAll(dao.findWritableIds(userName,chunk));
+            }
+        }
+        finally {
+            closeHandle(handle);
+        }
+
+        List<ObjectRow> signRecs = new ArrayList<>();
+        List<BatchResolveRequest> signReqs = new ArrayList<>();
+        List<BatchResolveResponse> signResps = new ArrayList<>();
+        for ( BatchResolveRequest req : reqs ) {
+            BatchResolveResponse resp = new BatchResolveResponse();
+            resp.objectId = req.objectId;
+            resps.add(resp);
+            ObjectRow rec = req.objectId == null ? null : recs.get(req.objectId);
+            ErrorDesc err = checkBatchResolve(rec,req,userName,readable,writable);
+            if ( err != null ) {
+                resp.status = err.mStatus.getStatusCode();
+                resp.message = err.mMessage;
+                continue;
+            }
+            signRecs.add(rec);
+            signReqs.add(req);
+            signResps.add(resp);
         }
 
+        long now = System.currentTimeMillis();
+        signAll(signRecs,signReqs,signResps,now);
+        for ( BatchResolveResponse resp : signResps )
+            if ( resp.status == Response.Status.OK.getStatusCode() )
+                mResolveDateWriter.record(resp.objectId, now);
         return null;
     }
 
     @Override
-    public ErrorDesc resolveObject(String objectId, String userName, ResolveRequest req, ResolveResponse resp) {
+    public ErrorDesc resolveObjectForCopying(String objectId, String userName, CopyRequest req, CopyResponse resp) {
+        if ( userName == null )
+            return badReqErr("REMOTE_USER header is required.");
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            ObjectRow rec = findObjectById(dao,objectId);
+            if ( rec == null )
+                return notFoundErr(objectId);
+            if ( !"Y".equals(rec.active) )
+                return goneErr(objectId);
+            if ( rec.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) )
+                return badReqErr("Can't copy opaqueURI objects.");
+            if ( !mAclCache.canWrite(dao,objectId,userName) )
+                return writePermsErr(objectId,userName);
+
+            long now = System.currentTimeMillis();
+            ObjectStore objStore = getObjectStore(rec.storagePlatform);
+            if ( objStore.copiesServerSide() ) {
+                if ( req.locationToCopy == null )
+                    return badReqErr(getMessage("copySource"));
+                ErrorDesc err = checkCopySource(dao,objStore,rec.storagePlatform,req.locationToCopy,userName);
+                if ( err != null )
+                    return err;
+                mResolveDateWriter.record(objectId, now);
+                // the handle isn't needed while we wait for the copy
+                closeHandle(handle);
+                handle = null;
+                mCopyJobRunner.start(objStore, objectId, rec.directoryPath, req.locationToCopy, resp);
+                return null;
+            }
+            mResolveDateWriter.record(objectId, now);
+            long timeout = now + 1000L*req.validityPeriodSeconds;
+            resp.uri = objStore.generateCopyURI(rec.directoryPath, req.locationToCopy, timeout);
+
+            return null;
+        }
+        finally {
+            if ( handle != null )
+                closeHandle(handle);
+        }
+    }
+
+    /**
+     * The store makes server-side copies with its own credentials, so the user has to be able to read
+     * the source.  A source in the store must be a BOSS object the user can read; anything else must be
+     * somewhere the store lets anyone copy from.
+     */
+    private ErrorDesc checkCopySource(BossDAO dao, ObjectStore objStore, String storagePlatform,
+                                      String locationToCopy, String userName) {
+        String srcKey;
+        try {
+            srcKey = objStore.getCopySourceKey(locationToCopy);
+        }
+        catch ( ObjectStoreException e ) {
+            return badReqErr(getMessage("copySource"));
+        }
+        if ( srcKey == null ) {
+            if ( !objStore.allowsCopyFrom(locationToCopy) )
+                return new ErrorDesc(Response.Status.FORBIDDEN,
+                        String.format(getMessage("copySourceNotAllowed"),locationToCopy));
+            return null;
+        }
+
+        // the keys BOSS makes start with the objectId, and only those can be copied
+        ObjectRow src = srcKey.length() < OBJECT_ID_LENGTH ? null :
+                findObjectById(dao,srcKey.substring(0,OBJECT_ID_LENGTH));
+        if ( src == null || !srcKey.equals(src.directoryPath) || !storagePlatform.equals(src.storagePlatform) )
+            return new ErrorDesc(Response.Status.NOT_FOUND,
+                    String.format(getMessage("copySourceNotObject"),locationToCopy));
+        if ( !"Y".equals(src.active) )
+            return goneErr(src.objectId);
+        if ( !mAclCache.canRead(dao,src.objectId,userName) )
+            return readPermsErr(src.objectId,userName);
+        return null;
+    }
+
+    @Override
+    public ErrorDesc getCopyJob(String objectId, String jobId, String userName, CopyResponse resp) {
         if ( userName == null )
             return badReqErr(getMessage("remoteUser"));
-        BossDAO dao = getDao();
-        ObjectRow rec = dao.findObjectById(objectId);
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            CopyJobRow job = dao.findCopyJobById(jobId);
+            if ( job == null || !job.objectId.equals(objectId) )
+                return new ErrorDesc(Response.Status.NOT_FOUND,String.format(getMessage("copyJobNotFound"),jobId));
+            if ( !mAclCache.canRead(dao,objectId,userName) )
+                return readPermsErr(objectId,userName);
+            resp.copyJobId = job.jobId;
+            resp.status = job.status;
+            resp.message = job.message;
+            return null;
+        }
+        finally {
+            closeHandle(handle);
+        }
+    }
+
+    @Override
+    public ErrorDesc resolveObjectForMultipartUpload(String objectId, String userName, MultipartRequest req,
+                                                     MultipartResponse resp) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        ObjectRow rec;
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            rec = findObjectById(dao,objectId);
+            ErrorDesc err = checkMultipartUpload(dao,rec,objectId,userName);
+            if ( err != null )
+                return err;
+        }
+        finally {
+            closeHandle(handle);
+        }
+
+        if ( req.validityPeriodSeconds == null )
+            return badReqErr(getMessage("validityPeriod"));
+        if ( req.partSizeBytes == null || req.partSizeBytes < MIN_PART_SIZE || req.partSizeBytes > MAX_PART_SIZE )
+            return badReqErr(String.format(getMessage("partSize"),MIN_PART_SIZE,MAX_PART_SIZE));
+        long size = req.sizeBytes != null ? req.sizeBytes : rec.sizeEstimateBytes;
+        long partCount = (size + req.partSizeBytes - 1)/req.partSizeBytes;
+        if ( size <= 0 || partCount > MAX_PARTS )
+            return badReqErr(String.format(getMessage("partCount"),MAX_PARTS));
+
+        long now = System.currentTimeMillis();
+        ObjectStore objStore = getObjectStore(rec.storagePlatform);
+        try {
+            resp.uploadId = req.uploadId != null ? req.uploadId : objStore.startMultipartUpload(rec.directoryPath, req.contentType);
+            resp.partUrls = objStore.generatePartURIs(rec.directoryPath, resp.uploadId, (int)partCount,
+                                                        now + 1000L*req.validityPeriodSeconds);
+        }
+        catch ( ObjectStoreException e ) {
+            return badReqErr(String.format(getMessage("multipartRejected"),e.getMessage()));
+        }
+        mResolveDateWriter.record(objectId, now);
+        resp.partSizeBytes = req.partSizeBytes;
+        resp.validityPeriodSeconds = req.validityPeriodSeconds;
+        return null;
+    }
+
+    @Override
+    public ErrorDesc completeMultipartUpload(String objectId, String uploadId, String userName,
+                                             MultipartCompleteRequest req) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        if ( req.etags == null || req.etags.isEmpty() || req.etags.size() > MAX_PARTS || req.etags.contains(null) )
+            return badReqErr(String.format(getMessage("etags"),MAX_PARTS));
+        ObjectRow rec;
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            rec = findObjectById(dao,objectId);
+            ErrorDesc err = checkMultipartUpload(dao,rec,objectId,userName);
+            if ( err != null )
+                return err;
+        }
+        finally {
+            closeHandle(handle);
+        }
+
+        try {
+            getObjectStore(rec.storagePlatform).completeMultipartUpload(rec.directoryPath, uploadId, req.etags);
+        }
+        catch ( ObjectStoreException e ) {
+            // most likely a part's missing, or its ETag is wrong, or the upload id is
+            return badReqErr(String.format(getMessage("multipartRejected"),e.getMessage()));
+        }
+        return null;
+    }
+
+    @Override
+    public ErrorDesc abortMultipartUpload(String objectId, String uploadId, String userName) {
+        if ( userName == null )
+            return badReqErr(getMessage("remoteUser"));
+        ObjectRow rec;
+        Handle handle = openHandle();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            rec = findObjectById(dao,objectId);
+            ErrorDesc err = checkMultipartUpload(dao,rec,objectId,userName);
+            if ( err != null )
+                return err;
+        }
+        finally {
+            closeHandle(handle);
+        }
+
+        try {
+            getObjectStore(rec.storagePlatform).abortMultipartUpload(rec.directoryPath, uploadId);
+        }
+        catch ( ObjectStoreException e ) {
+            return badReqErr(String.format(getMessage("multipartRejected"),e.getMessage()));
+        }
+        return null;
+    }
+
+    private ErrorDesc checkMultipartUpload( BossDAO dao, ObjectRow rec, String objectId, String userName ) {
         if ( rec == null )
             return notFoundErr(objectId);
         if ( !"Y".equals(rec.active) )
             return goneErr(objectId);
+        if ( rec.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) )
+            return badReqErr(getMessage("multipartOpaque"));
+        if ( !mAclCache.canWrite(dao,objectId,userName) )
+            return writePermsErr(objectId,userName);
+        return null;
+    }
 
-        if ( req.httpMethod.equals(HttpMethod.PUT) ) {
-            if ( !dao.canWrite(objectId,userName) )
-                return writePermsErr(objectId,userName);
+    private ErrorDesc checkBatchResolve( ObjectRow rec, BatchResolveRequest req, String userName,
+                                         Set<String> readable, Set<String> writable ) {
+        if ( rec == null )
+            return notFoundErr(req.objectId);
+        if ( !"Y".equals(rec.active) )
+            return goneErr(req.objectId);
+        if ( HttpMethod.PUT.equals(req.httpMethod) ) {
+            if ( !writable.contains(req.objectId) )
+                return writePermsErr(req.objectId,userName);
         }
-        else if ( req.httpMethod.equals(HttpMethod.GET) ||
-                req.httpMethod.equals(HttpMethod.HEAD) ) {
-            if ( !dao.canRead(objectId,userName) )
-                return readPermsErr(objectId,userName);
+        else if ( HttpMethod.GET.equals(req.httpMethod) || HttpMethod.HEAD.equals(req.httpMethod) ) {
+            if ( !readable.contains(req.objectId) )
+                return readPermsErr(req.objectId,userName);
         }
         else
             return badReqErr(getMessage("httpMethod"));
+        return checkResolveRequest(rec,req);
+    }
 
-        String contentMD5x64 = null;
+    // Checks what's left of a resolve request once the object and the user's permissions are OK.
+    private ErrorDesc checkResolveRequest( ObjectRow rec, ResolveRequest req ) {
         if ( req.contentMD5Hex != null ) {
             if ( req.contentMD5Hex.length() != 32 )
                 return badReqErr(getMessage("md5"));
             try {
-                contentMD5x64 = DatatypeConverter.printBase64Binary(DatatypeConverter.parseHexBinary(req.contentMD5Hex));
+                DatatypeConverter.parseHexBinary(req.contentMD5Hex);
             }
             catch ( IllegalArgumentException e ) {
                 return badReqErr(getMessage("contentMD5"));
             }
         }
+        if ( req.validityPeriodSeconds == null && !rec.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) )
+            return badReqErr(getMessage("validityPeriod"));
+        return null;
+    }
 
-        Timestamp now = new Timestamp(System.currentTimeMillis());
-        dao.updateResolveDate(objectId, now);
-
+    private void fillResolveResponse( ObjectRow rec, ResolveRequest req, long now, ResolveResponse resp ) {
         resp.validityPeriodSeconds = req.validityPeriodSeconds;
         resp.contentType = req.contentType;
         resp.contentMD5Hex = req.contentMD5Hex;
         if ( rec.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) )
             resp.objectUrl = URI.create(rec.directoryPath);
         else {
-            long timeout = now.getTime() + 1000L*req.validityPeriodSeconds;
+            String contentMD5x64 = null;
+            if ( req.contentMD5Hex != null )
+                contentMD5x64 = DatatypeConverter.printBase64Binary(DatatypeConverter.parseHexBinary(req.contentMD5Hex));
+            long timeout = now + 1000L*req.validityPeriodSeconds;
             ObjectStore objStore = getObjectStore(rec.storagePlatform);
             resp.objectUrl = objStore.generateResolveURI(rec.directoryPath, req.httpMethod,
                                                             timeout, req.contentType, contentMD5x64);
         }
-        return null;
     }
 
-    @Override
-    public ErrorDesc resolveObjectForCopying(String objectId, String userName, CopyRequest req, CopyResponse resp) {
-        if ( userName == null )
-            return badReqErr("REMOTE_USER header is required.");
-        BossDAO dao = getDao();
-        ObjectRow rec = dao.findObjectById(objectId);
-        if ( rec == null )
-            return notFoundErr(objectId);
-        if ( !"Y".equals(rec.active) )
-            return goneErr(objectId);
-        if ( rec.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) )
-            return badReqErr("Can't copy opaqueURI objects.");
-        if ( !dao.canWrite(objectId,userName) )
-            return writePermsErr(objectId,userName);
+    /**
+     * Signs the URLs for a batch resolve.  Signing is CPU-bound, so a big batch is split among the
+     * signing threads, and the calling thread signs a share too.
+     */
+    private void signAll( final List<ObjectRow> recs, final List<? extends ResolveRequest> reqs,
+                          final List<BatchResolveResponse> resps, final long now ) {
+        int nItems = recs.size();
+        if ( nItems == 0 )
+            return;
+        int nChunks = Math.min(mSigningThreads + 1, (nItems + MIN_SIGNING_CHUNK - 1)/MIN_SIGNING_CHUNK);
+        int chunkSize = (nItems + nChunks - 1)/nChunks;
+        List<Future<?>> futures = new ArrayList<>();
+        for ( int start = chunkSize; start < nItems; start += chunkSize ) {
+            final int from = start;
+            final int to = Math.min(nItems, start + chunkSize);
+            futures.add(mSigningExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    signRange(recs,reqs,resps,now,from,to);
+                }
+            }));
+        }
+        signRange(recs,reqs,resps,now,0,Math.min(nItems,chunkSize));
+        try {
+            for ( Future<?> future : futures )
+                future.get();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while signing.", e);
+        }
+        catch ( ExecutionException e ) {
+            throw new IllegalStateException("Unexpected signing failure.", e.getCause());
+        }
+    }
 
-        Timestamp now = new Timestamp(System.currentTimeMillis());
-        dao.updateResolveDate(objectId, now);
+    private void signRange( List<ObjectRow> recs, List<? extends ResolveRequest> reqs,
+                            List<BatchResolveResponse> resps, long now, int from, int to ) {
+        for ( int idx = from; idx < to; ++idx ) {
+            BatchResolveResponse resp = resps.get(idx);
+            try {
+                fillResolveResponse(recs.get(idx),reqs.get(idx),now,resp);
+                resp.status = Response.Status.OK.getStatusCode();
+            }
+            catch ( RuntimeException e ) {
+                resp.objectUrl = null;
+                resp.status = Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+                resp.message = e.getMessage();
+            }
+        }
+    }
 
-        ObjectStore objStore = getObjectStore(rec.storagePlatform);
-        long timeout = now.getTime() + 1000L*req.validityPeriodSeconds;
-        resp.uri = objStore.generateCopyURI(rec.directoryPath, req.locationToCopy, timeout);
+    /**
+     * Each API call runs all of its statements on one handle, and so on one pooled connection.
+     * Reads run in auto-commit mode without ever starting a transaction; writes begin and commit
+     * on the same handle.
+     */
+    private Handle openHandle() {
+        return mDBI.open();
+    }
 
-        return null;
+    /**
+     * Looks in the object cache first, and caches what it reads on a miss.
+     */
+    private ObjectRow findObjectById( BossDAO dao, String objectId ) {
+        ObjectRow rec = mObjectCache.get(objectId);
+        if ( rec == null ) {
+            long stamp = mObjectCache.stamp(objectId);
+            rec = dao.findObjectById(objectId);
+            mObjectCache.put(rec,stamp);
+        }
+        return rec;
+    }
+
+    /**
+     * Like findObjectById, for many objects at once.  Cache misses are read in IN-list queries.
+     */
+    private Map<String,ObjectRow> findObjectsByIds( BossDAO dao, Collection<String> objectIds ) {
+        Map<String,ObjectRow> recs = new HashMap<>();
+        Map<String,Long> stamps = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for ( String objectId : objectIds ) {
+            ObjectRow rec = mObjectCache.get(objectId);
+            if ( rec != null )
+                recs.put(objectId,rec);
+            else {
+                stamps.put(objectId,mObjectCache.stamp(objectId));
+                misses.add(objectId);
+            }
+        }
+        for ( List<String> chunk : Lists.partition(misses,BossDAO.MAX_IN_LIST) ) {
+            for ( ObjectRow rec : dao.findObjectsByIds(chunk) ) {
+                recs.put(rec.objectId,rec);
+                mObjectCache.put(rec,stamps.get(rec.objectId));
+            }
+        }
+        return recs;
     }
 
-    private BossDAO getDao() {
-        return mDBI.onDemand(BossDAO.class);
+    private static void closeHandle( Handle handle ) {
+        try {
+            // don't hand a connection back to the pool in the middle of a transaction
+            if ( handle.isInTransaction() )
+                handle.rollback();
+        }
+        finally {
+            handle.close();
+        }
     }
 
     private ObjectStore getObjectStore( String storagePlatform ) {
@@ -285,6 +1183,8 @@ public class DatabaseBossAPI implements BossAPI {
             return mCloudStore;
         if ( storagePlatform.equals(StoragePlatform.LOCALSTORE.getValue()) )
             return mLocalStore;
+        if ( storagePlatform.equals(StoragePlatform.FILESTORE.getValue()) )
+            return mFileStore;
 
         return null;
     }
@@ -297,7 +1197,10 @@ public class DatabaseBossAPI implements BossAPI {
         if ( desc.storagePlatform == null ) add(sb,getMessage("storagePlatformValidation"));
         else {
             if ( desc.storagePlatform.equals(StoragePlatform.CLOUDSTORE.getValue()) ||
-                    desc.storagePlatform.equals(StoragePlatform.LOCALSTORE.getValue()) ) {
+                    desc.storagePlatform.equals(StoragePlatform.LOCALSTORE.getValue()) ||
+                    desc.storagePlatform.equals(StoragePlatform.FILESTORE.getValue()) ) {
+                if ( getObjectStore(desc.storagePlatform) == null )
+                    add(sb,String.format(getMessage("storeNotConfigured"),desc.storagePlatform));
                 if ( desc.directoryPath != null && !Boolean.TRUE.equals(desc.forceLocation) )
                     add(sb,String.format(getMessage("directoryPathNotSupplied"),desc.storagePlatform));
             }
@@ -310,6 +1213,7 @@ public class DatabaseBossAPI implements BossAPI {
                 add(sb, String.format(getMessage("storagePlatformOptions"),
                         StoragePlatform.CLOUDSTORE.getValue(),
                         StoragePlatform.LOCALSTORE.getValue(),
+                        StoragePlatform.FILESTORE.getValue(),
                         StoragePlatform.OPAQUEURI.getValue()));
             }
         }
@@ -336,12 +1240,71 @@ public class DatabaseBossAPI implements BossAPI {
         sb.append(message);
     }
 
-    private static void rowToDesc( ObjectRow row, ObjectDesc desc, BossDAO dao ) {
+    /**
+     * Describes each row, with its readers and writers, which are cached along the way unless an
+     * update invalidates them while they're being read.
+     */
+    private void rowsToDescs( BossDAO dao, List<ObjectRow> recs, List<ObjectDesc> descs ) {
+        List<String> objectIds = new ArrayList<>(recs.size());
+        long[] aclStamps = new long[recs.size()];
+        for ( ObjectRow rec : recs ) {
+            aclStamps[objectIds.size()] = mAclCache.stamp(rec.objectId);
+            objectIds.add(rec.objectId);
+        }
+        Map<String,List<String>> readers = findReadersByIds(dao,objectIds);
+        Map<String,List<String>> writers = findWritersByIds(dao,objectIds);
+
+        for ( int idx = 0; idx < recs.size(); ++idx ) {
+            ObjectRow rec = recs.get(idx);
+            ObjectDesc desc = new ObjectDesc();
+            List<String> recReaders = usersFor(readers,rec.objectId);
+            List<String> recWriters = usersFor(writers,rec.objectId);
+            mAclCache.put(rec.objectId,recReaders,recWriters,aclStamps[idx]);
+            rowToDesc(rec,recReaders,recWriters,desc);
+            descs.add(desc);
+        }
+    }
+
+    private static void rowToDesc( ObjectRow row, List<String> readers, List<String> writers, ObjectDesc desc ) {
         desc.copy(row);
         if ( !desc.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) )
             desc.directoryPath = null;
-        desc.readers = dao.findReadersById(row.objectId).toArray(ArrayUtils.EMPTY_STRING_ARRAY);
-        desc.writers = dao.findWritersById(row.objectId).toArray(ArrayUtils.EMPTY_STRING_ARRAY);
+        desc.readers = readers.toArray(ArrayUtils.EMPTY_STRING_ARRAY);
+        desc.writers = writers.toArray(ArrayUtils.EMPTY_STRING_ARRAY);
+    }
+
+    private static Map<String,List<String>> findReadersByIds( BossDAO dao, List<String> objectIds ) {
+        Map<String,List<String>> usersById = new HashMap<>();
+        for ( List<String> chunk : Lists.partition(objectIds,BossDAO.MAX_IN_LIST) )
+            groupByObject(dao.findReadersByIds(chunk),usersById);
+        return usersById;
+    }
+
+    private static Map<String,List<String>> findWritersByIds( BossDAO dao, List<String> objectIds ) {
+        Map<String,List<String>> usersById = new HashMap<>();
+        for ( List<String> chunk : Lists.partition(objectIds,BossDAO.MAX_IN_LIST) )
+            groupByObject(dao.findWritersByIds(chunk),usersById);
+        return usersById;
+    }
+
+    private static void groupByObject( List<AclEntry> entries, Map<String,List<String>> usersById ) {
+        for ( AclEntry entry : entries ) {
+            List<String> users = usersById.get(entry.objectId);
+            if ( users == null ) {
+                users = new ArrayList<>();
+                usersById.put(entry.objectId,users);
+            }
+            users.add(entry.username);
+        }
+    }
+
+    private static List<String> usersFor( Map<String,List<String>> usersById, String objectId ) {
+        List<String> users = usersById.get(objectId);
+        return users != null ? users : Collections.<String>emptyList();
+    }
+
+    private static List<String> usersOrEmpty( String[] users ) {
+        return users != null ? Arrays.asList(users) : Collections.<String>emptyList();
     }
 
     private static List<String> uniqueUsers( String[] users ) {
@@ -349,10 +1312,58 @@ public class DatabaseBossAPI implements BossAPI {
         return new ArrayList<String>(userSet);
     }
 
-    private static List<String> diff( List<String> minuend, List<String> subtrahend ) {
-        Set<String> strSet = new TreeSet<>(minuend);
-        strSet.removeAll(subtrahend);
-        return strSet.size() > 0 ? new ArrayList<>(strSet) : null;
+    /**
+     * Writes new objects and their ACLs with one JDBC batch per table.  The lists are parallel, and
+     * the caller owns the transaction.
+     */
+    static void insertRows( BossDAO dao, List<ObjectDesc> recs, List<String> locations,
+                            List<String> createdBys, Timestamp now ) {
+        int nRecs = recs.size();
+        List<String> objectIds = new ArrayList<>(nRecs);
+        List<String> objectNames = new ArrayList<>(nRecs);
+        List<String> ownerIds = new ArrayList<>(nRecs);
+        List<Long> sizeEstimates = new ArrayList<>(nRecs);
+        List<String> storagePlatforms = new ArrayList<>(nRecs);
+        List<String> readerIds = new ArrayList<>();
+        List<String> readers = new ArrayList<>();
+        List<String> writerIds = new ArrayList<>();
+        List<String> writers = new ArrayList<>();
+        for ( ObjectDesc rec : recs ) {
+            objectIds.add(rec.objectId);
+            objectNames.add(rec.objectName);
+            ownerIds.add(rec.ownerId);
+            sizeEstimates.add(rec.sizeEstimateBytes);
+            storagePlatforms.add(rec.storagePlatform);
+            for ( String reader : uniqueUsers(rec.readers) ) {
+                readerIds.add(rec.objectId);
+                readers.add(reader);
+            }
+            for ( String writer : uniqueUsers(rec.writers) ) {
+                writerIds.add(rec.objectId);
+                writers.add(writer);
+            }
+        }
+        dao.insertObjects(objectIds, objectNames, ownerIds, sizeEstimates, locations, storagePlatforms,
+                createdBys, now);
+        if ( !readers.isEmpty() )
+            dao.insertReaderRows(readerIds, readers);
+        if ( !writers.isEmpty() )
+            dao.insertWriterRows(writerIds, writers);
+    }
+
+    /**
+     * Assigns a new objectId and fills in a default size estimate.  Returns the location to store,
+     * which is the one passed in by the user for an opaqueURI object (or when forced), and a new
+     * (fresh) one otherwise.
+     */
+    private static String prepareForInsert(ObjectDesc rec) {
+        rec.objectId = UUID.randomUUID().toString();
+        if ( rec.sizeEstimateBytes == null )
+            rec.sizeEstimateBytes = gDefaultEstSize;
+        if ( rec.storagePlatform.equals(StoragePlatform.OPAQUEURI.getValue()) ||
+                Boolean.TRUE.equals(rec.forceLocation) )
+            return rec.directoryPath;
+        return createLocation(rec);
     }
 
     private static String createLocation(ObjectDesc desc) {
@@ -396,6 +1407,34 @@ public class DatabaseBossAPI implements BossAPI {
     DBI mDBI;
     private ObjectStore mLocalStore;
     private ObjectStore mCloudStore;
+    private ObjectStore mFileStore;
     private Map<String,String> mMessages;
+    private ResolveDateWriter mResolveDateWriter;
+    private AclCache mAclCache;
+    private ObjectRowCache mObjectCache;
+    private ExecutorService mSigningExecutor;
+    private int mSigningThreads;
+    private GroupCommitter mGroupCommitter; // null unless group commit is configured
+    private AclSync mAclSync;
+    private NameIndex mNameIndex;
+    private CopyJobRunner mCopyJobRunner;
+    private ObjectExporter mExporter;
+    private ObjectReader mJsonReader;
+    private ObjectWriter mJsonWriter;
+    private final Semaphore mExportSlots = new Semaphore(MAX_CONCURRENT_EXPORTS);
+    public static final int MAX_BATCH_SIZE = 1000;
+    public static final int MAX_ACL_CHANGE_IDS = 10000;
+    public static final int DEFAULT_LIST_LIMIT = 100;
+    public static final int MIN_SEARCH_LENGTH = 3;
+    public static final int MAX_SEARCH_CANDIDATES = 2*BossDAO.MAX_IN_LIST;
+    public static final int IMPORT_BATCH_SIZE = BossDAO.MAX_IN_LIST;
+    public static final int MAX_CONCURRENT_EXPORTS = 4;
+    private static final int OBJECT_ID_LENGTH = 36;
+    // the limits S3 and GCS both put on multipart uploads
+    public static final long MIN_PART_SIZE = 5L*1024L*1024L;
+    public static final long MAX_PART_SIZE = 5L*1024L*1024L*1024L;
+    public static final int MAX_PARTS = 10000;
+    private static final long gEndOfTime = 253402300799999L; // the end of 9999
+    private static final int MIN_SIGNING_CHUNK = 16;
     static private Long gDefaultEstSize = new Long(-1);
 }
@@ -0,0 +1,34 @@
+package org.genomebridge.boss.http.service;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration for the background removal of deleted objects from their object stores.  This is
+ * configured using a deleteOutbox clause in the YAML configuration file.
+ */
+public class DeleteOutboxConfiguration {
+
+    // How often the outbox is checked for keys that are due for deletion.
+    @Min(1)
+    public long pollIntervalMillis = 1000L;
+
+    // The most keys claimed, and handed to the object stores, at one time.
+    @Min(1)
+    public int batchSize = 1000;
+
+    // How long a claim on a batch lasts.  If this server dies while deleting, another server
+    // will try those keys again once the lease runs out.
+    @Min(1)
+    public long leaseMillis = 300000L;
+
+    // The wait after the first failure.  It doubles after each further failure, up to maxBackoffMillis.
+    @Min(1)
+    public long initialBackoffMillis = 5000L;
+
+    @Min(1)
+    public long maxBackoffMillis = 3600000L;
+
+    // After this many failures a key is left in the outbox, marked failed, for someone to look into.
+    @Min(1)
+    public int maxAttempts = 20;
+}
@@ -0,0 +1,209 @@
+package org.genomebridge.boss.http.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.db.DeleteOutboxRow;
+import org.genomebridge.boss.http.objectstore.ObjectStore;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Removes deleted objects from their object stores.
+ *
+ * Deleting an object only marks its row inactive and puts its store key into the deleteOutbox table,
+ * in the same transaction.  Every pollIntervalMillis a background thread claims the keys that are due,
+ * hands them to each store's multi-object delete, and takes the ones that worked out of the outbox.
+ * Failures are tried again after a backoff that doubles each time, until maxAttempts is reached.
+ *
+ * Claims are leases on the outbox rows, so several servers can drain the same outbox.  Deleting a key
+ * twice does no harm, so an expired lease just means some keys may be deleted again.
+ */
+public class DeleteOutboxWorker implements Managed {
+
+    public DeleteOutboxWorker( DBI dbi, Map<String,ObjectStore> stores, DeleteOutboxConfiguration config ) {
+        mDBI = dbi;
+        mStores = stores;
+        mConfig = config;
+    }
+
+    /**
+     * Claims one batch of due keys and deletes them.  Returns the number claimed.
+     */
+    public synchronized int drain() {
+        long now = System.currentTimeMillis();
+        List<DeleteOutboxRow> rows = claim(now);
+        if ( rows.isEmpty() )
+            return 0;
+
+        Map<String,List<DeleteOutboxRow>> byPlatform = new LinkedHashMap<>();
+        for ( DeleteOutboxRow row : rows ) {
+            List<DeleteOutboxRow> platformRows = byPlatform.get(row.storagePlatform);
+            if ( platformRows == null ) {
+                platformRows = new ArrayList<>();
+                byPlatform.put(row.storagePlatform, platformRows);
+            }
+            platformRows.add(row);
+        }
+
+        List<String> doneIds = new ArrayList<>();
+        List<String> failedIds = new ArrayList<>();
+        List<Timestamp> nextAttemptDates = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        for ( Map.Entry<String,List<DeleteOutboxRow>> entry : byPlatform.entrySet() ) {
+            Map<String,String> failures = deleteKeys(entry.getKey(), entry.getValue());
+            for ( DeleteOutboxRow row : entry.getValue() ) {
+                String error = failures.get(row.location);
+                if ( error == null )
+                    doneIds.add(row.objectId);
+                else {
+                    failedIds.add(row.objectId);
+                    nextAttemptDates.add(nextAttemptDate(now, row.attempts));
+                    errors.add(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+                }
+            }
+        }
+        if ( !failedIds.isEmpty() )
+            gLogger.warn("Unable to delete {} of {} objects from their object stores.  The first failure was: {}",
+                            failedIds.size(), rows.size(), errors.get(0));
+
+        record(doneIds, failedIds, nextAttemptDates, errors);
+        return rows.size();
+    }
+
+    @Override
+    public void start() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "delete-outbox-worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // keep going while there's a backlog
+                    int claimed;
+                    do {
+                        claimed = drain();
+                    } while ( claimed == mConfig.batchSize && !mExecutor.isShutdown() );
+                }
+                catch ( Exception e ) {
+                    gLogger.warn("Unable to drain the delete outbox.", e);
+                }
+            }
+        }, mConfig.pollIntervalMillis, mConfig.pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Anything left in the outbox stays there for the next server to start.
+     */
+    @Override
+    public void stop() throws InterruptedException {
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(mConfig.pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private List<DeleteOutboxRow> claim( long now ) {
+        Handle handle = mDBI.open();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            List<DeleteOutboxRow> due = dao.findDueDeletes(new Timestamp(now), mConfig.batchSize);
+            if ( due.isEmpty() )
+                return due;
+            List<String> objectIds = new ArrayList<>(due.size());
+            List<Timestamp> seenDates = new ArrayList<>(due.size());
+            for ( DeleteOutboxRow row : due ) {
+                objectIds.add(row.objectId);
+                seenDates.add(row.nextAttemptDate);
+            }
+            int[] counts = dao.leaseDeletes(objectIds, seenDates, new Timestamp(now+mConfig.leaseMillis));
+            List<DeleteOutboxRow> claimed = new ArrayList<>(due.size());
+            for ( int idx = 0; idx < counts.length; ++idx )
+                // some drivers report SUCCESS_NO_INFO for batched updates: treat those as ours
+                if ( counts[idx] != 0 )
+                    claimed.add(due.get(idx));
+            return claimed;
+        }
+        finally {
+            handle.close();
+        }
+    }
+
+    // Returns an error message for each location that couldn't be deleted.
+    private Map<String,String> deleteKeys( String storagePlatform, List<DeleteOutboxRow> rows ) {
+        Set<String> keys = new LinkedHashSet<>();
+        for ( DeleteOutboxRow row : rows )
+            keys.add(row.location);
+        ObjectStore store = mStores.get(storagePlatform);
+        Map<String,String> failures = null;
+        String error = "No object store is configured for "+storagePlatform;
+        if ( store != null ) {
+            try {
+                failures = store.deleteObjects(new ArrayList<>(keys));
+            }
+            catch ( RuntimeException e ) {
+                error = String.valueOf(e.getMessage());
+            }
+        }
+        if ( failures == null ) {
+            failures = new LinkedHashMap<>();
+            for ( String key : keys )
+                failures.put(key, error);
+        }
+        return failures;
+    }
+
+    // Null once the attempt that just failed was the last one allowed.
+    private Timestamp nextAttemptDate( long now, int previousAttempts ) {
+        if ( previousAttempts + 1 >= mConfig.maxAttempts )
+            return null;
+        long backoff = mConfig.initialBackoffMillis;
+        for ( int idx = 0; idx < previousAttempts && backoff < mConfig.maxBackoffMillis; ++idx )
+            backoff *= 2;
+        return new Timestamp(now + Math.min(backoff, mConfig.maxBackoffMillis));
+    }
+
+    private void record( List<String> doneIds,
+                         List<String> failedIds, List<Timestamp> nextAttemptDates, List<String> errors ) {
+        Handle handle = mDBI.open();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            dao.begin();
+            if ( !doneIds.isEmpty() )
+                dao.removeDeletes(doneIds);
+            if ( !failedIds.isEmpty() )
+                dao.failDeletes(failedIds, nextAttemptDates, errors);
+            dao.commit();
+        }
+        finally {
+            if ( handle.isInTransaction() )
+                handle.rollback();
+            handle.close();
+        }
+    }
+
+    private DBI mDBI;
+    private Map<String,ObjectStore> mStores;
+    private DeleteOutboxConfiguration mConfig;
+    private ScheduledExecutorService mExecutor;
+    private static final int MAX_ERROR_LENGTH = 1024;
+    private static final Logger gLogger = LoggerFactory.getLogger(DeleteOutboxWorker.class);
+}
@@ -0,0 +1,19 @@
+package org.genomebridge.boss.http.service;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration for group commit of concurrent object creations.  This is configured
+ * using a groupCommit clause in the YAML configuration file.
+ */
+public class GroupCommitConfiguration {
+
+    // How long the first create in a group waits for others to join it.  Zero turns group commit
+    // off, and each create runs its own transaction.
+    @Min(0)
+    public long maxDelayMillis = 0L;
+
+    // The most creates written in one transaction.  A full group is written without waiting.
+    @Min(1)
+    public int maxGroupSize = 256;
+}
@@ -0,0 +1,197 @@
+package org.genomebridge.boss.http.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.service.BossAPI.ObjectDesc;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Group commit for object creations.
+ *
+ * Each create is queued, and a background thread gathers whatever arrives within maxDelayMillis of
+ * the first one (up to maxGroupSize) and writes the group in one transaction with JDBC batches, so
+ * concurrent creates share a single commit.  Callers block until their group commits.  If the
+ * group's transaction fails, its creates are retried one per transaction, so that only the caller
+ * whose row is bad sees an error.
+ */
+public class GroupCommitter implements Managed {
+
+    public GroupCommitter( DBI dbi, GroupCommitConfiguration config ) {
+        mDBI = dbi;
+        mMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.maxDelayMillis);
+        mMaxGroupSize = config.maxGroupSize;
+    }
+
+    /**
+     * Writes a new object and its ACLs, returning after the commit.  Database errors are thrown
+     * just as they would be from a transaction of its own.
+     */
+    public void insert( ObjectDesc rec, String location, String userName ) {
+        PendingInsert insert = new PendingInsert(rec, location, userName);
+        boolean queued;
+        synchronized ( this ) {
+            queued = mThread != null;
+            if ( queued )
+                mQueue.add(insert);
+        }
+        if ( !queued )
+            commitGroup(Collections.singletonList(insert));
+        try {
+            Uninterruptibles.getUninterruptibly(insert.mDone);
+        }
+        catch ( ExecutionException e ) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runGroups();
+            }
+        }, "group-committer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        Thread thread;
+        synchronized ( this ) {
+            thread = mThread;
+            mThread = null;
+            if ( thread == null )
+                return;
+            // nothing is queued after this, so the thread exits once it has written what's ahead of it
+            mQueue.add(gStop);
+        }
+        thread.join();
+    }
+
+    private void runGroups() {
+        List<PendingInsert> group = new ArrayList<>(mMaxGroupSize);
+        boolean stopping = false;
+        while ( !stopping ) {
+            PendingInsert next = Uninterruptibles.takeUninterruptibly(mQueue);
+            long deadline = System.nanoTime() + mMaxDelayNanos;
+            while ( next != null ) {
+                if ( next == gStop ) {
+                    stopping = true;
+                    break;
+                }
+                group.add(next);
+                if ( group.size() == mMaxGroupSize )
+                    break;
+                next = poll(deadline - System.nanoTime());
+            }
+            commitGroup(group);
+            group.clear();
+        }
+    }
+
+    private PendingInsert poll( long timeoutNanos ) {
+        try {
+            return mQueue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        catch ( InterruptedException e ) {
+            // nothing interrupts this thread on purpose; write what we have
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void commitGroup( List<PendingInsert> group ) {
+        if ( group.isEmpty() )
+            return;
+        try {
+            try {
+                write(group);
+                for ( PendingInsert insert : group )
+                    insert.mDone.set(null);
+            }
+            catch ( RuntimeException e ) {
+                if ( group.size() == 1 )
+                    throw e;
+                gLogger.info("Group commit of {} creates failed, retrying them one at a time.", group.size());
+                for ( PendingInsert insert : group ) {
+                    try {
+                        write(Collections.singletonList(insert));
+                        insert.mDone.set(null);
+                    }
+                    catch ( RuntimeException e1 ) {
+                        insert.mDone.setException(e1);
+                    }
+                }
+            }
+        }
+        catch ( Throwable t ) {
+            // never leave a caller waiting; this is a no-op for the ones already completed
+            for ( PendingInsert insert : group )
+                insert.mDone.setException(t);
+        }
+    }
+
+    private void write( List<PendingInsert> group ) {
+        List<ObjectDesc> recs = new ArrayList<>(group.size());
+        List<String> locations = new ArrayList<>(group.size());
+        List<String> createdBys = new ArrayList<>(group.size());
+        for ( PendingInsert insert : group ) {
+            recs.add(insert.mRec);
+            locations.add(insert.mLocation);
+            createdBys.add(insert.mUserName);
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Handle handle = mDBI.open();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            dao.begin();
+            DatabaseBossAPI.insertRows(dao, recs, locations, createdBys, now);
+            dao.commit();
+        }
+        finally {
+            if ( handle.isInTransaction() )
+                handle.rollback();
+            handle.close();
+        }
+    }
+
+    private static class PendingInsert {
+        PendingInsert( ObjectDesc rec, String location, String userName ) {
+            mRec = rec;
+            mLocation = location;
+            mUserName = userName;
+        }
+
+        final ObjectDesc mRec;
+        final String mLocation;
+        final String mUserName;
+        final SettableFuture<Void> mDone = SettableFuture.create();
+    }
+
+    private DBI mDBI;
+    private long mMaxDelayNanos;
+    private int mMaxGroupSize;
+    private BlockingQueue<PendingInsert> mQueue = new LinkedBlockingQueue<>();
+    private Thread mThread;
+    private static final PendingInsert gStop = new PendingInsert(null, null, null);
+    private static final Logger gLogger = LoggerFactory.getLogger(GroupCommitter.class);
+}
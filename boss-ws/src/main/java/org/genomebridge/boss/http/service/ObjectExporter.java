@@ -0,0 +1,148 @@
+package org.genomebridge.boss.http.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.genomebridge.boss.http.db.AclEntry;
+import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.db.ObjectRow;
+import org.genomebridge.boss.http.db.ObjectRowMapper;
+import org.genomebridge.boss.http.db.SqlDialect;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes object metadata as newline-delimited JSON, one object per line, in objectId order.
+ *
+ * The objects are streamed from the database with a driver fetch size, and written in chunks of
+ * MAX_IN_LIST along with their readers and writers, which are read for each chunk on a second
+ * connection.  (MySQL can't run another query on a connection that's streaming a result.)  So
+ * memory use is bounded by the chunk size however many objects there are, and output starts
+ * with the first chunk.
+ *
+ * Each line has the object's fields as stored, including its location (as directoryPath) and
+ * dates (as milliseconds since the epoch), plus its readers and writers.
+ */
+public class ObjectExporter {
+
+    public ObjectExporter( DBI dbi, SqlDialect dialect ) {
+        mDBI = dbi;
+        mDialect = dialect;
+    }
+
+    /**
+     * Exports the live objects a user can read, or, if userName is null, every object, deleted
+     * ones included.  Returns the number of objects written.
+     */
+    public long export( String userName, Writer out ) throws IOException {
+        long nObjects = 0;
+        JsonGenerator json = gJsonFactory.createGenerator(out);
+        json.setRootValueSeparator(null);
+        Handle rowHandle = mDBI.open();
+        Handle aclHandle = mDBI.open();
+        try {
+            BossDAO aclDAO = aclHandle.attach(BossDAO.class);
+            Query<Map<String,Object>> query;
+            if ( userName == null ) {
+                query = rowHandle.createQuery("select * from objects order by objectId");
+            }
+            else {
+                query = rowHandle.createQuery("select o.* from readers r inner join objects o on o.objectId = r.objectId " +
+                                              "where r.username = :username and o.active = 'Y' order by r.objectId")
+                        .bind("username", userName);
+            }
+            ResultIterator<ObjectRow> rows = query.setFetchSize(mDialect.streamingFetchSize())
+                                                  .map(new ObjectRowMapper())
+                                                  .iterator();
+            try {
+                List<ObjectRow> chunk = new ArrayList<>(BossDAO.MAX_IN_LIST);
+                while ( rows.hasNext() ) {
+                    chunk.add(rows.next());
+                    if ( chunk.size() == BossDAO.MAX_IN_LIST || !rows.hasNext() ) {
+                        writeChunk(aclDAO, chunk, json);
+                        nObjects += chunk.size();
+                        chunk.clear();
+                    }
+                }
+            }
+            finally {
+                rows.close();
+            }
+            json.flush();
+        }
+        finally {
+            aclHandle.close();
+            rowHandle.close();
+        }
+        return nObjects;
+    }
+
+    private static void writeChunk( BossDAO dao, List<ObjectRow> chunk, JsonGenerator json ) throws IOException {
+        List<String> objectIds = new ArrayList<>(chunk.size());
+        for ( ObjectRow row : chunk )
+            objectIds.add(row.objectId);
+        Map<String,List<String>> readers = groupByObject(dao.findReadersByIds(objectIds));
+        Map<String,List<String>> writers = groupByObject(dao.findWritersByIds(objectIds));
+        for ( ObjectRow row : chunk ) {
+            json.writeStartObject();
+            json.writeStringField("objectId", row.objectId);
+            json.writeStringField("objectName", row.objectName);
+            json.writeStringField("storagePlatform", row.storagePlatform);
+            json.writeStringField("directoryPath", row.directoryPath);
+            if ( row.sizeEstimateBytes != null )
+                json.writeNumberField("sizeEstimateBytes", row.sizeEstimateBytes);
+            json.writeStringField("ownerId", row.ownerId);
+            json.writeStringField("active", row.active);
+            json.writeStringField("createdBy", row.createdBy);
+            writeDate(json, "createDate", row.createDate);
+            writeDate(json, "modifyDate", row.modifyDate);
+            writeDate(json, "resolveDate", row.resolveDate);
+            writeDate(json, "deleteDate", row.deleteDate);
+            writeUsers(json, "readers", readers.get(row.objectId));
+            writeUsers(json, "writers", writers.get(row.objectId));
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+        json.flush();
+    }
+
+    private static void writeDate( JsonGenerator json, String field, Timestamp date ) throws IOException {
+        if ( date != null )
+            json.writeNumberField(field, date.getTime());
+    }
+
+    private static void writeUsers( JsonGenerator json, String field, List<String> users ) throws IOException {
+        json.writeArrayFieldStart(field);
+        if ( users != null )
+            for ( String user : users )
+                json.writeString(user);
+        json.writeEndArray();
+    }
+
+    private static Map<String,List<String>> groupByObject( List<AclEntry> entries ) {
+        Map<String,List<String>> usersById = new HashMap<>();
+        for ( AclEntry entry : entries ) {
+            List<String> users = usersById.get(entry.objectId);
+            if ( users == null ) {
+                users = new ArrayList<>();
+                usersById.put(entry.objectId, users);
+            }
+            users.add(entry.username);
+        }
+        return usersById;
+    }
+
+    private DBI mDBI;
+    private SqlDialect mDialect;
+    private static final JsonFactory gJsonFactory = new JsonFactory();
+}
@@ -0,0 +1,19 @@
+package org.genomebridge.boss.http.service;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration for the write-behind buffer of object resolve dates.  This is configured
+ * using a resolveDates clause in the YAML configuration file.
+ */
+public class ResolveDateConfiguration {
+
+    // How often buffered resolve dates are written to the database.  A recorded resolveDate may
+    // lag the actual resolve by up to this long.
+    @Min(1)
+    public long flushIntervalMillis = 5000L;
+
+    // The most updates sent to the database in one JDBC batch.
+    @Min(1)
+    public int maxBatchSize = 1000;
+}
@@ -0,0 +1,122 @@
+package org.genomebridge.boss.http.service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.genomebridge.boss.http.db.BossDAO;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.dropwizard.lifecycle.Managed;
+
+/**
+ * Write-behind buffer for object resolve dates.
+ *
+ * Resolving an object only records the time here, so a resolve doesn't write to the database itself.
+ * Only the latest time for each object is kept, and a background thread writes the buffered times to
+ * the database in JDBC batches every flushIntervalMillis.  Anything still buffered is flushed when the
+ * application stops.
+ */
+public class ResolveDateWriter implements Managed {
+
+    public ResolveDateWriter( DBI dbi, ResolveDateConfiguration config ) {
+        mDBI = dbi;
+        mConfig = config;
+    }
+
+    public void record( String objectId, long resolveMillis ) {
+        Long newVal = resolveMillis;
+        Long oldVal = mPending.putIfAbsent(objectId, newVal);
+        while ( oldVal != null && oldVal < resolveMillis && !mPending.replace(objectId, oldVal, newVal) )
+            oldVal = mPending.putIfAbsent(objectId, newVal);
+    }
+
+    /**
+     * Writes everything buffered so far to the database.
+     */
+    public synchronized void flush() {
+        List<String> objectIds = new ArrayList<>();
+        List<Timestamp> resolveDates = new ArrayList<>();
+        for ( Map.Entry<String,Long> entry : mPending.entrySet() ) {
+            // skip it if it changed under us; we'll get it next time
+            if ( !mPending.remove(entry.getKey(), entry.getValue()) )
+                continue;
+            objectIds.add(entry.getKey());
+            resolveDates.add(new Timestamp(entry.getValue()));
+            if ( objectIds.size() == mConfig.maxBatchSize ) {
+                writeBatch(objectIds, resolveDates);
+                objectIds.clear();
+                resolveDates.clear();
+            }
+        }
+        if ( !objectIds.isEmpty() )
+            writeBatch(objectIds, resolveDates);
+    }
+
+    @Override
+    public void start() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "resolve-date-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                }
+                catch ( Exception e ) {
+                    gLogger.warn("Unable to write resolve dates.", e);
+                }
+            }
+        }, mConfig.flushIntervalMillis, mConfig.flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(mConfig.flushIntervalMillis, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    private void writeBatch( List<String> objectIds, List<Timestamp> resolveDates ) {
+        Handle handle = mDBI.open();
+        try {
+            BossDAO dao = handle.attach(BossDAO.class);
+            dao.begin();
+            dao.updateResolveDates(objectIds, resolveDates);
+            dao.commit();
+        }
+        catch ( RuntimeException e ) {
+            // put them back for the next try, unless the object has been resolved again since
+            for ( int idx = 0; idx < objectIds.size(); ++idx )
+                record(objectIds.get(idx), resolveDates.get(idx).getTime());
+            throw e;
+        }
+        finally {
+            if ( handle.isInTransaction() )
+                handle.rollback();
+            handle.close();
+        }
+    }
+
+    private DBI mDBI;
+    private ResolveDateConfiguration mConfig;
+    private ConcurrentMap<String,Long> mPending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService mExecutor;
+    private static final Logger gLogger = LoggerFactory.getLogger(ResolveDateWriter.class);
+}
@@ -0,0 +1,39 @@
+package org.genomebridge.boss.http.service;
+
+import java.nio.charset.StandardCharsets;
+
+import org.genomebridge.boss.http.db.NameIndex;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The last index match a name search looked at, which is where the next page of its results starts.
+ *
+ * Like a listing's Cursor, it travels to the client as an opaque, URL-safe token.  The objectId
+ * comes first, since the name may contain anything.
+ */
+class SearchCursor {
+
+    static String encode( NameIndex.Match match ) {
+        String value = match.objectId + SEPARATOR + match.name;
+        return BaseEncoding.base64Url().omitPadding().encode(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns null if the token isn't one that encode produced.
+     */
+    static NameIndex.Match decode( String token ) {
+        try {
+            String value = new String(BaseEncoding.base64Url().omitPadding().decode(token), StandardCharsets.UTF_8);
+            String[] parts = value.split(SEPARATOR, 2);
+            if ( parts.length != 2 || parts[0].isEmpty() )
+                return null;
+            return new NameIndex.Match(parts[1], parts[0]);
+        }
+        catch ( IllegalArgumentException e ) {
+            return null;
+        }
+    }
+
+    private static final String SEPARATOR = ":";
+}
@@ -0,0 +1,35 @@
+package org.genomebridge.boss.http.tasks;
+
+import java.io.PrintWriter;
+
+import org.genomebridge.boss.http.db.AclCache;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMultimap;
+
+import io.dropwizard.servlets.tasks.Task;
+
+/**
+ * Admin task that reports how well the ACL cache is doing:
+ *   curl -X POST http://localhost:8181/tasks/acl-cache-stats
+ */
+public class AclCacheStatsTask extends Task {
+
+    public AclCacheStatsTask( AclCache cache ) {
+        super("acl-cache-stats");
+        mCache = cache;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String,String> parameters, PrintWriter output) {
+        CacheStats stats = mCache.stats();
+        output.println("size: " + mCache.size());
+        output.println("hits: " + stats.hitCount());
+        output.println("misses: " + stats.missCount());
+        output.println("hitRate: " + stats.hitRate());
+        output.println("evictions: " + stats.evictionCount());
+        output.flush();
+    }
+
+    private AclCache mCache;
+}
@@ -0,0 +1,30 @@
+package org.genomebridge.boss.http.tasks;
+
+import java.io.PrintWriter;
+
+import org.genomebridge.boss.http.service.BossAPI;
+
+import com.google.common.collect.ImmutableMultimap;
+
+import io.dropwizard.servlets.tasks.Task;
+
+/**
+ * Admin task that dumps the metadata of every object, deleted ones included, as newline-delimited
+ * JSON.  Unlike GET /objects/export, it isn't limited to what one user can read:
+ *   curl -X POST http://localhost:8181/tasks/export-objects > objects.ndjson
+ */
+public class ExportObjectsTask extends Task {
+
+    public ExportObjectsTask( BossAPI api ) {
+        super("export-objects");
+        mAPI = api;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String,String> parameters, PrintWriter output) throws Exception {
+        mAPI.exportAllObjects(output);
+        output.flush();
+    }
+
+    private BossAPI mAPI;
+}
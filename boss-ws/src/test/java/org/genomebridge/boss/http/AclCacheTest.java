@@ -0,0 +1,35 @@
+package org.genomebridge.boss.http;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.genomebridge.boss.http.db.AclCache;
+import org.genomebridge.boss.http.db.AclCacheConfiguration;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class AclCacheTest {
+
+    private static final List<String> USERS = Arrays.asList("me");
+
+    @Test
+    public void testInvalidateDropsStalePut() {
+        AclCache cache = new AclCache(new AclCacheConfiguration());
+        long stamp = cache.stamp("a");
+        cache.invalidate("a");
+
+        // ACLs read before the invalidation mustn't be cached
+        cache.put("a", USERS, USERS, stamp);
+        assertThat(cache.size()).isEqualTo(0L);
+
+        cache.put("a", USERS, USERS, cache.stamp("a"));
+        assertThat(cache.canRead(null, "a", "me")).isTrue();
+        assertThat(cache.canWrite(null, "a", "you")).isFalse();
+
+        stamp = cache.stamp("b");
+        cache.invalidateAll();
+        cache.put("b", USERS, USERS, stamp);
+        assertThat(cache.size()).isEqualTo(0L);
+    }
+}
@@ -1,16 +1,30 @@
 package org.genomebridge.boss.http;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.GenericType;
 
 import io.dropwizard.testing.junit.DropwizardAppRule;
 
+import org.apache.commons.lang.StringUtils;
 import org.genomebridge.boss.http.models.StoragePlatform;
+import org.genomebridge.boss.http.service.DatabaseBossAPI;
+import org.genomebridge.boss.http.service.BossAPI.AclChangeRequest;
+import org.genomebridge.boss.http.service.BossAPI.AclChangeResponse;
+import org.genomebridge.boss.http.service.BossAPI.BatchDescribeResponse;
+import org.genomebridge.boss.http.service.BossAPI.BatchResolveRequest;
+import org.genomebridge.boss.http.service.BossAPI.BatchResolveResponse;
+import org.genomebridge.boss.http.service.BossAPI.ImportResult;
+import org.genomebridge.boss.http.service.BossAPI.ListResponse;
 import org.genomebridge.boss.http.service.BossAPI.ObjectDesc;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -92,6 +106,7 @@ public class AllObjectsAcceptanceTest extends AbstractTest {
         assertThat(response.getEntity(String.class)).isEqualTo(String.format(messages.get("storagePlatformOptions"),
                 StoragePlatform.CLOUDSTORE.getValue(),
                 StoragePlatform.LOCALSTORE.getValue(),
+                StoragePlatform.FILESTORE.getValue(),
                 StoragePlatform.OPAQUEURI.getValue())+'.');
     }
 
@@ -210,4 +225,390 @@ public class AllObjectsAcceptanceTest extends AbstractTest {
         assertThat(rec).isNotNull();
         assertThat(rec.directoryPath).isEqualTo(obj.directoryPath);
     }
+
+    @Test
+    public void testBatchResolve() {
+        Client client = new Client();
+        List<BatchResolveRequest> reqs = new ArrayList<>();
+        // enough objects that the signing gets split across threads
+        for ( int idx = 0; idx < 40; ++idx ) {
+            ClientResponse response = checkStatus(CREATED, createObject("Name", "tdanford", 500L));
+            BatchResolveRequest req = new BatchResolveRequest();
+            req.objectId = response.getEntity(ObjectDesc.class).objectId;
+            req.httpMethod = "GET";
+            req.validityPeriodSeconds = 10;
+            reqs.add(req);
+        }
+        BatchResolveRequest missing = new BatchResolveRequest();
+        missing.objectId = "xyzzy";
+        missing.httpMethod = "GET";
+        missing.validityPeriodSeconds = 10;
+        reqs.add(missing);
+        BatchResolveRequest badMethod = new BatchResolveRequest();
+        badMethod.objectId = reqs.get(0).objectId;
+        badMethod.httpMethod = "POST";
+        badMethod.validityPeriodSeconds = 10;
+        reqs.add(badMethod);
+
+        GenericType<List<BatchResolveResponse>> genTyp = new GenericType<List<BatchResolveResponse>>() {};
+        ClientResponse response = checkStatus(OK, post(client, objectsPath() + "/resolve", "testuser", reqs));
+        List<BatchResolveResponse> resps = response.getEntity(genTyp);
+        assertThat(resps).hasSize(42);
+        for ( int idx = 0; idx < 40; ++idx ) {
+            assertThat(resps.get(idx).objectId).isEqualTo(reqs.get(idx).objectId);
+            assertThat(resps.get(idx).status).isEqualTo(OK);
+            assertThat(resps.get(idx).objectUrl.toString()).contains(reqs.get(idx).objectId);
+        }
+        assertThat(resps.get(40).status).isEqualTo(NOT_FOUND);
+        assertThat(resps.get(40).message).isEqualTo(String.format(messages.get("objectNotFound"), "xyzzy"));
+        assertThat(resps.get(41).status).isEqualTo(BAD_REQUEST);
+        assertThat(resps.get(41).message).isEqualTo(messages.get("httpMethod"));
+
+        // someone else can't read any of them
+        response = checkStatus(OK, post(client, objectsPath() + "/resolve", "nobody", reqs.subList(0, 1)));
+        resps = response.getEntity(genTyp);
+        assertThat(resps.get(0).status).isEqualTo(ClientResponse.Status.FORBIDDEN.getStatusCode());
+        assertThat(resps.get(0).objectUrl).isNull();
+
+        // an empty batch is a bad request
+        checkStatus(BAD_REQUEST, post(client, objectsPath() + "/resolve", "testuser", new ArrayList<BatchResolveRequest>()));
+    }
+
+    @Test
+    public void testBatchDescribe() {
+        Client client = new Client();
+        ObjectDesc readable = checkStatus(CREATED, createObject("Readable", "tdanford", 500L)).getEntity(ObjectDesc.class);
+        ObjectDesc rec = fixture();
+        rec.readers = arraySet("him");
+        ObjectDesc hidden = checkStatus(CREATED, post(client, objectsPath(), "me", rec)).getEntity(ObjectDesc.class);
+        rec.readers = arraySet("testuser");
+        ClientResponse response = checkStatus(CREATED, post(client, objectsPath(), "me", rec));
+        ObjectDesc deleted = response.getEntity(ObjectDesc.class);
+        checkStatus(OK, delete(client, checkHeader(response, "Location"), "me"));
+
+        List<String> ids = Arrays.asList(readable.objectId, hidden.objectId, deleted.objectId, "xyzzy");
+        GenericType<List<BatchDescribeResponse>> genTyp = new GenericType<List<BatchDescribeResponse>>() {};
+        List<BatchDescribeResponse> descs =
+                checkStatus(OK, post(client, objectsPath() + "/describe", "testuser", ids)).getEntity(genTyp);
+
+        assertThat(descs).hasSize(4);
+        assertThat(descs.get(0).status).isEqualTo(OK);
+        assertThat(descs.get(0).objectName).isEqualTo("Readable");
+        assertThat(descs.get(0).readers).containsOnly("tdanford", "testuser");
+        assertThat(descs.get(1).status).isEqualTo(ClientResponse.Status.FORBIDDEN.getStatusCode());
+        assertThat(descs.get(1).objectId).isEqualTo(hidden.objectId);
+        assertThat(descs.get(1).objectName).isNull();
+        assertThat(descs.get(2).status).isEqualTo(GONE);
+        assertThat(descs.get(3).status).isEqualTo(NOT_FOUND);
+        assertThat(descs.get(3).message).isEqualTo(String.format(messages.get("objectNotFound"), "xyzzy"));
+    }
+
+    @Test
+    public void testBatchCreate() {
+        Client client = new Client();
+        ObjectDesc opaque = fixture();
+        opaque.objectName = "BatchOpaque";
+        ObjectDesc cloud = fixture();
+        cloud.objectName = "BatchCloud";
+        cloud.storagePlatform = StoragePlatform.CLOUDSTORE.getValue();
+        cloud.directoryPath = null;
+        cloud.sizeEstimateBytes = null;
+        cloud.readers = arraySet("testuser");
+
+        GenericType<List<ObjectDesc>> genTyp = new GenericType<List<ObjectDesc>>() {};
+        List<ObjectDesc> created = checkStatus(CREATED,
+                post(client, objectsPath() + "/batch", "me", Arrays.asList(opaque, cloud))).getEntity(genTyp);
+
+        assertThat(created).hasSize(2);
+        assertThat(created.get(0).objectName).isEqualTo("BatchOpaque");
+        assertThat(created.get(1).objectName).isEqualTo("BatchCloud");
+        assertThat(created.get(0).objectId).isNotEqualTo(created.get(1).objectId);
+
+        ObjectDesc rec = checkStatus(OK, get(client, objectsPath() + "/" + created.get(1).objectId)).getEntity(ObjectDesc.class);
+        assertThat(rec.objectName).isEqualTo("BatchCloud");
+        assertThat(rec.sizeEstimateBytes).isEqualTo(-1L);
+        assertThat(rec.readers).containsOnly("testuser");
+        assertThat(rec.writers).containsOnly("me", "him", "her");
+        rec = checkStatus(OK, get(client, objectsPath() + "/" + created.get(0).objectId, "her")).getEntity(ObjectDesc.class);
+        assertThat(rec.directoryPath).isEqualTo(opaque.directoryPath);
+    }
+
+    @Test
+    public void testBatchCreateRejectsWholeBatch() {
+        Client client = new Client();
+        ObjectDesc good = fixture();
+        good.objectName = "BatchNeverCreated";
+        ObjectDesc bad = fixture();
+        bad.ownerId = null;
+
+        ClientResponse response = checkStatus(BAD_REQUEST,
+                post(client, objectsPath() + "/batch", "me", Arrays.asList(good, bad)));
+        assertThat(response.getEntity(String.class)).isEqualTo(
+                String.format(messages.get("batchItem"), 1, messages.get("ownerIdValidation") + '.'));
+        checkStatus(NOT_FOUND, get(client, objectsPath() + "?name=BatchNeverCreated", "me"));
+    }
+
+    @Test
+    public void testBulkAclChangeByIds() {
+        Client client = new Client();
+        ObjectDesc first = checkStatus(CREATED, post(client, objectsPath(), "me", fixture())).getEntity(ObjectDesc.class);
+        ObjectDesc second = checkStatus(CREATED, post(client, objectsPath(), "me", fixture())).getEntity(ObjectDesc.class);
+
+        AclChangeRequest req = new AclChangeRequest();
+        req.objectIds = new String[] { first.objectId, second.objectId };
+        req.grantReaders = arraySet("newbie");
+        req.revokeReaders = arraySet("him");
+        req.revokeWriters = arraySet("her");
+        AclChangeResponse resp = checkStatus(OK, post(client, objectsPath() + "/acl", "me", req))
+                .getEntity(AclChangeResponse.class);
+        assertThat(resp.objectCount).isEqualTo(2);
+
+        ObjectDesc rec = checkStatus(OK, get(client, objectsPath() + "/" + second.objectId, "newbie")).getEntity(ObjectDesc.class);
+        assertThat(rec.readers).containsOnly("me", "her", "newbie");
+        assertThat(rec.writers).containsOnly("me", "him");
+
+        // "newbie" can read but not write, so can't change the ACLs
+        req.grantReaders = arraySet("someone");
+        checkStatus(ClientResponse.Status.FORBIDDEN.getStatusCode(), post(client, objectsPath() + "/acl", "newbie", req));
+
+        req.objectIds = new String[] { first.objectId, "xyzzy" };
+        ClientResponse response = checkStatus(NOT_FOUND, post(client, objectsPath() + "/acl", "me", req));
+        assertThat(response.getEntity(String.class)).isEqualTo(String.format(messages.get("aclObjectsNotFound"), 1));
+
+        // more ids than go in one statement
+        req.objectIds = new String[1201];
+        req.objectIds[0] = first.objectId;
+        for ( int idx = 1; idx < req.objectIds.length; ++idx )
+            req.objectIds[idx] = "missing" + idx;
+        response = checkStatus(NOT_FOUND, post(client, objectsPath() + "/acl", "me", req));
+        assertThat(response.getEntity(String.class)).isEqualTo(String.format(messages.get("aclObjectsNotFound"), 1200));
+
+        req.objectIds = new String[] { first.objectId, null };
+        response = checkStatus(BAD_REQUEST, post(client, objectsPath() + "/acl", "me", req));
+        assertThat(response.getEntity(String.class)).isEqualTo(messages.get("aclNullId"));
+    }
+
+    @Test
+    public void testBulkAclChangeByOwner() {
+        Client client = new Client();
+        ObjectDesc rec = fixture();
+        rec.ownerId = UUID.randomUUID().toString();
+        ObjectDesc obj = checkStatus(CREATED, post(client, objectsPath(), "me", rec)).getEntity(ObjectDesc.class);
+        checkStatus(CREATED, post(client, objectsPath(), "me", rec));
+
+        AclChangeRequest req = new AclChangeRequest();
+        req.ownerId = rec.ownerId;
+        req.grantWriters = arraySet("newbie");
+        AclChangeResponse resp = checkStatus(OK, post(client, objectsPath() + "/acl", "me", req))
+                .getEntity(AclChangeResponse.class);
+        assertThat(resp.objectCount).isEqualTo(2);
+        ObjectDesc desc = checkStatus(OK, get(client, objectsPath() + "/" + obj.objectId, "me")).getEntity(ObjectDesc.class);
+        assertThat(desc.writers).containsOnly("me", "him", "her", "newbie");
+
+        req.objectIds = new String[] { obj.objectId };
+        checkStatus(BAD_REQUEST, post(client, objectsPath() + "/acl", "me", req));
+    }
+
+    @Test
+    public void testKeysetListing() throws InterruptedException {
+        Client client = new Client();
+        String owner = UUID.randomUUID().toString();
+        String reader = UUID.randomUUID().toString();
+        List<String> ids = new ArrayList<>();
+        for ( int idx = 0; idx < 5; ++idx ) {
+            ObjectDesc rec = fixture();
+            rec.ownerId = owner;
+            rec.readers = arraySet("me", reader);
+            ids.add(checkStatus(CREATED, post(client, objectsPath(), "me", rec)).getEntity(ObjectDesc.class).objectId);
+            Thread.sleep(2); // so they have distinct createDates
+        }
+        ObjectDesc other = fixture();
+        other.readers = arraySet(reader);
+        checkStatus(CREATED, post(client, objectsPath(), "me", other));
+
+        // everything the reader can see, in objectId order, two at a time
+        List<String> listed = listAll(client, objectsPath() + "/list?limit=2", reader);
+        assertThat(listed).hasSize(6).containsAll(ids);
+        List<String> sorted = new ArrayList<>(listed);
+        Collections.sort(sorted);
+        assertThat(listed).isEqualTo(sorted);
+
+        // just the owner's, in creation order
+        assertThat(listAll(client, objectsPath() + "/list?limit=2&ownerId=" + owner, reader)).isEqualTo(ids);
+        assertThat(listAll(client, objectsPath() + "/list?ownerId=" + owner, "nobody")).isEmpty();
+
+        checkStatus(BAD_REQUEST, get(client, objectsPath() + "/list?cursor=xyzzy", reader));
+        checkStatus(BAD_REQUEST, get(client, objectsPath() + "/list?limit=0", reader));
+    }
+
+    private List<String> listAll( Client client, String url, String user ) {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            String pageUrl = cursor == null ? url : url + "&cursor=" + cursor;
+            ListResponse page = checkStatus(OK, get(client, pageUrl, user)).getEntity(ListResponse.class);
+            for ( ObjectDesc desc : page.objects )
+                ids.add(desc.objectId);
+            cursor = page.nextCursor;
+        } while ( cursor != null );
+        return ids;
+    }
+
+    @Test
+    public void testNameSearch() {
+        Client client = new Client();
+        String stem = UUID.randomUUID().toString();
+        ObjectDesc rec = fixture();
+        rec.objectName = stem + "-one.bam";
+        ObjectDesc readable = checkStatus(CREATED, post(client, objectsPath(), "me", rec)).getEntity(ObjectDesc.class);
+        rec.objectName = stem + "-two.bam";
+        rec.readers = arraySet("her");
+        checkStatus(CREATED, post(client, objectsPath(), "me", rec));
+        rec.objectName = stem + "-three.bam";
+        rec.readers = arraySet("him");
+        ClientResponse response = checkStatus(CREATED, post(client, objectsPath(), "me", rec));
+        checkStatus(OK, delete(client, checkHeader(response, "Location"), "me"));
+
+        ListResponse page = checkStatus(OK, get(client, objectsPath() + "/search?prefix=" + stem, "him"))
+                .getEntity(ListResponse.class);
+        List<ObjectDesc> found = page.objects;
+        assertThat(found).hasSize(1);
+        assertThat(found.get(0).objectId).isEqualTo(readable.objectId);
+        assertThat(found.get(0).readers).containsOnly("me", "him", "her");
+        assertThat(page.nextCursor).isNull();
+
+        String middle = stem.substring(10, 20);
+        found = checkStatus(OK, get(client, objectsPath() + "/search?contains=" + middle, "her"))
+                .getEntity(ListResponse.class).objects;
+        assertThat(found).hasSize(2);
+        assertThat(found.get(0).objectName).isEqualTo(stem + "-one.bam");
+        assertThat(found.get(1).objectName).isEqualTo(stem + "-two.bam");
+
+        // a page at a time
+        page = checkStatus(OK, get(client, objectsPath() + "/search?limit=1&contains=" + middle, "her"))
+                .getEntity(ListResponse.class);
+        assertThat(page.objects).hasSize(1);
+        assertThat(page.nextCursor).isNotNull();
+        assertThat(listAll(client, objectsPath() + "/search?limit=1&prefix=" + stem, "her")).hasSize(2);
+
+        checkStatus(BAD_REQUEST, get(client, objectsPath() + "/search?prefix=" + stem + "&cursor=xyzzy", "her"));
+        checkStatus(BAD_REQUEST, get(client, objectsPath() + "/search?contains=ab", "her"));
+        response = checkStatus(BAD_REQUEST, get(client, objectsPath() + "/search?prefix=", "her"));
+        assertThat(response.getEntity(String.class)).isEqualTo(String.format(messages.get("nameSearch"), 3));
+    }
+
+    @Test
+    public void testNameSearchIsBounded() {
+        Client client = new Client();
+        String stem = UUID.randomUUID().toString();
+        // more matches than one request looks at, and only the last of them readable
+        List<ObjectDesc> recs = new ArrayList<>();
+        for ( int idx = 0; idx < DatabaseBossAPI.MAX_SEARCH_CANDIDATES; ++idx ) {
+            ObjectDesc rec = fixture();
+            rec.objectName = String.format("%s-%05d", stem, idx);
+            rec.readers = arraySet("me");
+            recs.add(rec);
+            if ( recs.size() == DatabaseBossAPI.MAX_BATCH_SIZE ) {
+                checkStatus(CREATED, post(client, objectsPath() + "/batch", "me", recs));
+                recs.clear();
+            }
+        }
+        ObjectDesc last = fixture();
+        last.objectName = stem + "-last";
+        last.readers = arraySet("her");
+        checkStatus(CREATED, post(client, objectsPath(), "me", last));
+
+        ListResponse page = checkStatus(OK, get(client, objectsPath() + "/search?prefix=" + stem, "her"))
+                .getEntity(ListResponse.class);
+        assertThat(page.objects).isEmpty();
+        assertThat(page.nextCursor).isNotNull();
+        page = checkStatus(OK, get(client, objectsPath() + "/search?prefix=" + stem + "&cursor=" + page.nextCursor, "her"))
+                .getEntity(ListResponse.class);
+        assertThat(page.objects).hasSize(1);
+        assertThat(page.objects.get(0).objectName).isEqualTo(stem + "-last");
+        assertThat(page.nextCursor).isNull();
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        Client client = new Client();
+        String reader = UUID.randomUUID().toString();
+        ObjectDesc rec = fixture();
+        rec.readers = arraySet(reader);
+        ObjectDesc first = checkStatus(CREATED, post(client, objectsPath(), "me", rec)).getEntity(ObjectDesc.class);
+        ObjectDesc second = checkStatus(CREATED, post(client, objectsPath(), "me", rec)).getEntity(ObjectDesc.class);
+
+        String body = checkStatus(OK, client.resource(objectsPath() + "/export")
+                .header(REMOTE_USER_HEADER, reader)
+                .get(ClientResponse.class)).getEntity(String.class);
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> ids = new ArrayList<>();
+        for ( String line : lines ) {
+            JsonNode node = mapper.readTree(line);
+            ids.add(node.get("objectId").asText());
+            assertThat(node.get("readers").get(0).asText()).isEqualTo(reader);
+            assertThat(node.get("directoryPath").asText()).isEqualTo(rec.directoryPath);
+            assertThat(node.get("createDate").isNumber()).isTrue();
+        }
+        assertThat(ids).containsOnly(first.objectId, second.objectId);
+
+        // a HEAD writes no body, so it mustn't keep an export slot
+        for ( int idx = 0; idx <= DatabaseBossAPI.MAX_CONCURRENT_EXPORTS; ++idx )
+            checkStatus(OK, client.resource(objectsPath() + "/export").header(REMOTE_USER_HEADER, reader).head());
+        body = checkStatus(OK, client.resource(objectsPath() + "/export")
+                .header(REMOTE_USER_HEADER, reader)
+                .get(ClientResponse.class)).getEntity(String.class);
+        assertThat(body.split("\n")).hasSize(2);
+
+        ClientResponse response = checkStatus(BAD_REQUEST, client.resource(objectsPath() + "/export").get(ClientResponse.class));
+        assertThat(response.getEntity(String.class)).isEqualTo(messages.get("remoteUser"));
+    }
+
+    @Test
+    public void testImport() throws Exception {
+        Client client = new Client();
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectDesc good = fixture();
+        good.objectName = "Imported";
+        ObjectDesc bad = fixture();
+        bad.ownerId = null;
+        ObjectDesc tooLong = fixture();
+        tooLong.objectName = StringUtils.repeat("x", 300);
+        String body = mapper.writeValueAsString(good) + "\n" +
+                      mapper.writeValueAsString(bad) + "\n" +
+                      "\n" +
+                      "{not json\n" +
+                      mapper.writeValueAsString(tooLong) + "\n" +
+                      mapper.writeValueAsString(good) + "\n";
+
+        String results = checkStatus(OK, client.resource(objectsPath() + "/import")
+                .type("application/x-ndjson")
+                .header(REMOTE_USER_HEADER, "me")
+                .post(ClientResponse.class, body)).getEntity(String.class);
+        String[] lines = results.split("\n");
+        assertThat(lines).hasSize(5);
+        List<ImportResult> imports = new ArrayList<>();
+        for ( String line : lines )
+            imports.add(mapper.readValue(line, ImportResult.class));
+        assertThat(imports.get(0).line).isEqualTo(1);
+        assertThat(imports.get(0).status).isEqualTo(CREATED);
+        assertThat(imports.get(1).status).isEqualTo(BAD_REQUEST);
+        assertThat(imports.get(1).message).isEqualTo(messages.get("ownerIdValidation") + '.');
+        assertThat(imports.get(2).line).isEqualTo(4);
+        assertThat(imports.get(2).status).isEqualTo(BAD_REQUEST);
+        assertThat(imports.get(3).status).isEqualTo(ClientResponse.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        assertThat(imports.get(4).line).isEqualTo(6);
+        assertThat(imports.get(4).status).isEqualTo(CREATED);
+
+        ObjectDesc rec = checkStatus(OK, get(client, objectsPath() + "/" + imports.get(4).objectId, "me")).getEntity(ObjectDesc.class);
+        assertThat(rec.objectName).isEqualTo("Imported");
+        assertThat(rec.directoryPath).isEqualTo(good.directoryPath);
+
+        ClientResponse response = checkStatus(BAD_REQUEST, client.resource(objectsPath() + "/import")
+                .type("application/x-ndjson")
+                .post(ClientResponse.class, body));
+        assertThat(response.getEntity(String.class)).isEqualTo(messages.get("remoteUser"));
+    }
 }
@@ -2,16 +2,23 @@ package org.genomebridge.boss.http;
 
 import io.dropwizard.testing.junit.DropwizardAppRule;
 
+import org.genomebridge.boss.http.db.AclEntry;
+import org.genomebridge.boss.http.db.AclSync;
 import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.db.ObjectAclRow;
 import org.genomebridge.boss.http.db.ObjectRow;
+import org.genomebridge.boss.http.db.SqlDialect;
 import org.genomebridge.boss.http.models.StoragePlatform;
 import org.genomebridge.boss.http.service.BossAPI.ObjectDesc;
 import org.junit.BeforeClass;
+import org.skife.jdbi.v2.Handle;
 import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -86,6 +93,51 @@ public class BossDAOTest extends ResourcedTest {
         assertThat(writers).containsOnly("tdanford");
     }
 
+    @Test
+    public void testFindObjectAndAcls() {
+        String id = createObject();
+        dao.insertReaders(id, Arrays.asList("tdanford", "carlyeks"));
+        dao.insertWriters(id, Arrays.asList("tdanford"));
+
+        ObjectAclRow rec = ObjectAclRow.fold(dao.findObjectAndAclsById(id));
+        assertThat(rec).isNotNull();
+        assertThat(rec.objectId).isEqualTo(id);
+        assertThat(rec.active).isEqualTo("Y");
+        assertThat(rec.readers).containsOnly("tdanford", "carlyeks");
+        assertThat(rec.writers).containsOnly("tdanford");
+        assertThat(rec.canRead("carlyeks")).isTrue();
+        assertThat(rec.canWrite("carlyeks")).isFalse();
+
+        // an object without ACLs still comes back
+        String bareId = createObject();
+        rec = ObjectAclRow.fold(dao.findObjectAndAclsById(bareId));
+        assertThat(rec).isNotNull();
+        assertThat(rec.readers).isEmpty();
+        assertThat(rec.writers).isEmpty();
+
+        assertThat(ObjectAclRow.fold(dao.findObjectAndAclsById(UUID.randomUUID().toString()))).isNull();
+    }
+
+    @Test
+    public void testFindAclsByIds() {
+        String id1 = createObject();
+        String id2 = createObject();
+        String id3 = createObject();
+        dao.insertReaders(id1, Arrays.asList("tdanford", "carlyeks"));
+        dao.insertReaders(id2, Arrays.asList("carlyeks"));
+        dao.insertWriters(id2, Arrays.asList("tdanford"));
+
+        List<AclEntry> readers = dao.findReadersByIds(Arrays.asList(id1, id2, id3));
+        assertThat(readers).hasSize(3);
+        for ( AclEntry entry : readers )
+            assertThat(entry.objectId).isIn(id1, id2);
+
+        List<AclEntry> writers = dao.findWritersByIds(Arrays.asList(id1, id2, id3));
+        assertThat(writers).hasSize(1);
+        assertThat(writers.get(0).objectId).isEqualTo(id2);
+        assertThat(writers.get(0).username).isEqualTo("tdanford");
+    }
+
     @Test
     public void testInsertAndGetObject() {
         ObjectDesc rec = new ObjectDesc();
@@ -200,4 +252,44 @@ public class BossDAOTest extends ResourcedTest {
         assertThat(fetched.resolveDate).isEqualTo(rDate);
         assertThat(fetched.deleteDate).isEqualTo(dDate);
     }
+
+    @Test
+    public void testAclSync() {
+        String id = createObject();
+        dao.insertReaders(id, Arrays.asList("tdanford", "carlyeks", "gone"));
+        dao.insertWriters(id, Arrays.asList("tdanford"));
+
+        // more users than fit in an Oracle IN list, overlapping the current ones
+        List<String> readers = new ArrayList<>();
+        readers.add("tdanford");
+        readers.add("carlyeks");
+        for ( int idx = 0; idx < 1500; ++idx )
+            readers.add("user" + idx);
+        AclSync sync = new AclSync(SqlDialect.HSQLDB);
+        Handle handle = BossApplication.getDBI().open();
+        try {
+            handle.begin();
+            sync.setReaders(handle, id, readers);
+            sync.setWriters(handle, id, Collections.<String>emptyList());
+            handle.commit();
+        }
+        finally {
+            handle.close();
+        }
+        assertThat(dao.findReadersById(id)).hasSize(1502).contains("tdanford", "carlyeks", "user1499")
+                .doesNotContain("gone");
+        assertThat(dao.findWritersById(id)).isEmpty();
+    }
+
+    @Test
+    public void testSqlDialectForDriverClass() {
+        assertThat(SqlDialect.forDriverClass("org.hsqldb.jdbc.JDBCDriver")).isEqualTo(SqlDialect.HSQLDB);
+        assertThat(SqlDialect.forDriverClass("com.mysql.jdbc.Driver")).isEqualTo(SqlDialect.MYSQL);
+        assertThat(SqlDialect.forDriverClass("oracle.jdbc.OracleDriver")).isEqualTo(SqlDialect.ORACLE);
+        assertThat(SqlDialect.ORACLE.valuesTable(Arrays.asList("a", "b"), "u", "username"))
+                .isEqualTo("(select :a as username from dual union all select :b from dual) u");
+        assertThat(SqlDialect.forDriverClass("org.postgresql.Driver")).isEqualTo(SqlDialect.ANSI);
+        assertThat(SqlDialect.ANSI.valuesTable(Arrays.asList("a", "b"), "u", "username"))
+                .isEqualTo("(select :a as username union all select :b) as u");
+    }
 }
@@ -2,19 +2,44 @@ package org.genomebridge.boss.http;
 
 import io.dropwizard.testing.junit.DropwizardAppRule;
 
+import org.apache.commons.lang.StringUtils;
+import org.genomebridge.boss.http.db.BossDAO;
+import org.genomebridge.boss.http.db.ObjectRow;
 import org.genomebridge.boss.http.models.StoragePlatform;
+import org.genomebridge.boss.http.objectstore.ObjectStore;
 import org.genomebridge.boss.http.objectstore.ObjectStoreConfiguration;
 import org.genomebridge.boss.http.service.BossAPI;
+import org.genomebridge.boss.http.service.BossAPI.DeletionStatus;
+import org.genomebridge.boss.http.service.BossAPI.MultipartCompleteRequest;
+import org.genomebridge.boss.http.service.BossAPI.MultipartRequest;
+import org.genomebridge.boss.http.service.BossAPI.MultipartResponse;
 import org.genomebridge.boss.http.service.BossAPI.ObjectDesc;
 import org.genomebridge.boss.http.service.BossAPI.ResolveRequest;
 import org.genomebridge.boss.http.service.BossAPI.ResolveResponse;
+import org.genomebridge.boss.http.service.DeleteOutboxConfiguration;
+import org.genomebridge.boss.http.service.DeleteOutboxWorker;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.io.StringWriter;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Fail.fail;
@@ -57,6 +82,325 @@ public class DatabaseBossAPITest extends ResourcedTest {
         assertThat(retrieved.writers).containsOnly("tdanford", "carlyeks", "testuser");
     }
 
+    @Test
+    public void testResolveDateWrittenBehind() {
+        ObjectDesc obj = new ObjectDesc();
+        obj.ownerId = "tdanford";
+        obj.objectName = "Test Name";
+        obj.readers = new String[] { "tdanford" };
+        obj.writers = new String[] { "tdanford" };
+        obj.storagePlatform = StoragePlatform.OPAQUEURI.getValue();
+        obj.directoryPath = "file:///path/to/file";
+        assertThat(api.insertObject(obj,"tdanford")).isNull();
+
+        ResolveRequest req = new ResolveRequest();
+        req.httpMethod = HttpMethod.GET;
+        req.validityPeriodSeconds = 10;
+        assertThat(api.resolveObject(obj.objectId,"tdanford",req,new ResolveResponse())).isNull();
+        assertThat(api.resolveObject(obj.objectId,"tdanford",req,new ResolveResponse())).isNull();
+
+        BossDAO dao = BossApplication.getDAO();
+        BossApplication.getResolveDateWriter().flush();
+        ObjectRow row = dao.findObjectById(obj.objectId);
+        assertThat(row.resolveDate).isNotNull();
+
+        // a flush with nothing new leaves it alone
+        BossApplication.getResolveDateWriter().flush();
+        assertThat(dao.findObjectById(obj.objectId).resolveDate).isEqualTo(row.resolveDate);
+    }
+
+    @Test
+    public void testAclCacheInvalidatedOnUpdate() {
+        ObjectDesc obj = new ObjectDesc();
+        obj.ownerId = "tdanford";
+        obj.objectName = "Test Name";
+        obj.readers = new String[] { "tdanford", "testuser" };
+        obj.writers = new String[] { "tdanford", "testuser" };
+        obj.storagePlatform = StoragePlatform.OPAQUEURI.getValue();
+        obj.directoryPath = "file:///path/to/file";
+        assertThat(api.insertObject(obj,"tdanford")).isNull();
+
+        ResolveRequest req = new ResolveRequest();
+        req.httpMethod = HttpMethod.PUT;
+        req.validityPeriodSeconds = 10;
+        long hits = BossApplication.getAclCache().stats().hitCount();
+        assertThat(api.resolveObject(obj.objectId,"testuser",req,new ResolveResponse())).isNull();
+        assertThat(api.resolveObject(obj.objectId,"testuser",req,new ResolveResponse())).isNull();
+        assertThat(BossApplication.getAclCache().stats().hitCount()).isGreaterThan(hits);
+
+        ObjectDesc update = new ObjectDesc();
+        update.writers = new String[] { "tdanford" };
+        assertThat(api.updateObject(update,obj.objectId,"tdanford")).isNull();
+        assertThat(api.resolveObject(obj.objectId,"testuser",req,new ResolveResponse()).mStatus)
+                .isEqualTo(Response.Status.FORBIDDEN);
+    }
+
+    @Test
+    public void testObjectCacheInvalidatedOnUpdate() {
+        ObjectDesc obj = new ObjectDesc();
+        obj.ownerId = "tdanford";
+        obj.objectName = "Test Name";
+        obj.readers = new String[] { "tdanford" };
+        obj.writers = new String[] { "tdanford" };
+        obj.storagePlatform = StoragePlatform.OPAQUEURI.getValue();
+        obj.directoryPath = "file:///path/to/file";
+        assertThat(api.insertObject(obj,"tdanford")).isNull();
+        assertThat(api.getObject(obj.objectId,"tdanford",new ObjectDesc())).isNull();
+        assertThat(BossApplication.getObjectCache().get(obj.objectId).ownerId).isEqualTo("tdanford");
+
+        ObjectDesc update = new ObjectDesc();
+        update.ownerId = "carlyeks";
+        assertThat(api.updateObject(update,obj.objectId,"tdanford")).isNull();
+        assertThat(BossApplication.getObjectCache().get(obj.objectId)).isNull();
+
+        ResolveRequest req = new ResolveRequest();
+        req.httpMethod = HttpMethod.GET;
+        req.validityPeriodSeconds = 10;
+        assertThat(api.resolveObject(obj.objectId,"tdanford",req,new ResolveResponse())).isNull();
+        assertThat(BossApplication.getObjectCache().get(obj.objectId).ownerId).isEqualTo("carlyeks");
+    }
+
+    @Test
+    public void testGroupCommitFailsOnlyTheBadCreate() throws Exception {
+        // the test configuration turns group commit on, so concurrent creates share transactions
+        final int nCreates = 20;
+        final CountDownLatch go = new CountDownLatch(1);
+        List<Future<ObjectDesc>> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(nCreates);
+        try {
+            for ( int idx = 0; idx < nCreates; ++idx ) {
+                final ObjectDesc obj = new ObjectDesc();
+                obj.ownerId = "tdanford";
+                // one name is too long for its column, which spoils whatever group it lands in
+                obj.objectName = idx == 7 ? StringUtils.repeat("x", 300) : "Grouped " + idx;
+                obj.readers = new String[] { "tdanford" };
+                obj.writers = new String[] { "tdanford" };
+                obj.storagePlatform = StoragePlatform.OPAQUEURI.getValue();
+                obj.directoryPath = "file:///path/to/grouped";
+                results.add(executor.submit(new Callable<ObjectDesc>() {
+                    @Override
+                    public ObjectDesc call() throws InterruptedException {
+                        go.await();
+                        assertThat(api.insertObject(obj,"tdanford")).isNull();
+                        return obj;
+                    }
+                }));
+            }
+            go.countDown();
+            for ( int idx = 0; idx < nCreates; ++idx ) {
+                try {
+                    ObjectDesc obj = results.get(idx).get();
+                    assertThat(idx).isNotEqualTo(7);
+                    ObjectDesc retrieved = new ObjectDesc();
+                    assertThat(api.getObject(obj.objectId,"tdanford",retrieved)).isNull();
+                    assertThat(retrieved.objectName).isEqualTo("Grouped " + idx);
+                    assertThat(retrieved.readers).containsOnly("tdanford");
+                }
+                catch ( ExecutionException e ) {
+                    assertThat(idx).isEqualTo(7);
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExportAllIncludesDeleted() throws Exception {
+        ObjectDesc obj = new ObjectDesc();
+        obj.ownerId = "tdanford";
+        obj.objectName = "Exported";
+        obj.readers = new String[] { "tdanford" };
+        obj.writers = new String[] { "tdanford" };
+        obj.storagePlatform = StoragePlatform.OPAQUEURI.getValue();
+        obj.directoryPath = "file:///path/to/exported";
+        assertThat(api.insertObject(obj,"tdanford")).isNull();
+        assertThat(api.deleteObject(obj.objectId,"tdanford")).isNull();
+
+        StringWriter out = new StringWriter();
+        long nObjects = api.exportAllObjects(out);
+        String[] lines = out.toString().split("\n");
+        assertThat(lines.length).isEqualTo((int)nObjects);
+        String exported = null;
+        for ( String line : lines )
+            if ( line.contains(obj.objectId) )
+                exported = line;
+        assertThat(exported).contains("\"active\":\"N\"").contains("\"deleteDate\":");
+    }
+
+    // Deletes whatever it's asked to, except for the keys in failKeys.
+    private static class StandInStore implements ObjectStore {
+        @Override
+        public URI generateResolveURI( String objKey, String httpMethod, long timeoutInMillis,
+                                      String contentType, String contentMD5 ) {
+            return URI.create("http://store/" + objKey);
+        }
+
+        @Override
+        public URI generateCopyURI( String objKey, String locationToCopy, long timeoutInMillis ) {
+            return URI.create("http://store/" + objKey);
+        }
+
+        @Override
+        public void deleteObject( String objKey ) {}
+
+        @Override
+        public boolean copiesServerSide() {
+            return false;
+        }
+
+        @Override
+        public void copyObject( String objKey, String locationToCopy ) {}
+
+        @Override
+        public String getCopySourceKey( String locationToCopy ) {
+            return null;
+        }
+
+        @Override
+        public boolean allowsCopyFrom( String locationToCopy ) {
+            return false;
+        }
+
+        @Override
+        public Map<String,String> deleteObjects( List<String> objKeys ) {
+            Map<String,String> errors = new HashMap<>();
+            for ( String objKey : objKeys ) {
+                if ( failKeys.contains(objKey) )
+                    errors.put(objKey, "SlowDown: try again later");
+                else
+                    deletedKeys.add(objKey);
+            }
+            return errors;
+        }
+
+        @Override
+        public String startMultipartUpload( String objKey, String contentType ) {
+            return "upload1";
+        }
+
+        @Override
+        public List<URI> generatePartURIs( String objKey, String uploadId, int partCount, long timeoutInMillis ) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void completeMultipartUpload( String objKey, String uploadId, List<String> etags ) {}
+
+        @Override
+        public void abortMultipartUpload( String objKey, String uploadId ) {}
+
+        Set<String> failKeys = new HashSet<>();
+        Set<String> deletedKeys = new HashSet<>();
+    }
+
+    @Test
+    public void testDeleteOutbox() throws Exception {
+        List<ObjectDesc> objs = new ArrayList<>();
+        for ( int idx = 0; idx < 2; ++idx ) {
+            ObjectDesc obj = new ObjectDesc();
+            obj.ownerId = "tdanford";
+            obj.objectName = "Outboxed";
+            obj.readers = new String[] { "tdanford" };
+            obj.writers = new String[] { "tdanford" };
+            obj.storagePlatform = StoragePlatform.LOCALSTORE.getValue();
+            assertThat(api.insertObject(obj,"tdanford")).isNull();
+            assertThat(api.deleteObject(obj.objectId,"tdanford")).isNull();
+            objs.add(obj);
+        }
+        // descriptors don't reveal where stored objects live
+        BossDAO dao = BossApplication.getDAO();
+        String failKey = dao.findObjectById(objs.get(0).objectId).directoryPath;
+        String deleteKey = dao.findObjectById(objs.get(1).objectId).directoryPath;
+        DeletionStatus status = new DeletionStatus();
+        assertThat(api.getDeletionStatus(objs.get(0).objectId,"tdanford",status)).isNull();
+        assertThat(status.state).isEqualTo(DeletionStatus.PENDING);
+
+        StandInStore store = new StandInStore();
+        store.failKeys.add(failKey);
+        Map<String,ObjectStore> stores = new HashMap<>();
+        stores.put(StoragePlatform.LOCALSTORE.getValue(), store);
+        DeleteOutboxConfiguration config = new DeleteOutboxConfiguration();
+        config.initialBackoffMillis = 1L;
+        config.maxAttempts = 2;
+        DeleteOutboxWorker worker = new DeleteOutboxWorker(BossApplication.getDBI(), stores, config);
+
+        assertThat(worker.drain()).isGreaterThanOrEqualTo(2);
+        assertThat(store.deletedKeys).contains(deleteKey);
+        status = new DeletionStatus();
+        assertThat(api.getDeletionStatus(objs.get(1).objectId,"tdanford",status)).isNull();
+        assertThat(status.state).isEqualTo(DeletionStatus.DONE);
+        status = new DeletionStatus();
+        assertThat(api.getDeletionStatus(objs.get(0).objectId,"tdanford",status)).isNull();
+        assertThat(status.state).isEqualTo(DeletionStatus.RETRYING);
+        assertThat(status.attempts).isEqualTo(1);
+        assertThat(status.lastError).contains("SlowDown");
+
+        // the second failure is the last one allowed
+        Thread.sleep(10L);
+        worker.drain();
+        status = new DeletionStatus();
+        assertThat(api.getDeletionStatus(objs.get(0).objectId,"tdanford",status)).isNull();
+        assertThat(status.state).isEqualTo(DeletionStatus.FAILED);
+        assertThat(status.attempts).isEqualTo(2);
+        assertThat(status.nextAttempt).isNull();
+        assertThat(store.deletedKeys).doesNotContain(failKey);
+    }
+
+    @Test
+    public void testMultipartResolve() {
+        ObjectDesc obj = new ObjectDesc();
+        obj.ownerId = "tdanford";
+        obj.sizeEstimateBytes = 25L*1024L*1024L + 1L;
+        obj.objectName = "In Parts";
+        obj.readers = new String[] { "tdanford", "testuser" };
+        obj.writers = new String[] { "tdanford" };
+        obj.storagePlatform = StoragePlatform.LOCALSTORE.getValue();
+        assertThat(api.insertObject(obj,"tdanford")).isNull();
+
+        // an upload that's already started just has its part URLs signed again, which needs no trip to the store
+        MultipartRequest req = new MultipartRequest();
+        req.validityPeriodSeconds = 60;
+        req.partSizeBytes = 5L*1024L*1024L;
+        req.uploadId = "upload1";
+        MultipartResponse resp = new MultipartResponse();
+        assertThat(api.resolveObjectForMultipartUpload(obj.objectId,"tdanford",req,resp)).isNull();
+        assertThat(resp.uploadId).isEqualTo("upload1");
+        assertThat(resp.partSizeBytes).isEqualTo(req.partSizeBytes);
+        assertThat(resp.partUrls).hasSize(6);
+        for ( int idx = 0; idx < 6; ++idx )
+            assertThat(resp.partUrls.get(idx).getRawQuery())
+                    .contains("partNumber=" + (idx+1)).contains("uploadId=upload1");
+
+        // the client knows better than the estimate
+        req.sizeBytes = 10L*1024L*1024L;
+        resp = new MultipartResponse();
+        assertThat(api.resolveObjectForMultipartUpload(obj.objectId,"tdanford",req,resp)).isNull();
+        assertThat(resp.partUrls).hasSize(2);
+
+        req.sizeBytes = 10001L*req.partSizeBytes;
+        assertThat(api.resolveObjectForMultipartUpload(obj.objectId,"tdanford",req,new MultipartResponse()).mStatus)
+                .isEqualTo(Response.Status.BAD_REQUEST);
+        req.sizeBytes = null;
+        req.partSizeBytes = 1024L;
+        assertThat(api.resolveObjectForMultipartUpload(obj.objectId,"tdanford",req,new MultipartResponse()).mStatus)
+                .isEqualTo(Response.Status.BAD_REQUEST);
+        req.partSizeBytes = 5L*1024L*1024L;
+        assertThat(api.resolveObjectForMultipartUpload(obj.objectId,"testuser",req,new MultipartResponse()).mStatus)
+                .isEqualTo(Response.Status.FORBIDDEN);
+
+        MultipartCompleteRequest complete = new MultipartCompleteRequest();
+        assertThat(api.completeMultipartUpload(obj.objectId,"upload1","tdanford",complete).mStatus)
+                .isEqualTo(Response.Status.BAD_REQUEST);
+        complete.etags = new ArrayList<>();
+        complete.etags.add("\"etag1\"");
+        assertThat(api.completeMultipartUpload(obj.objectId,"upload1","testuser",complete).mStatus)
+                .isEqualTo(Response.Status.FORBIDDEN);
+        assertThat(api.abortMultipartUpload(obj.objectId,"upload1","testuser").mStatus)
+                .isEqualTo(Response.Status.FORBIDDEN);
+    }
+
     @Test
     public void testGeneratePresignedURL() {
         testGeneratePresignedURL(null, null);
@@ -0,0 +1,83 @@
+package org.genomebridge.boss.http;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.genomebridge.boss.http.db.NameIndex;
+import org.genomebridge.boss.http.db.NameIndexConfiguration;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class NameIndexTest {
+
+    private static NameIndex index() {
+        NameIndexConfiguration config = new NameIndexConfiguration();
+        config.enabled = true;
+        config.substrings = true;
+        NameIndex index = new NameIndex(null, config);
+        index.add("1", "sample.bam");
+        index.add("2", "sample.bam.bai");
+        index.add("3", "other.bam");
+        index.add("4", "sample.vcf");
+        index.add("5", "sample.bam");
+        return index;
+    }
+
+    @Test
+    public void testPrefix() {
+        NameIndex index = index();
+        assertThat(ids(index.matchesWithPrefix("sample.b", null))).containsExactly("1", "5", "2");
+        assertThat(ids(index.matchesWithPrefix("sample", null))).containsExactly("1", "5", "2", "4");
+        assertThat(ids(index.matchesWithPrefix("zzz", null))).isEmpty();
+    }
+
+    @Test
+    public void testSubstring() {
+        NameIndex index = index();
+        assertThat(ids(index.matchesContaining(".bam", null))).containsExactly("3", "1", "5", "2");
+        assertThat(ids(index.matchesContaining("m.b", null))).containsExactly("2");
+        assertThat(ids(index.matchesContaining("xyz", null))).isEmpty();
+    }
+
+    @Test
+    public void testResume() {
+        NameIndex index = index();
+        NameIndex.Match first = index.matchesWithPrefix("sample", null).next();
+        assertThat(first.name).isEqualTo("sample.bam");
+        assertThat(first.objectId).isEqualTo("1");
+        assertThat(ids(index.matchesWithPrefix("sample", first))).containsExactly("5", "2", "4");
+        assertThat(ids(index.matchesContaining(".bam", first))).containsExactly("5", "2");
+        assertThat(ids(index.matchesWithPrefix("sample", new NameIndex.Match("sample.bam.bai", "2")))).containsExactly("4");
+
+        // a match that has since been removed still marks the place
+        index.remove("1", "sample.bam");
+        assertThat(ids(index.matchesWithPrefix("sample", first))).containsExactly("5", "2", "4");
+    }
+
+    @Test
+    public void testRemove() {
+        NameIndex index = index();
+        index.remove("1", "sample.bam");
+        assertThat(ids(index.matchesWithPrefix("sample.bam", null))).containsExactly("5", "2");
+        index.remove("5", "sample.bam");
+        assertThat(ids(index.matchesContaining("le.bam", null))).containsExactly("2");
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    private static List<String> ids( Iterator<NameIndex.Match> matches ) {
+        List<String> ids = new ArrayList<>();
+        while ( matches.hasNext() )
+            ids.add(matches.next().objectId);
+        return ids;
+    }
+
+    @Test
+    public void testDisabled() {
+        NameIndex index = new NameIndex(null, new NameIndexConfiguration());
+        index.add("1", "sample.bam");
+        assertThat(index.isEnabled()).isFalse();
+        assertThat(index.size()).isEqualTo(0);
+    }
+}
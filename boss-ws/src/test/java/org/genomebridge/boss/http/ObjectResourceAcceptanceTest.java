@@ -1,14 +1,18 @@
 package org.genomebridge.boss.http;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 
 import io.dropwizard.testing.junit.DropwizardAppRule;
 
+import org.genomebridge.boss.http.db.CheckoutCountingDataSource;
 import org.genomebridge.boss.http.models.StoragePlatform;
 import org.genomebridge.boss.http.objectstore.ObjectStoreConfiguration;
 import org.genomebridge.boss.http.service.BossAPI.CopyRequest;
 import org.genomebridge.boss.http.service.BossAPI.CopyResponse;
+import org.genomebridge.boss.http.service.BossAPI.DeletionStatus;
 import org.genomebridge.boss.http.service.BossAPI.ObjectDesc;
 import org.genomebridge.boss.http.service.BossAPI.ResolveRequest;
 import org.genomebridge.boss.http.service.BossAPI.ResolveResponse;
@@ -20,6 +24,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import java.net.HttpURLConnection;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
 
@@ -128,6 +133,104 @@ public class ObjectResourceAcceptanceTest extends AbstractTest {
         assertThat(response.getEntity(String.class)).isEqualTo(String.format(messages.get("objectDeleted"), created.objectId));
     }
 
+    @Test
+    public void testDeleteStoredObject() {
+        Client client = new Client();
+
+        // the object store delete happens later, in the background, so this no longer reaches out to the store
+        ClientResponse response = checkStatus( CREATED, createObject("Stored", "tdanford", 1010L) );
+        ObjectDesc created = response.getEntity(ObjectDesc.class);
+        String objectPath = checkHeader(response, "Location");
+
+        response = checkStatus( NOT_FOUND, get(client, objectPath + "/deletion") );
+        assertThat(response.getEntity(String.class)).isEqualTo(String.format(messages.get("notDeleted"), created.objectId));
+
+        checkStatus( OK, delete(client, objectPath) );
+        DeletionStatus status = checkStatus( OK, get(client, objectPath + "/deletion") ).getEntity(DeletionStatus.class);
+        assertThat(status.objectId).isEqualTo(created.objectId);
+        assertThat(status.state).isEqualTo(DeletionStatus.PENDING);
+        assertThat(status.attempts).isEqualTo(0);
+    }
+
+    @Test
+    public void testServerSideCopyChecksSource() {
+        Client client = new Client();
+
+        // localStore is S3, which copies within the store rather than signing a URL for the client
+        ClientResponse response = checkStatus( CREATED, createObject("Copied", "tdanford", 1010L) );
+        ObjectDesc created = response.getEntity(ObjectDesc.class);
+        String objectPath = checkHeader(response, "Location");
+
+        CopyRequest req = new CopyRequest();
+        req.locationToCopy = "no-bucket-here";
+        response = checkStatus( BAD_REQUEST, post(client, objectPath + "/copy", req) );
+        assertThat(response.getEntity(String.class)).isEqualTo(messages.get("copySource"));
+
+        // the copy is made with BOSS's credentials, so only buckets it's configured to allow can be copied from
+        req.locationToCopy = "/elsewhere/some/key";
+        response = checkStatus( FORBIDDEN, post(client, objectPath + "/copy", req) );
+        assertThat(response.getEntity(String.class))
+                .isEqualTo(String.format(messages.get("copySourceNotAllowed"), req.locationToCopy));
+
+        // and within the store's own bucket, only BOSS objects the user can read
+        req.locationToCopy = "/bossbucket/not-an-object";
+        response = checkStatus( NOT_FOUND, post(client, objectPath + "/copy", req) );
+        assertThat(response.getEntity(String.class))
+                .isEqualTo(String.format(messages.get("copySourceNotObject"), req.locationToCopy));
+        String srcId = checkStatus( CREATED, createObject("Source", "carlyeks", 1010L) ).getEntity(ObjectDesc.class).objectId;
+        req.locationToCopy = "/bossbucket/" + BossApplication.getDAO().findObjectById(srcId).directoryPath;
+        String targetPath = checkHeader(checkStatus( CREATED, createObject("Copied", "tdanford", 1010L) ), "Location");
+        response = checkStatus( FORBIDDEN, post(client, targetPath + "/copy", "tdanford", req) );
+        assertThat(response.getEntity(String.class))
+                .isEqualTo(String.format(messages.get("noReadPermission"), srcId, "tdanford"));
+
+        // a copy that's turned down doesn't count as a resolve
+        BossApplication.getResolveDateWriter().flush();
+        assertThat(BossApplication.getDAO().findObjectById(created.objectId).resolveDate).isNull();
+
+        response = checkStatus( NOT_FOUND, get(client, objectPath + "/copy/" + created.objectId) );
+        assertThat(response.getEntity(String.class)).isEqualTo(String.format(messages.get("copyJobNotFound"), created.objectId));
+    }
+
+    @Test
+    public void testOneConnectionPerRequest() throws InterruptedException {
+        Client client = new Client();
+        Histogram checkouts = RULE.getEnvironment().metrics().histogram(
+                MetricRegistry.name(CheckoutCountingDataSource.class, "checkouts-per-request"));
+        long nRequests = checkouts.getCount();
+        long[] before = checkouts.getSnapshot().getValues();
+
+        String objectPath = checkHeader(checkStatus(CREATED, createObject("Test Name", "tdanford", 1010L)), "Location");
+        check200( get(client, objectPath) );
+
+        // the filter records its count after the response has gone out
+        for ( int iii = 0; iii < 50 && checkouts.getCount() < nRequests+2; ++iii )
+            Thread.sleep(20L);
+        assertThat(checkouts.getCount()).isEqualTo(nRequests+2);
+
+        // the histogram is shared by the whole app, so look only at the samples these two requests added;
+        // a cached read may take no connection at all
+        long[] added = addedSamples(before, checkouts.getSnapshot().getValues());
+        assertThat(added).hasSize(2);
+        assertThat(added[1]).isLessThanOrEqualTo(1L);
+    }
+
+    // The values in after that aren't in before, in order.  Both are sorted, as Snapshot.getValues() returns them.
+    private static long[] addedSamples( long[] before, long[] after ) {
+        long[] added = new long[after.length];
+        int nAdded = 0;
+        int idx = 0;
+        for ( long value : after ) {
+            while ( idx < before.length && before[idx] < value )
+                ++idx;
+            if ( idx < before.length && before[idx] == value )
+                ++idx;
+            else
+                added[nAdded++] = value;
+        }
+        return Arrays.copyOf(added, nAdded);
+    }
+
     @Test
     public void testInvalidObjectDescribe() {
         Client client = new Client();
@@ -367,6 +470,71 @@ public class ObjectResourceAcceptanceTest extends AbstractTest {
         assertThat(rr.contentMD5Hex).isNull();
     }
 
+    @Test
+    public void testFileStoreObject() {
+        Client client = new Client();
+        ClientResponse response = checkStatus( CREATED,
+                createObject("test file store object", "tdanford", StoragePlatform.FILESTORE.getValue(), null, 10L));
+        String objectPath = checkHeader( response, "Location" );
+
+        ResolveRequest req = new ResolveRequest();
+        req.httpMethod = HttpMethod.PUT;
+        req.validityPeriodSeconds = 60;
+        req.contentType = MediaType.APPLICATION_OCTET_STREAM;
+        ResolveResponse rr = check200( post(client, objectPath + "/resolve", req) ).getEntity(ResolveResponse.class);
+        assertThat(rr.objectUrl.toString()).startsWith(RULE.getConfiguration().getFileStoreConfiguration().endpoint);
+        byte[] content = "0123456789".getBytes();
+        response = check200( client.resource(rr.objectUrl).type(MediaType.APPLICATION_OCTET_STREAM)
+                                     .put(ClientResponse.class, content) );
+        assertThat(response.getHeaders().getFirst("ETag")).isEqualTo("\"781e5e245d69b566979b86e28d23f2c7\"");
+        checkStatus( 413, client.resource(rr.objectUrl).type(MediaType.APPLICATION_OCTET_STREAM)
+                                .put(ClientResponse.class, new byte[1024*1024+1]) );
+
+        req.httpMethod = HttpMethod.GET;
+        req.contentType = null;
+        rr = check200( post(client, objectPath + "/resolve", req) ).getEntity(ResolveResponse.class);
+        response = check200( client.resource(rr.objectUrl).get(ClientResponse.class) );
+        assertThat(response.getHeaders().getFirst("Content-Length")).isEqualTo("10");
+        assertThat(response.getEntity(byte[].class)).isEqualTo(content);
+        // the file is sent as it is, even to a client that would take it gzipped
+        response = check200( client.resource(rr.objectUrl).header("Accept-Encoding", "gzip").get(ClientResponse.class) );
+        assertThat(response.getHeaders().getFirst("Content-Encoding")).isNull();
+        assertThat(response.getEntity(byte[].class)).isEqualTo(content);
+        response = checkStatus( 206, client.resource(rr.objectUrl).header("Range", "bytes=2-5").get(ClientResponse.class) );
+        assertThat(response.getHeaders().getFirst("Content-Range")).isEqualTo("bytes 2-5/10");
+        assertThat(response.getEntity(String.class)).isEqualTo("2345");
+        checkStatus( 416, client.resource(rr.objectUrl).header("Range", "bytes=10-").get(ClientResponse.class) );
+
+        // the signature is good for a GET of this object, and nothing else
+        checkStatus( FORBIDDEN, client.resource(rr.objectUrl).put(ClientResponse.class, content) );
+        String tampered = rr.objectUrl.toString().replace("Expires=", "Expires=1");
+        checkStatus( FORBIDDEN, client.resource(tampered).get(ClientResponse.class) );
+
+        // a copy's source has to be an object in the store that the user can read
+        CopyRequest copyReq = new CopyRequest();
+        copyReq.locationToCopy = rr.objectUrl.getPath().substring("/files/fileStore".length());
+        response = checkStatus( CREATED,
+                createObject("file store copy", "carlyeks", StoragePlatform.FILESTORE.getValue(), null, 10L));
+        String copyPath = checkHeader( response, "Location" );
+        response = checkStatus( FORBIDDEN, post(client, copyPath + "/copy", "carlyeks", copyReq) );
+        String sourceId = objectPath.substring(objectPath.lastIndexOf('/') + 1);
+        assertThat(response.getEntity(String.class))
+                .isEqualTo(String.format(messages.get("noReadPermission"), sourceId, "carlyeks"));
+        CopyResponse copyResp = check200( post(client, copyPath + "/copy", "testuser", copyReq) ).getEntity(CopyResponse.class);
+        assertThat(copyResp.status).isEqualTo(CopyResponse.DONE);
+        rr = check200( post(client, copyPath + "/resolve", "carlyeks", req) ).getEntity(ResolveResponse.class);
+        assertThat(check200( client.resource(rr.objectUrl).get(ClientResponse.class) ).getEntity(byte[].class))
+                .isEqualTo(content);
+
+        CopyRequest badReq = new CopyRequest();
+        badReq.locationToCopy = "/some/file";
+        response = checkStatus( NOT_FOUND, post(client, copyPath + "/copy", "testuser", badReq) );
+        assertThat(response.getEntity(String.class))
+                .isEqualTo(String.format(messages.get("copySourceNotObject"), badReq.locationToCopy));
+        badReq.locationToCopy = "/../outside";
+        checkStatus( BAD_REQUEST, post(client, copyPath + "/copy", "testuser", badReq) );
+    }
+
     @Test
     public void testIllegalObjectResolve() {
         Client client = new Client();
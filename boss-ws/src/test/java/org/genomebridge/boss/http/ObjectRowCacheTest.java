@@ -0,0 +1,97 @@
+package org.genomebridge.boss.http;
+
+import org.genomebridge.boss.http.db.ObjectRow;
+import org.genomebridge.boss.http.db.ObjectRowCache;
+import org.genomebridge.boss.http.db.ObjectRowCacheConfiguration;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ObjectRowCacheTest {
+
+    private static ObjectRowCache cache( long maxEntries ) {
+        ObjectRowCacheConfiguration config = new ObjectRowCacheConfiguration();
+        config.maxEntries = maxEntries;
+        config.segments = 1;
+        config.slotBytes = 256;
+        return new ObjectRowCache(null, config);
+    }
+
+    private static ObjectRow row( String objectId ) {
+        ObjectRow row = new ObjectRow();
+        row.objectId = objectId;
+        row.objectName = "name-" + objectId;
+        row.storagePlatform = "opaqueURI";
+        row.directoryPath = "file:///path/to/" + objectId;
+        row.ownerId = "me";
+        row.active = "Y";
+        row.createdBy = "me";
+        row.createDate = new Timestamp(1400000000123L);
+        return row;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ObjectRowCache cache = cache(10);
+        ObjectRow row = row("a");
+        row.createDate.setNanos(123456789);
+        cache.put(row, cache.stamp("a"));
+
+        ObjectRow cached = cache.get("a");
+        assertThat(cached.objectId).isEqualTo("a");
+        assertThat(cached.objectName).isEqualTo(row.objectName);
+        assertThat(cached.directoryPath).isEqualTo(row.directoryPath);
+        assertThat(cached.active).isEqualTo("Y");
+        assertThat(cached.createDate).isEqualTo(row.createDate);
+        assertThat(cached.sizeEstimateBytes).isNull();
+        assertThat(cached.modifyDate).isNull();
+        assertThat(cache.get("b")).isNull();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ObjectRowCache cache = cache(2);
+        cache.put(row("a"), cache.stamp("a"));
+        cache.put(row("b"), cache.stamp("b"));
+        assertThat(cache.get("a")).isNotNull();
+        cache.put(row("c"), cache.stamp("c"));
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("c")).isNotNull();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testInvalidateDropsStalePut() {
+        ObjectRowCache cache = cache(10);
+        cache.put(row("a"), cache.stamp("a"));
+        long stamp = cache.stamp("a");
+        cache.invalidate("a");
+        assertThat(cache.get("a")).isNull();
+
+        // a row read before the invalidation mustn't be cached
+        cache.put(row("a"), stamp);
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    public void testOversizedRowNotCached() {
+        ObjectRowCache cache = cache(10);
+        ObjectRow row = row("a");
+        cache.put(row, cache.stamp("a"));
+        row.directoryPath = new String(new char[300]).replace('\0', 'x');
+        cache.put(row, cache.stamp("a"));
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    public void testDisabled() {
+        ObjectRowCache cache = cache(0);
+        cache.put(row("a"), cache.stamp("a"));
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get("a")).isNull();
+    }
+}
@@ -0,0 +1,108 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class CachingObjectStoreTest {
+
+    // Hands out a different URL for every call, and remembers the expirations it was asked for.
+    private static class CountingStore implements ObjectStore {
+        @Override
+        public URI generateResolveURI( String objKey, String httpMethod, long timeoutInMillis,
+                                      String contentType, String contentMD5 ) {
+            timeouts.add(timeoutInMillis);
+            return URI.create("http://store/" + objKey + "?n=" + timeouts.size());
+        }
+
+        @Override
+        public URI generateCopyURI( String objKey, String locationToCopy, long timeoutInMillis ) {
+            return URI.create("http://store/" + objKey + "?copy");
+        }
+
+        @Override
+        public void deleteObject( String objKey ) {}
+
+        @Override
+        public boolean copiesServerSide() {
+            return false;
+        }
+
+        @Override
+        public void copyObject( String objKey, String locationToCopy ) {}
+
+        @Override
+        public String getCopySourceKey( String locationToCopy ) {
+            return null;
+        }
+
+        @Override
+        public boolean allowsCopyFrom( String locationToCopy ) {
+            return false;
+        }
+
+        @Override
+        public Map<String,String> deleteObjects( List<String> objKeys ) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public String startMultipartUpload( String objKey, String contentType ) {
+            return "upload1";
+        }
+
+        @Override
+        public List<URI> generatePartURIs( String objKey, String uploadId, int partCount, long timeoutInMillis ) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void completeMultipartUpload( String objKey, String uploadId, List<String> etags ) {}
+
+        @Override
+        public void abortMultipartUpload( String objKey, String uploadId ) {}
+
+        List<Long> timeouts = new ArrayList<>();
+    }
+
+    private static CachingObjectStore store( CountingStore delegate ) {
+        UrlCacheConfiguration config = new UrlCacheConfiguration();
+        config.maxEntries = 100;
+        config.bucketSeconds = 60;
+        return new CachingObjectStore(delegate, config);
+    }
+
+    @Test
+    public void testSameBucketSameURL() {
+        CountingStore delegate = new CountingStore();
+        CachingObjectStore store = store(delegate);
+        long timeout = 1400000010000L;
+
+        URI first = store.generateResolveURI("key", "GET", timeout, null, null);
+        assertThat(store.generateResolveURI("key", "GET", timeout + 5000L, null, null)).isEqualTo(first);
+        assertThat(delegate.timeouts).hasSize(1);
+        // snapped up to the minute, so at least as long as asked for
+        assertThat(delegate.timeouts.get(0)).isEqualTo(1400000040000L);
+    }
+
+    @Test
+    public void testDifferentRequestsDifferentURLs() {
+        CountingStore delegate = new CountingStore();
+        CachingObjectStore store = store(delegate);
+        long timeout = 1400000010000L;
+
+        URI get = store.generateResolveURI("key", "GET", timeout, null, null);
+        assertThat(store.generateResolveURI("key", "PUT", timeout, null, null)).isNotEqualTo(get);
+        assertThat(store.generateResolveURI("key", "GET", timeout, "text/plain", null)).isNotEqualTo(get);
+        assertThat(store.generateResolveURI("other", "GET", timeout, null, null)).isNotEqualTo(get);
+        // the next bucket needs a URL that lasts longer
+        assertThat(store.generateResolveURI("key", "GET", timeout + 60000L, null, null)).isNotEqualTo(get);
+        assertThat(delegate.timeouts).hasSize(5);
+    }
+}
@@ -0,0 +1,139 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import javax.ws.rs.HttpMethod;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Fail.fail;
+
+public class FileObjectStoreTest {
+
+    private static FileObjectStore store() {
+        ObjectStoreConfiguration config = new ObjectStoreConfiguration();
+        config.password = "secret";
+        config.bucket = "target/filestore-test/" + UUID.randomUUID();
+        config.endpoint = "http://localhost:8180/";
+        config.type = "FILE";
+        return new FileObjectStore(config, "/files/fileStore");
+    }
+
+    private static String param( URI uri, String name ) {
+        for ( String param : uri.getRawQuery().split("&") )
+            if ( param.startsWith(name + "=") )
+                return param.substring(name.length() + 1);
+        return null;
+    }
+
+    @Test
+    public void testSignatures() {
+        FileObjectStore store = store();
+        long timeout = System.currentTimeMillis() + 60000L;
+        URI uri = store.generateResolveURI("dir/my key", HttpMethod.PUT, timeout, "text/plain", "3q2+7w==");
+        assertThat(uri.getRawPath()).isEqualTo("/files/fileStore/dir/my%20key");
+        long expires = Long.parseLong(param(uri, "Expires"));
+        String signature = param(uri, "Signature");
+
+        assertThat(store.checkSignature("dir/my key", "PUT", expires, "text/plain", "3q2+7w==", null, 0, signature)).isTrue();
+        assertThat(store.checkSignature("dir/my key", "GET", expires, "text/plain", "3q2+7w==", null, 0, signature)).isFalse();
+        assertThat(store.checkSignature("dir/my key", "PUT", expires, null, "3q2+7w==", null, 0, signature)).isFalse();
+        assertThat(store.checkSignature("dir/other", "PUT", expires, "text/plain", "3q2+7w==", null, 0, signature)).isFalse();
+        assertThat(store.checkSignature("dir/my key", "PUT", expires+1, "text/plain", "3q2+7w==", null, 0, signature)).isFalse();
+
+        // a GET has no body, so what the resolve said about one isn't signed
+        uri = store.generateResolveURI("dir/my key", HttpMethod.GET, timeout, "text/plain", "3q2+7w==");
+        assertThat(store.checkSignature("dir/my key", "GET", Long.parseLong(param(uri, "Expires")), null, null, null, 0,
+                                        param(uri, "Signature"))).isTrue();
+
+        // expired
+        uri = store.generateResolveURI("key", HttpMethod.GET, System.currentTimeMillis() - 2000L, null, null);
+        assertThat(store.checkSignature("key", "GET", Long.parseLong(param(uri, "Expires")), null, null, null, 0,
+                                        param(uri, "Signature"))).isFalse();
+    }
+
+    @Test
+    public void testKeysStayInTheStore() {
+        FileObjectStore store = store();
+        for ( String key : new String[] { "../escape", "a/../../escape", ".uploads/x", "/etc/passwd", "." } ) {
+            try {
+                store.getPath(key);
+                fail(key + " should have been refused");
+            }
+            catch ( ObjectStoreException e ) {
+                assertThat(e.getMessage()).contains(key);
+            }
+        }
+        assertThat(store.getPath("a/./b").endsWith(Paths.get("a/b"))).isTrue();
+    }
+
+    @Test
+    public void testCopyAndDelete() throws Exception {
+        FileObjectStore store = store();
+        Path source = store.getPath("src/file");
+        Files.createDirectories(source.getParent());
+        Files.write(source, "contents".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(store.getCopySourceKey("/src/file")).isEqualTo("src/file");
+        assertThat(store.allowsCopyFrom("/src/file")).isFalse();
+        store.copyObject("copy", "/src/file");
+        assertThat(new String(Files.readAllBytes(store.getPath("copy")), StandardCharsets.UTF_8)).isEqualTo("contents");
+
+        assertThat(store.deleteObjects(Arrays.asList("copy", "never-written"))).isEmpty();
+        assertThat(Files.exists(store.getPath("copy"))).isFalse();
+        assertThat(store.deleteObjects(Arrays.asList("../escape"))).containsKey("../escape");
+    }
+
+    @Test
+    public void testMultipartUpload() throws Exception {
+        FileObjectStore store = store();
+        String uploadId = store.startMultipartUpload("assembled", null);
+        List<URI> parts = store.generatePartURIs("assembled", uploadId, 3, System.currentTimeMillis() + 60000L);
+        assertThat(parts).hasSize(3);
+        assertThat(param(parts.get(2), "partNumber")).isEqualTo("3");
+        assertThat(param(parts.get(2), "uploadId")).isEqualTo(uploadId);
+
+        String[] etags = new String[3];
+        for ( int partNumber = 1; partNumber <= 3; ++partNumber ) {
+            Path part = store.getPartPath(uploadId, partNumber);
+            Files.write(part, ("part" + partNumber + ";").getBytes(StandardCharsets.UTF_8));
+            etags[partNumber-1] = FileObjectStore.getETag(part);
+        }
+        assertThat(etags[0]).isEqualTo("\"a4706200f6afccee10035c43a4221cb1\""); // MD5 of "part1;"
+        try {
+            store.completeMultipartUpload("assembled", uploadId, Arrays.asList(etags[0], "\"wrong\"", etags[2]));
+            fail("a wrong ETag should have failed the upload");
+        }
+        catch ( ObjectStoreException e ) {
+            assertThat(e.getMessage()).contains("part 2");
+        }
+        assertThat(Files.exists(store.getPath("assembled"))).isFalse();
+
+        store.completeMultipartUpload("assembled", uploadId, Arrays.asList(etags));
+        assertThat(new String(Files.readAllBytes(store.getPath("assembled")), StandardCharsets.UTF_8))
+                .isEqualTo("part1;part2;part3;");
+        assertThat(store.getPartPath(uploadId, 1)).isNull();
+    }
+
+    @Test
+    public void testRanges() {
+        assertThat(FileStoreServlet.parseRange(null, 10L)).isNull();
+        assertThat(FileStoreServlet.parseRange("bytes=2-5", 10L)).isEqualTo(new long[] { 2L, 5L });
+        assertThat(FileStoreServlet.parseRange("bytes=2-", 10L)).isEqualTo(new long[] { 2L, 9L });
+        assertThat(FileStoreServlet.parseRange("bytes=-3", 10L)).isEqualTo(new long[] { 7L, 9L });
+        assertThat(FileStoreServlet.parseRange("bytes=-30", 10L)).isEqualTo(new long[] { 0L, 9L });
+        assertThat(FileStoreServlet.parseRange("bytes=5-100", 10L)).isEqualTo(new long[] { 5L, 9L });
+        assertThat(FileStoreServlet.parseRange("bytes=10-", 10L)).isEmpty();
+        assertThat(FileStoreServlet.parseRange("bytes=5-2", 10L)).isNull();
+        assertThat(FileStoreServlet.parseRange("bytes=0-1,4-5", 10L)).isNull();
+        assertThat(FileStoreServlet.parseRange("lines=1-2", 10L)).isNull();
+    }
+}
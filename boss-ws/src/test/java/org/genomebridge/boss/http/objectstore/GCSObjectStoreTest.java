@@ -0,0 +1,251 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.HttpMethod;
+import javax.xml.bind.DatatypeConverter;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CharStreams;
+import com.sun.jersey.api.client.Client;
+
+import io.dropwizard.client.JerseyClientBuilder;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class GCSObjectStoreTest {
+
+    private static ObjectStoreConfiguration config() {
+        ObjectStoreConfiguration config = new ObjectStoreConfiguration();
+        config.username = "test@developer.gserviceaccount.com";
+        config.endpoint = "https://storage.googleapis.com";
+        config.bucket = "bossbucket";
+        config.type = "GCS";
+        return config;
+    }
+
+    @Test
+    public void testConcurrentSignaturesVerify() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair keyPair = generator.generateKeyPair();
+        final GCSObjectStore store = new GCSObjectStore(config(), keyPair.getPrivate());
+        final long expires = 1400000000000L;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<URI>> futures = new ArrayList<>();
+        try {
+            for ( int idx = 0; idx < 40; ++idx ) {
+                futures.add(executor.submit(new Callable<URI>() {
+                    @Override
+                    public URI call() {
+                        return store.generateResolveURI("key", HttpMethod.GET, expires, null, null);
+                    }
+                }));
+            }
+            URI first = futures.get(0).get();
+            for ( Future<URI> future : futures )
+                assertThat(future.get()).isEqualTo(first);
+
+            String query = first.getRawQuery();
+            String sig = query.substring(query.indexOf("&Signature=") + 11);
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update(("GET\n\n\n" + expires/1000L + "\n/bossbucket/key").getBytes(StandardCharsets.UTF_8));
+            byte[] sigBytes = DatatypeConverter.parseBase64Binary(URLDecoder.decode(sig, "UTF-8"));
+            assertThat(verifier.verify(sigBytes)).isTrue();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeletesReuseConnections() throws Exception {
+        // a stand-in for GCS that refuses to delete "denied", and notes where each request came from
+        final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        Server server = new Server(new InetSocketAddress("localhost", 0));
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle( String target, Request baseRequest, HttpServletRequest request,
+                                HttpServletResponse response ) throws IOException {
+                clientPorts.add(request.getRemotePort());
+                int nInFlight = inFlight.incrementAndGet();
+                while ( nInFlight > maxInFlight.get() )
+                    maxInFlight.compareAndSet(maxInFlight.get(), nInFlight);
+                try {
+                    Thread.sleep(10L);
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                if ( target.endsWith("/denied") ) {
+                    response.setStatus(403);
+                    response.getWriter().write("AccessDenied");
+                }
+                else
+                    response.setStatus(204);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ObjectStoreConfiguration config = config();
+            config.endpoint = "http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort();
+            config.signingMode = "HMAC";
+            config.password = "secret";
+            // fewer than the executor has, to see that no more deletes than this are sent at once
+            config.httpClient.setMaxThreads(2);
+            Client client = new JerseyClientBuilder(new MetricRegistry()).using(config.httpClient)
+                    .using(executor, new ObjectMapper()).build("gcs-test");
+            GCSObjectStore store = new GCSObjectStore(config, client);
+
+            for ( int idx = 0; idx < 10; ++idx )
+                store.deleteObject("key" + idx);
+            assertThat(clientPorts).hasSize(1);
+
+            Map<String,String> errors = store.deleteObjects(Arrays.asList("a", "denied", "b", "c", "d", "e", "f", "g"));
+            assertThat(errors).hasSize(1);
+            assertThat(errors.get("denied")).isEqualTo("AccessDenied");
+            assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+            store.stop();
+        }
+        finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testMultipartUpload() throws Exception {
+        // a stand-in for GCS's XML multipart API, that notes the requests made of it
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        Server server = new Server(new InetSocketAddress("localhost", 0));
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle( String target, Request baseRequest, HttpServletRequest request,
+                                HttpServletResponse response ) throws IOException {
+                String body = CharStreams.toString(request.getReader());
+                requests.add(request.getMethod() + " " + target + " " + request.getParameter("uploadId") + " " + body);
+                if ( request.getParameter("uploads") != null ) {
+                    assertThat(request.getContentType()).isEqualTo("text/plain");
+                    response.setStatus(200);
+                    response.getWriter().write("<InitiateMultipartUploadResult><Bucket>bossbucket</Bucket>" +
+                            "<Key>key</Key><UploadId>upload1</UploadId></InitiateMultipartUploadResult>");
+                }
+                else if ( request.getMethod().equals("DELETE") )
+                    response.setStatus(204);
+                else
+                    response.setStatus(200);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        try {
+            ObjectStoreConfiguration config = config();
+            config.endpoint = "http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort();
+            config.signingMode = "HMAC";
+            config.password = "secret";
+            GCSObjectStore store = new GCSObjectStore(config);
+
+            String uploadId = store.startMultipartUpload("key", "text/plain");
+            assertThat(uploadId).isEqualTo("upload1");
+
+            List<URI> parts = store.generatePartURIs("key", uploadId, 3, System.currentTimeMillis() + 60000L);
+            assertThat(parts).hasSize(3);
+            for ( int idx = 0; idx < 3; ++idx ) {
+                assertThat(parts.get(idx).getPath()).isEqualTo("/bossbucket/key");
+                assertThat(parts.get(idx).getQuery()).contains("partNumber=" + (idx+1)).contains("uploadId=upload1");
+            }
+
+            store.completeMultipartUpload("key", uploadId, Arrays.asList("\"e1\"", "\"e2\"", "\"e3\""));
+            store.abortMultipartUpload("key", uploadId);
+            assertThat(requests).containsExactly(
+                    "POST /bossbucket/key null ",
+                    "POST /bossbucket/key upload1 <CompleteMultipartUpload>" +
+                        "<Part><PartNumber>1</PartNumber><ETag>\"e1\"</ETag></Part>" +
+                        "<Part><PartNumber>2</PartNumber><ETag>\"e2\"</ETag></Part>" +
+                        "<Part><PartNumber>3</PartNumber><ETag>\"e3\"</ETag></Part></CompleteMultipartUpload>",
+                    "DELETE /bossbucket/key upload1 ");
+            store.stop();
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testHmacSigning() throws Exception {
+        GCSV4Signer signer = new GCSV4Signer("GOOGACCESSID", "secret+/key", "https://storage.googleapis.com");
+        long now = 1553644800000L; // 2019-03-27T00:00:00Z
+        SortedMap<String,String> headers = new TreeMap<>();
+        headers.put("Content-Type", "text/plain");
+        URI uri = signer.sign("PUT", "/bossbucket/my key", now, now + 3600000L, headers, null);
+
+        String canonicalQuery = "X-Goog-Algorithm=GOOG4-HMAC-SHA256" +
+                "&X-Goog-Credential=GOOGACCESSID%2F20190327%2Fauto%2Fstorage%2Fgoog4_request" +
+                "&X-Goog-Date=20190327T000000Z&X-Goog-Expires=3600&X-Goog-SignedHeaders=content-type%3Bhost";
+        String canonicalRequest = "PUT\n/bossbucket/my%20key\n" + canonicalQuery + "\n" +
+                "content-type:text/plain\nhost:storage.googleapis.com\n\ncontent-type;host\nUNSIGNED-PAYLOAD";
+        String stringToSign = "GOOG4-HMAC-SHA256\n20190327T000000Z\n20190327/auto/storage/goog4_request\n" +
+                hex(MessageDigest.getInstance("SHA-256").digest(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+        byte[] key = hmac("GOOG4secret+/key".getBytes(StandardCharsets.UTF_8), "20190327");
+        for ( String part : new String[] { "auto", "storage", "goog4_request" } )
+            key = hmac(key, part);
+
+        assertThat(uri.toString()).isEqualTo("https://storage.googleapis.com/bossbucket/my%20key?" + canonicalQuery +
+                "&X-Goog-Signature=" + hex(hmac(key, stringToSign)));
+
+        // the next day's URL must use the next day's key
+        URI tomorrow = signer.sign("PUT", "/bossbucket/my key", now + 86400000L, now + 90000000L, headers, null);
+        assertThat(tomorrow.getRawQuery()).contains("%2F20190328%2F");
+        assertThat(tomorrow.getRawQuery()).doesNotContain(uri.getRawQuery().substring(uri.getRawQuery().indexOf("X-Goog-Signature")));
+    }
+
+    private static byte[] hmac( byte[] key, String data ) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hex( byte[] bytes ) {
+        return DatatypeConverter.printHexBinary(bytes).toLowerCase();
+    }
+}
@@ -0,0 +1,95 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.HttpMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of GCS signed-URL generation, which is where the CPU goes on a cloudStore resolve.
+ *
+ * The RSA signature itself sets the ceiling, so rsaSignOnly measures a bare, already-initialized
+ * Signature as a baseline.  The target is for signGet to stay within 15% of it; anything much lower
+ * means per-call setup (key loading, Signature.getInstance, initSign) has crept back in.  hmacSignGet
+ * measures the HMAC signing mode, which should be well over an order of magnitude faster.  Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=org.genomebridge.boss.http.objectstore.GCSSigningBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GCSSigningBenchmark {
+
+    private GCSObjectStore store;
+    private GCSObjectStore hmacStore;
+    private long expires;
+    private Signature signer;
+    private byte[] stringToSign;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        ObjectStoreConfiguration config = new ObjectStoreConfiguration();
+        config.username = "benchmark@developer.gserviceaccount.com";
+        config.endpoint = "https://storage.googleapis.com";
+        config.bucket = "bossbucket";
+        config.type = "GCS";
+        PrivateKey key = generator.generateKeyPair().getPrivate();
+        store = new GCSObjectStore(config, key);
+        ObjectStoreConfiguration hmacConfig = new ObjectStoreConfiguration();
+        hmacConfig.username = "GOOGBENCHMARKACCESSID";
+        hmacConfig.password = "benchmarksecret";
+        hmacConfig.endpoint = config.endpoint;
+        hmacConfig.bucket = config.bucket;
+        hmacConfig.type = config.type;
+        hmacConfig.signingMode = "HMAC";
+        hmacStore = new GCSObjectStore(hmacConfig);
+        expires = System.currentTimeMillis() + 3600000L;
+        signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(key);
+        stringToSign = ("GET\n\n\n" + expires/1000L + "\n/bossbucket/00000000-0000-0000-0000-000000000000-f00d")
+                            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object rsaSignOnly() throws Exception {
+        signer.update(stringToSign);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public Object signGet() {
+        return store.generateResolveURI("00000000-0000-0000-0000-000000000000-f00d", HttpMethod.GET,
+                                        expires, null, null);
+    }
+
+    @Benchmark
+    public Object hmacSignGet() {
+        return hmacStore.generateResolveURI("00000000-0000-0000-0000-000000000000-f00d", HttpMethod.GET,
+                                            expires, null, null);
+    }
+
+    public static void main( String[] args ) throws Exception {
+        new Runner(new OptionsBuilder().include(GCSSigningBenchmark.class.getSimpleName()).build()).run();
+    }
+}
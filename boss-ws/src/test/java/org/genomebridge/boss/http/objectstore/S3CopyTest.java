@@ -0,0 +1,166 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Fail.fail;
+
+public class S3CopyTest {
+
+    private static final long MIB = 1024L*1024L;
+
+    // Plays S3 for the calls a copy makes, and remembers them.
+    private static class FakeS3 implements InvocationHandler {
+        FakeS3( long sourceSize ) {
+            mSourceSize = sourceSize;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) {
+            calls.add(method.getName());
+            switch ( method.getName() ) {
+            case "getObjectMetadata":
+                assertThat(args).containsOnly("srcbucket", "path/to/src.bam");
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(mSourceSize);
+                metadata.setContentType("application/octet-stream");
+                return metadata;
+            case "copyObject":
+                copyRequest = (CopyObjectRequest)args[0];
+                return null;
+            case "initiateMultipartUpload":
+                InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+                initiated.setUploadId("upload1");
+                return initiated;
+            case "copyPart":
+                CopyPartRequest part = (CopyPartRequest)args[0];
+                if ( part.getPartNumber() == failPart )
+                    throw new AmazonServiceException("SlowDown");
+                synchronized ( this ) {
+                    parts.add(part);
+                }
+                CopyPartResult result = new CopyPartResult();
+                result.setPartNumber(part.getPartNumber());
+                result.setETag("etag" + part.getPartNumber());
+                return result;
+            case "completeMultipartUpload":
+                completeRequest = (CompleteMultipartUploadRequest)args[0];
+                return null;
+            case "abortMultipartUpload":
+                abortRequest = (AbortMultipartUploadRequest)args[0];
+                return null;
+            default:
+                return null;
+            }
+        }
+
+        private long mSourceSize;
+        int failPart;
+        List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        List<CopyPartRequest> parts = new ArrayList<>();
+        CopyObjectRequest copyRequest;
+        CompleteMultipartUploadRequest completeRequest;
+        AbortMultipartUploadRequest abortRequest;
+    }
+
+    private static S3ObjectStore store( FakeS3 fake ) {
+        ObjectStoreConfiguration config = new ObjectStoreConfiguration();
+        config.endpoint = "https://ecsserver.broadinstitute.org";
+        config.bucket = "bossbucket";
+        config.type = "S3";
+        config.copy.multipartThresholdBytes = 100L*MIB;
+        config.copy.partSizeBytes = 32L*MIB;
+        config.copy.threads = 4;
+        config.copy.sourceBuckets.add("srcbucket");
+        AmazonS3 client = (AmazonS3)Proxy.newProxyInstance(AmazonS3.class.getClassLoader(),
+                                                           new Class<?>[] { AmazonS3.class }, fake);
+        return new S3ObjectStore(config, client);
+    }
+
+    @Test
+    public void testCopySources() {
+        S3ObjectStore store = store(new FakeS3(0L));
+        assertThat(store.getCopySourceKey("/bossbucket/path/to/obj")).isEqualTo("path/to/obj");
+        assertThat(store.getCopySourceKey("/srcbucket/path/to/src.bam")).isNull();
+        assertThat(store.allowsCopyFrom("/srcbucket/path/to/src.bam")).isTrue();
+        assertThat(store.allowsCopyFrom("/otherbucket/path/to/src.bam")).isFalse();
+        try {
+            store.getCopySourceKey("/bossbucket");
+            fail("a location without a key should have been refused");
+        }
+        catch ( ObjectStoreException e ) {
+            assertThat(e.getMessage()).contains("/bucket/key");
+        }
+    }
+
+    @Test
+    public void testSmallCopyIsOneRequest() {
+        FakeS3 fake = new FakeS3(100L*MIB);
+        store(fake).copyObject("newkey", "/srcbucket/path/to/src.bam");
+        assertThat(fake.calls).doesNotContain("initiateMultipartUpload");
+        assertThat(fake.copyRequest.getSourceBucketName()).isEqualTo("srcbucket");
+        assertThat(fake.copyRequest.getSourceKey()).isEqualTo("path/to/src.bam");
+        assertThat(fake.copyRequest.getDestinationBucketName()).isEqualTo("bossbucket");
+        assertThat(fake.copyRequest.getDestinationKey()).isEqualTo("newkey");
+    }
+
+    @Test
+    public void testBigCopyIsInParts() {
+        long size = 100L*MIB + 1;
+        FakeS3 fake = new FakeS3(size);
+        store(fake).copyObject("newkey", "/srcbucket/path/to/src.bam");
+
+        // four parts, the last of them a single byte, covering the whole source
+        assertThat(fake.parts).hasSize(4);
+        long nextByte = 0;
+        for ( int partNumber = 1; partNumber <= 4; ++partNumber ) {
+            CopyPartRequest part = null;
+            for ( CopyPartRequest candidate : fake.parts )
+                if ( candidate.getPartNumber() == partNumber )
+                    part = candidate;
+            assertThat(part.getUploadId()).isEqualTo("upload1");
+            assertThat(part.getFirstByte()).isEqualTo(nextByte);
+            nextByte = part.getLastByte() + 1;
+        }
+        assertThat(nextByte).isEqualTo(size);
+
+        List<PartETag> etags = fake.completeRequest.getPartETags();
+        assertThat(etags).hasSize(4);
+        for ( int idx = 0; idx < 4; ++idx )
+            assertThat(etags.get(idx).getETag()).isEqualTo("etag" + (idx+1));
+        assertThat(fake.abortRequest).isNull();
+    }
+
+    @Test
+    public void testFailedPartAbortsUpload() {
+        FakeS3 fake = new FakeS3(200L*MIB);
+        fake.failPart = 3;
+        try {
+            store(fake).copyObject("newkey", "/srcbucket/path/to/src.bam");
+            fail("copy should have failed");
+        }
+        catch ( ObjectStoreException e ) {
+            assertThat(e.getMessage()).contains("SlowDown");
+        }
+        assertThat(fake.abortRequest.getUploadId()).isEqualTo("upload1");
+        assertThat(fake.completeRequest).isNull();
+    }
+}
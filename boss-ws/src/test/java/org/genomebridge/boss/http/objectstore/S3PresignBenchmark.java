@@ -0,0 +1,64 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares S3Presigner with presigning through AmazonS3Client, for a localStore resolve.  Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=org.genomebridge.boss.http.objectstore.S3PresignBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class S3PresignBenchmark {
+
+    private static final String KEY = "00000000-0000-0000-0000-000000000000-f00d";
+
+    private S3ObjectStore store;
+    private S3Presigner presigner;
+    private long expires;
+
+    @Setup
+    public void setup() {
+        ObjectStoreConfiguration config = new ObjectStoreConfiguration();
+        config.username = "ecsUserName";
+        config.password = "ecsPassword";
+        config.endpoint = "https://ecsserver.broadinstitute.org";
+        config.pathStyleAccess = true;
+        config.bucket = "bossbucket";
+        config.type = "S3";
+        store = new S3ObjectStore(config);
+        presigner = new S3Presigner(config);
+        expires = System.currentTimeMillis() + 3600000L;
+    }
+
+    @Benchmark
+    public Object sdk() {
+        return store.generateResolveURIWithSDK(KEY, "GET", expires, null, null);
+    }
+
+    @Benchmark
+    public Object presigner() {
+        return presigner.presign(KEY, "GET", expires, null, null);
+    }
+
+    public static void main( String[] args ) throws Exception {
+        new Runner(new OptionsBuilder().include(S3PresignBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,83 @@
+package org.genomebridge.boss.http.objectstore;
+
+import java.net.URI;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class S3PresignerTest {
+
+    private static final String[] KEYS = { "simple", "a b+c/d~e", "/leading", "a//b///c", "ünïcode",
+                                           "*!'()", "100%", "trailing/", "f1b5bc0c-8e2a-4b7e-9d0e-3c1f0a7b2e11-b9d1" };
+
+    private static ObjectStoreConfiguration config( String endpoint, Boolean pathStyleAccess, String bucket ) {
+        ObjectStoreConfiguration config = new ObjectStoreConfiguration();
+        config.username = "ecsUserName";
+        config.password = "ecs/Pass+word";
+        config.endpoint = endpoint;
+        config.pathStyleAccess = pathStyleAccess;
+        config.bucket = bucket;
+        config.type = "S3";
+        return config;
+    }
+
+    private static void checkMatchesSDK( ObjectStoreConfiguration config ) {
+        S3Presigner presigner = new S3Presigner(config);
+        S3ObjectStore store = new S3ObjectStore(config);
+        long timeout = 1400000000999L;
+        for ( String key : KEYS ) {
+            assertThat(presigner.presign(key, "GET", timeout, null, null))
+                    .isEqualTo(store.generateResolveURIWithSDK(key, "GET", timeout, null, null));
+            assertThat(presigner.presign(key, "HEAD", timeout, null, null))
+                    .isEqualTo(store.generateResolveURIWithSDK(key, "HEAD", timeout, null, null));
+            assertThat(presigner.presign(key, "PUT", timeout, "application/octet-stream", "3q2+7w=="))
+                    .isEqualTo(store.generateResolveURIWithSDK(key, "PUT", timeout, "application/octet-stream", "3q2+7w=="));
+        }
+    }
+
+    @Test
+    public void testPathStyleMatchesSDK() {
+        checkMatchesSDK(config("https://ecsserver.broadinstitute.org", true, "bossbucket"));
+    }
+
+    @Test
+    public void testVirtualHostMatchesSDK() {
+        checkMatchesSDK(config(null, null, "bossbucket"));
+        checkMatchesSDK(config("s3-us-west-2.amazonaws.com", false, "boss.bucket"));
+    }
+
+    @Test
+    public void testPartURLsMatchSDK() {
+        ObjectStoreConfiguration config = config("https://ecsserver.broadinstitute.org", true, "bossbucket");
+        S3Presigner presigner = new S3Presigner(config);
+        AmazonS3Client client = new AmazonS3Client(new BasicAWSCredentials(config.username, config.password));
+        client.setEndpoint(config.endpoint);
+        client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+        long timeout = 1400000000999L;
+        String uploadId = "2~iCw_lDY8VoBNH+Ev/a.nZ";
+        for ( String key : KEYS ) {
+            GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest("bossbucket", key, HttpMethod.PUT);
+            request.setExpiration(new Date(timeout));
+            request.addRequestParameter("partNumber", "7");
+            request.addRequestParameter("uploadId", uploadId);
+            // the SDK's parameter order comes from a HashMap, so compare the parameters as sets
+            URI uri = presigner.presignPart(key, uploadId, 7, timeout);
+            URI sdkURI = URI.create(client.generatePresignedUrl(request).toString());
+            assertThat(uri.getRawPath()).isEqualTo(sdkURI.getRawPath());
+            assertThat(uri.getRawQuery().split("&")).containsOnly(sdkURI.getRawQuery().split("&"));
+        }
+    }
+
+    @Test
+    public void testNonDNSBucketMatchesSDK() {
+        checkMatchesSDK(config(null, null, "Boss_Bucket"));
+    }
+}